@@ -8,6 +8,7 @@ import android.preference.PreferenceManager;
 import com.kabouzeid.appthemehelper.ThemeStore;
 import com.kabouzeid.trebl.appshortcuts.DynamicShortcutManager;
 import com.kabouzeid.trebl.billing.BillingManager;
+import com.kabouzeid.trebl.ui.activities.tageditor.BatchTagWriter;
 import com.superwall.sdk.Superwall;
 
 
@@ -40,6 +41,9 @@ public class App extends Application {
                     .commit();
         }
 
+        // restore the files of a tag edit that was killed while writing
+        BatchTagWriter.recover(this);
+
         // Set up dynamic shortcuts
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N_MR1) {
             new DynamicShortcutManager(this).initDynamicShortcuts();
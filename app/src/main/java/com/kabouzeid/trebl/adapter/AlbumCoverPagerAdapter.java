@@ -130,6 +130,7 @@ public class AlbumCoverPagerAdapter extends CustomFragmentStatePagerAdapter {
         private void loadAlbumCover() {
             SongGlideRequest.Builder.from(Glide.with(getActivity()), song)
                     .checkIgnoreMediaStore(getActivity())
+                    .size(SongGlideRequest.CoverSize.PLAYER)
                     .generatePalette(getActivity()).build()
                     .into(new PhonographColoredTarget(albumCover) {
                         @Override
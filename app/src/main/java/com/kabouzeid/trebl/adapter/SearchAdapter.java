@@ -49,6 +49,19 @@ public class SearchAdapter extends RecyclerView.Adapter<SearchAdapter.ViewHolder
         notifyDataSetChanged();
     }
 
+    /**
+     * Adds items at the end without rebinding the ones already shown.
+     */
+    public void appendDataSet(@NonNull List<Object> items) {
+        if (items.isEmpty()) return;
+        final int start = dataSet.size();
+        final List<Object> appended = new ArrayList<>(start + items.size());
+        appended.addAll(dataSet);
+        appended.addAll(items);
+        dataSet = appended;
+        notifyItemRangeInserted(start, items.size());
+    }
+
     @Override
     public int getItemViewType(int position) {
         if (dataSet.get(position) instanceof Album) return ALBUM;
@@ -74,7 +87,8 @@ public class SearchAdapter extends RecyclerView.Adapter<SearchAdapter.ViewHolder
                 holder.title.setText(album.getTitle());
                 holder.text.setText(MusicUtil.getAlbumInfoString(activity, album));
                 SongGlideRequest.Builder.from(Glide.with(activity), album.safeGetFirstSong())
-                        .checkIgnoreMediaStore(activity).build()
+                        .checkIgnoreMediaStore(activity)
+                        .size(SongGlideRequest.CoverSize.LIST).build()
                         .into(holder.image);
                 break;
             case ARTIST:
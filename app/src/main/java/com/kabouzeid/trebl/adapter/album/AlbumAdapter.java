@@ -15,11 +15,13 @@ import com.bumptech.glide.Glide;
 import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.adapter.base.AbsMultiSelectAdapter;
 import com.kabouzeid.trebl.adapter.base.MediaEntryViewHolder;
+import com.kabouzeid.trebl.adapter.base.StableIdChangeDispatcher;
 import com.kabouzeid.trebl.glide.PhonographColoredTarget;
 import com.kabouzeid.trebl.glide.SongGlideRequest;
 import com.kabouzeid.trebl.helper.SortOrder;
 import com.kabouzeid.trebl.helper.menu.SongsMenuHelper;
 import com.kabouzeid.trebl.interfaces.CabHolder;
+import com.kabouzeid.trebl.loader.LibraryChangeSet;
 import com.kabouzeid.trebl.model.Album;
 import com.kabouzeid.trebl.model.Song;
 import com.kabouzeid.trebl.util.MusicUtil;
@@ -63,6 +65,27 @@ public class AlbumAdapter extends AbsMultiSelectAdapter<AlbumAdapter.ViewHolder,
         notifyDataSetChanged();
     }
 
+    /**
+     * Like {@link #swapDataSet(List)} but only notifies the items touched by the change set, if there is one.
+     */
+    public void swapDataSet(List<Album> dataSet, @Nullable LibraryChangeSet changeSet) {
+        if (changeSet == null) {
+            swapDataSet(dataSet);
+            return;
+        }
+        long[] oldIds = getIds(this.dataSet);
+        this.dataSet = dataSet;
+        StableIdChangeDispatcher.dispatch(this, oldIds, getIds(dataSet), changeSet::isAlbumAffected);
+    }
+
+    private static long[] getIds(List<Album> dataSet) {
+        long[] ids = new long[dataSet.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = dataSet.get(i).getId();
+        }
+        return ids;
+    }
+
     public List<Album> getDataSet() {
         return dataSet;
     }
@@ -133,6 +156,7 @@ public class AlbumAdapter extends AbsMultiSelectAdapter<AlbumAdapter.ViewHolder,
 
         SongGlideRequest.Builder.from(Glide.with(activity), album.safeGetFirstSong())
                 .checkIgnoreMediaStore(activity)
+                .size(SongGlideRequest.CoverSize.GRID)
                 .generatePalette(activity).build()
                 .into(new PhonographColoredTarget(holder.image) {
                     @Override
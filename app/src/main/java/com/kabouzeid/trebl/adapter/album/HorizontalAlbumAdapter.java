@@ -56,6 +56,7 @@ public class HorizontalAlbumAdapter extends AlbumAdapter {
 
         SongGlideRequest.Builder.from(Glide.with(activity), album.safeGetFirstSong())
                 .checkIgnoreMediaStore(activity)
+                .size(SongGlideRequest.CoverSize.GRID)
                 .generatePalette(activity).build()
                 .into(new PhonographColoredTarget(holder.image) {
                     @Override
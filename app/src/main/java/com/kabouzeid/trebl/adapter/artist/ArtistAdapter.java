@@ -15,11 +15,13 @@ import com.bumptech.glide.Glide;
 import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.adapter.base.AbsMultiSelectAdapter;
 import com.kabouzeid.trebl.adapter.base.MediaEntryViewHolder;
+import com.kabouzeid.trebl.adapter.base.StableIdChangeDispatcher;
 import com.kabouzeid.trebl.glide.ArtistGlideRequest;
 import com.kabouzeid.trebl.glide.PhonographColoredTarget;
 import com.kabouzeid.trebl.helper.SortOrder;
 import com.kabouzeid.trebl.helper.menu.SongsMenuHelper;
 import com.kabouzeid.trebl.interfaces.CabHolder;
+import com.kabouzeid.trebl.loader.LibraryChangeSet;
 import com.kabouzeid.trebl.model.Artist;
 import com.kabouzeid.trebl.model.Song;
 import com.kabouzeid.trebl.util.MusicUtil;
@@ -56,6 +58,27 @@ public class ArtistAdapter extends AbsMultiSelectAdapter<ArtistAdapter.ViewHolde
         notifyDataSetChanged();
     }
 
+    /**
+     * Like {@link #swapDataSet(List)} but only notifies the items touched by the change set, if there is one.
+     */
+    public void swapDataSet(List<Artist> dataSet, @Nullable LibraryChangeSet changeSet) {
+        if (changeSet == null) {
+            swapDataSet(dataSet);
+            return;
+        }
+        long[] oldIds = getIds(this.dataSet);
+        this.dataSet = dataSet;
+        StableIdChangeDispatcher.dispatch(this, oldIds, getIds(dataSet), changeSet::isArtistAffected);
+    }
+
+    private static long[] getIds(List<Artist> dataSet) {
+        long[] ids = new long[dataSet.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = dataSet.get(i).getId();
+        }
+        return ids;
+    }
+
     public List<Artist> getDataSet() {
         return dataSet;
     }
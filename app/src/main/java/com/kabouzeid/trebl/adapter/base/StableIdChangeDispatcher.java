@@ -0,0 +1,96 @@
+package com.kabouzeid.trebl.adapter.base;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.kabouzeid.trebl.util.LongIntMap;
+
+/**
+ * Turns the difference between two stable id sequences into targeted adapter notifications.
+ * <p>
+ * Only removals, insertions and in place changes are dispatched. If the surviving items changed their
+ * relative order, or too many items changed, it falls back to {@link RecyclerView.Adapter#notifyDataSetChanged()}.
+ */
+public final class StableIdChangeDispatcher {
+    private static final int MAX_TARGETED_OPERATIONS = 64;
+
+    public interface ChangedItems {
+        boolean isChanged(long id);
+    }
+
+    private StableIdChangeDispatcher() {
+    }
+
+    /**
+     * Has to be called after the adapter already switched to the new data set.
+     */
+    public static void dispatch(@NonNull RecyclerView.Adapter<?> adapter, @NonNull long[] oldIds, @NonNull long[] newIds, @NonNull ChangedItems changedItems) {
+        LongIntMap oldPositions = new LongIntMap(oldIds.length);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldPositions.put(oldIds[i], i) != LongIntMap.NO_VALUE) {
+                adapter.notifyDataSetChanged();
+                return;
+            }
+        }
+        LongIntMap newPositions = new LongIntMap(newIds.length);
+        for (int i = 0; i < newIds.length; i++) {
+            if (newPositions.put(newIds[i], i) != LongIntMap.NO_VALUE) {
+                adapter.notifyDataSetChanged();
+                return;
+            }
+        }
+
+        int operations = 0;
+        int lastNewPosition = -1;
+        for (long oldId : oldIds) {
+            final int newPosition = newPositions.get(oldId);
+            if (newPosition == LongIntMap.NO_VALUE) {
+                operations++;
+            } else if (newPosition < lastNewPosition) {
+                adapter.notifyDataSetChanged();
+                return;
+            } else {
+                lastNewPosition = newPosition;
+                if (changedItems.isChanged(oldId)) operations++;
+            }
+        }
+        for (long newId : newIds) {
+            if (!oldPositions.containsKey(newId)) operations++;
+        }
+        if (operations > MAX_TARGETED_OPERATIONS) {
+            adapter.notifyDataSetChanged();
+            return;
+        }
+
+        // removals back to front so the positions before stay valid
+        for (int i = oldIds.length - 1; i >= 0; ) {
+            if (newPositions.containsKey(oldIds[i])) {
+                i--;
+                continue;
+            }
+            int start = i;
+            while (start > 0 && !newPositions.containsKey(oldIds[start - 1])) {
+                start--;
+            }
+            adapter.notifyItemRangeRemoved(start, i - start + 1);
+            i = start - 1;
+        }
+
+        // only survivors in their old relative order are left, insert front to back at the final positions
+        for (int i = 0; i < newIds.length; ) {
+            if (oldPositions.containsKey(newIds[i])) {
+                if (changedItems.isChanged(newIds[i])) {
+                    adapter.notifyItemChanged(i);
+                }
+                i++;
+                continue;
+            }
+            int end = i;
+            while (end + 1 < newIds.length && !oldPositions.containsKey(newIds[end + 1])) {
+                end++;
+            }
+            adapter.notifyItemRangeInserted(i, end - i + 1);
+            i = end + 1;
+        }
+    }
+}
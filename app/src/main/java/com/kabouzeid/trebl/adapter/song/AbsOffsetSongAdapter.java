@@ -11,6 +11,7 @@ import android.view.ViewGroup;
 import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.helper.MusicPlayerRemote;
 import com.kabouzeid.trebl.interfaces.CabHolder;
+import com.kabouzeid.trebl.loader.LibraryChangeSet;
 import com.kabouzeid.trebl.model.Song;
 
 import java.util.List;
@@ -31,6 +32,12 @@ public abstract class AbsOffsetSongAdapter extends SongAdapter {
         super(activity, dataSet, itemLayoutRes, usePalette, cabHolder, showSectionName);
     }
 
+    @Override
+    public void swapDataSet(List<Song> dataSet, @Nullable LibraryChangeSet changeSet) {
+        // the offset item shifts all positions
+        swapDataSet(dataSet);
+    }
+
     @NonNull
     @Override
     public SongAdapter.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
@@ -16,6 +16,7 @@ import com.bumptech.glide.Glide;
 import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.adapter.base.AbsMultiSelectAdapter;
 import com.kabouzeid.trebl.adapter.base.MediaEntryViewHolder;
+import com.kabouzeid.trebl.adapter.base.StableIdChangeDispatcher;
 import com.kabouzeid.trebl.glide.PhonographColoredTarget;
 import com.kabouzeid.trebl.glide.SongGlideRequest;
 import com.kabouzeid.trebl.helper.MusicPlayerRemote;
@@ -23,6 +24,7 @@ import com.kabouzeid.trebl.helper.SortOrder;
 import com.kabouzeid.trebl.helper.menu.SongMenuHelper;
 import com.kabouzeid.trebl.helper.menu.SongsMenuHelper;
 import com.kabouzeid.trebl.interfaces.CabHolder;
+import com.kabouzeid.trebl.loader.LibraryChangeSet;
 import com.kabouzeid.trebl.model.Song;
 import com.kabouzeid.trebl.util.MusicUtil;
 import com.kabouzeid.trebl.util.NavigationUtil;
@@ -63,6 +65,27 @@ public class SongAdapter extends AbsMultiSelectAdapter<SongAdapter.ViewHolder, S
         notifyDataSetChanged();
     }
 
+    /**
+     * Like {@link #swapDataSet(List)} but only notifies the items touched by the change set, if there is one.
+     */
+    public void swapDataSet(List<Song> dataSet, @Nullable LibraryChangeSet changeSet) {
+        if (changeSet == null) {
+            swapDataSet(dataSet);
+            return;
+        }
+        long[] oldIds = getIds(this.dataSet);
+        this.dataSet = dataSet;
+        StableIdChangeDispatcher.dispatch(this, oldIds, getIds(dataSet), changeSet::isSongUpdated);
+    }
+
+    private static long[] getIds(List<Song> dataSet) {
+        long[] ids = new long[dataSet.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = dataSet.get(i).id;
+        }
+        return ids;
+    }
+
     public void usePalette(boolean usePalette) {
         this.usePalette = usePalette;
         notifyDataSetChanged();
@@ -121,6 +144,7 @@ public class SongAdapter extends AbsMultiSelectAdapter<SongAdapter.ViewHolder, S
 
         SongGlideRequest.Builder.from(Glide.with(activity), song)
                 .checkIgnoreMediaStore(activity)
+                .size(SongGlideRequest.CoverSize.LIST)
                 .generatePalette(activity).build()
                 .into(new PhonographColoredTarget(holder.image) {
                     @Override
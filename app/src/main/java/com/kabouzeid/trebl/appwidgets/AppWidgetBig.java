@@ -99,6 +99,7 @@ public class AppWidgetBig extends BaseAppWidget {
                 }
                 target = SongGlideRequest.Builder.from(Glide.with(appContext), song)
                         .checkIgnoreMediaStore(appContext)
+                        .size(SongGlideRequest.CoverSize.WIDGET)
                         .asBitmap().build()
                         .into(new SimpleTarget<Bitmap>(widgetImageSize, widgetImageSize) {
                             @Override
@@ -103,6 +103,7 @@ public class AppWidgetCard extends BaseAppWidget {
                 }
                 target = SongGlideRequest.Builder.from(Glide.with(service), song)
                         .checkIgnoreMediaStore(service)
+                        .size(SongGlideRequest.CoverSize.WIDGET)
                         .generatePalette(service).build()
                         .centerCrop()
                         .into(new SimpleTarget<BitmapPaletteWrapper>(imageSize, imageSize) {
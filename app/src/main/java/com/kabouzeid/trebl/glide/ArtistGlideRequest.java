@@ -20,6 +20,7 @@ import com.kabouzeid.trebl.App;
 import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.glide.artistimage.AlbumCover;
 import com.kabouzeid.trebl.glide.artistimage.ArtistImage;
+import com.kabouzeid.trebl.glide.artistimage.ArtistImageBitmapDecoder;
 import com.kabouzeid.trebl.glide.palette.BitmapPaletteTranscoder;
 import com.kabouzeid.trebl.glide.palette.BitmapPaletteWrapper;
 import com.kabouzeid.trebl.model.Album;
@@ -29,11 +30,14 @@ import com.kabouzeid.trebl.util.ArtistSignatureUtil;
 import com.kabouzeid.trebl.util.CustomArtistImageUtil;
 
 /**
+ * The finished artist mosaics are disk cached as results under the {@link ArtistSignatureUtil} signature of the
+ * artist. The bitmap requests take the mosaic bitmap as it is, see {@link ArtistImageBitmapDecoder}.
+ *
  * @author Karim Abou Zeid (kabouzeid)
  */
 public class ArtistGlideRequest {
 
-    private static final DiskCacheStrategy DEFAULT_DISK_CACHE_STRATEGY = DiskCacheStrategy.ALL;
+    private static final DiskCacheStrategy DEFAULT_DISK_CACHE_STRATEGY = DiskCacheStrategy.RESULT;
     private static final int DEFAULT_ERROR_IMAGE = R.drawable.default_artist_image;
     public static final int DEFAULT_ANIMATION = android.R.anim.fade_in;
 
@@ -87,6 +91,7 @@ public class ArtistGlideRequest {
             //noinspection unchecked
             return createBaseRequest(builder.requestManager, builder.artist, builder.noCustomImage)
                     .asBitmap()
+                    .imageDecoder(new ArtistImageBitmapDecoder(App.getInstance()))
                     .diskCacheStrategy(DEFAULT_DISK_CACHE_STRATEGY)
                     .error(DEFAULT_ERROR_IMAGE)
                     .animate(DEFAULT_ANIMATION)
@@ -110,6 +115,7 @@ public class ArtistGlideRequest {
             return createBaseRequest(builder.requestManager, builder.artist, builder.noCustomImage)
                     .asBitmap()
                     .transcode(new BitmapPaletteTranscoder(context), BitmapPaletteWrapper.class)
+                    .imageDecoder(new ArtistImageBitmapDecoder(context))
                     .diskCacheStrategy(DEFAULT_DISK_CACHE_STRATEGY)
                     .error(DEFAULT_ERROR_IMAGE)
                     .animate(DEFAULT_ANIMATION)
@@ -6,11 +6,14 @@ import java.io.InputStream;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
 import com.bumptech.glide.module.GlideModule;
 import com.kabouzeid.trebl.glide.artistimage.ArtistImage;
 import com.kabouzeid.trebl.glide.artistimage.ArtistImageLoader;
 import com.kabouzeid.trebl.glide.audiocover.AudioFileCover;
 import com.kabouzeid.trebl.glide.audiocover.AudioFileCoverLoader;
+import com.kabouzeid.trebl.util.PreferenceUtil;
 
 /**
  * @author Karim Abou Zeid (kabouzeid)
@@ -18,7 +21,9 @@ import com.kabouzeid.trebl.glide.audiocover.AudioFileCoverLoader;
 public class PhonographGlideModule implements GlideModule {
     @Override
     public void applyOptions(Context context, GlideBuilder builder) {
-
+        // the budget is only read once, a changed preference applies on the next start
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context,
+                DiskCache.Factory.DEFAULT_DISK_CACHE_DIR, (int) Math.min(PreferenceUtil.getInstance(context).getImageCacheSize(), Integer.MAX_VALUE)));
     }
 
     @Override
@@ -3,6 +3,7 @@ package com.kabouzeid.trebl.glide;
 import android.content.Context;
 import android.graphics.Bitmap;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.bumptech.glide.BitmapRequestBuilder;
 import com.bumptech.glide.DrawableRequestBuilder;
@@ -21,18 +22,39 @@ import com.kabouzeid.trebl.util.MusicUtil;
 import com.kabouzeid.trebl.util.PreferenceUtil;
 
 /**
+ * Covers are disk cached by their source (the file path or MediaStore uri) and the date the song was modified, so
+ * the embedded art of a file is only read once. The scaled results are cached per {@link CoverSize}.
+ *
  * @author Karim Abou Zeid (kabouzeid)
  */
 public class SongGlideRequest {
 
-    public static final DiskCacheStrategy DEFAULT_DISK_CACHE_STRATEGY = DiskCacheStrategy.NONE;
+    public static final DiskCacheStrategy DEFAULT_DISK_CACHE_STRATEGY = DiskCacheStrategy.ALL;
     public static final int DEFAULT_ERROR_IMAGE = R.drawable.default_album_art;
     public static final int DEFAULT_ANIMATION = android.R.anim.fade_in;
 
+    /**
+     * Fixed size buckets, so the same cached thumbnail is reused by all views of a kind instead of one per view size.
+     */
+    public enum CoverSize {
+        LIST(256),
+        GRID(512),
+        WIDGET(512),
+        PLAYER(1024);
+
+        public final int pixels;
+
+        CoverSize(int pixels) {
+            this.pixels = pixels;
+        }
+    }
+
     public static class Builder {
         final RequestManager requestManager;
         final Song song;
         boolean ignoreMediaStore;
+        @Nullable
+        CoverSize size;
 
         public static Builder from(@NonNull RequestManager requestManager, Song song) {
             return new Builder(requestManager, song);
@@ -60,13 +82,22 @@ public class SongGlideRequest {
             return this;
         }
 
+        public Builder size(@NonNull CoverSize size) {
+            this.size = size;
+            return this;
+        }
+
         public DrawableRequestBuilder<GlideDrawable> build() {
             //noinspection unchecked
-            return createBaseRequest(requestManager, song, ignoreMediaStore)
+            DrawableRequestBuilder<GlideDrawable> request = createBaseRequest(requestManager, song, ignoreMediaStore)
                     .diskCacheStrategy(DEFAULT_DISK_CACHE_STRATEGY)
                     .error(DEFAULT_ERROR_IMAGE)
                     .animate(DEFAULT_ANIMATION)
                     .signature(createSignature(song));
+            if (size != null) {
+                request.override(size.pixels, size.pixels);
+            }
+            return request;
         }
     }
 
@@ -79,12 +110,16 @@ public class SongGlideRequest {
 
         public BitmapRequestBuilder<?, Bitmap> build() {
             //noinspection unchecked
-            return createBaseRequest(builder.requestManager, builder.song, builder.ignoreMediaStore)
+            BitmapRequestBuilder<?, Bitmap> request = createBaseRequest(builder.requestManager, builder.song, builder.ignoreMediaStore)
                     .asBitmap()
                     .diskCacheStrategy(DEFAULT_DISK_CACHE_STRATEGY)
                     .error(DEFAULT_ERROR_IMAGE)
                     .animate(DEFAULT_ANIMATION)
                     .signature(createSignature(builder.song));
+            if (builder.size != null) {
+                request.override(builder.size.pixels, builder.size.pixels);
+            }
+            return request;
         }
     }
 
@@ -99,13 +134,17 @@ public class SongGlideRequest {
 
         public BitmapRequestBuilder<?, BitmapPaletteWrapper> build() {
             //noinspection unchecked
-            return createBaseRequest(builder.requestManager, builder.song, builder.ignoreMediaStore)
+            BitmapRequestBuilder<?, BitmapPaletteWrapper> request = createBaseRequest(builder.requestManager, builder.song, builder.ignoreMediaStore)
                     .asBitmap()
                     .transcode(new BitmapPaletteTranscoder(context), BitmapPaletteWrapper.class)
                     .diskCacheStrategy(DEFAULT_DISK_CACHE_STRATEGY)
                     .error(DEFAULT_ERROR_IMAGE)
                     .animate(DEFAULT_ANIMATION)
                     .signature(createSignature(builder.song));
+            if (builder.size != null) {
+                request.override(builder.size.pixels, builder.size.pixels);
+            }
+            return request;
         }
     }
 
@@ -0,0 +1,40 @@
+package com.kabouzeid.trebl.glide.artistimage;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.ResourceDecoder;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.bitmap.BitmapResource;
+import com.bumptech.glide.load.resource.bitmap.StreamBitmapDecoder;
+
+/**
+ * Takes the bitmap of a {@link MosaicInputStream} as it is, everything else is decoded as usual.
+ */
+public class ArtistImageBitmapDecoder implements ResourceDecoder<InputStream, Bitmap> {
+    private final BitmapPool bitmapPool;
+    private final StreamBitmapDecoder streamBitmapDecoder;
+
+    public ArtistImageBitmapDecoder(Context context) {
+        bitmapPool = Glide.get(context).getBitmapPool();
+        streamBitmapDecoder = new StreamBitmapDecoder(context);
+    }
+
+    @Override
+    public Resource<Bitmap> decode(InputStream source, int width, int height) throws IOException {
+        if (source instanceof MosaicInputStream) {
+            return BitmapResource.obtain(((MosaicInputStream) source).getBitmap(), bitmapPool);
+        }
+        return streamBitmapDecoder.decode(source, width, height);
+    }
+
+    @Override
+    public String getId() {
+        return "ArtistImageBitmapDecoder.com.kabouzeid.trebl";
+    }
+}
@@ -2,18 +2,22 @@ package com.kabouzeid.trebl.glide.artistimage;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.media.MediaMetadataRetriever;
 import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.bumptech.glide.Priority;
 import com.bumptech.glide.load.data.DataFetcher;
@@ -24,9 +28,17 @@ import com.kabouzeid.trebl.util.ImageUtil;
  * @author Karim Abou Zeid (kabouzeid)
  */
 public class ArtistImageFetcher implements DataFetcher<InputStream> {
+    private static final int ARTIST_BITMAP_SIZE = 512;
+
+    // shared by all fetchers, covers of several artists are loaded at the same time while scrolling
+    private static final ExecutorService COVER_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
 
     private final ArtistImage model;
 
+    private final List<Future<?>> pendingFutures = new ArrayList<>();
+    private volatile boolean cancelled;
+
     private InputStream stream;
 
     private boolean ignoreMediaStore;
@@ -51,115 +63,118 @@ public class ArtistImageFetcher implements DataFetcher<InputStream> {
         return stream = getMosaic(model.albumCovers);
     }
 
-    private InputStream getMosaic(final List<AlbumCover> albumCovers) throws FileNotFoundException {
-
-        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-
-        int artistBitMapSize = 512;
-
-        final Map<InputStream, Integer> images = new HashMap<>();
+    private InputStream getMosaic(final List<AlbumCover> albumCovers) {
+        final List<Future<byte[]>> coverFutures = new ArrayList<>(albumCovers.size());
+        for (final AlbumCover cover : albumCovers) {
+            coverFutures.add(submit(() -> readCover(cover.getFilePath())));
+        }
 
-        InputStream result = null;
-        List<InputStream> streams = new ArrayList<>();
+        // covers in album order together with the years of their albums
+        final List<byte[]> covers = new ArrayList<>();
+        final List<Integer> years = new ArrayList<>();
+        for (int i = 0; i < coverFutures.size(); i++) {
+            final byte[] cover = getResult(coverFutures.get(i));
+            if (cover != null) {
+                covers.add(cover);
+                years.add(albumCovers.get(i).getYear());
+            }
+        }
 
-        try {
-            for (final AlbumCover cover : albumCovers) {
-                byte[] picture = null;
-                if (!ignoreMediaStore) {
-                    retriever.setDataSource(cover.getFilePath());
-                    picture = retriever.getEmbeddedPicture();
-                }
-                final InputStream stream;
-                if (picture != null) {
-                    stream = new ByteArrayInputStream(picture);
-                } else {
-                    stream = AudioFileCoverUtils.fallback(cover.getFilePath());
-                }
+        final int nbImages = covers.size();
+        if (nbImages > 3) {
+            int divisor = 1;
+            for (int i = 1; i < nbImages && Math.pow(i, 2) <= nbImages; ++i) {
+                divisor = i;
+            }
+            divisor += 1;
+            int nbTiles = divisor * divisor;
 
-                if (stream != null) {
-                    images.put(stream, cover.getYear());
-                }
+            if (nbImages < nbTiles) {
+                divisor -= 1;
+                nbTiles = divisor * divisor;
             }
+            final int resize = (ARTIST_BITMAP_SIZE / divisor) + 1;
 
-            int nbImages = images.size();
+            final List<Future<Bitmap>> tileFutures = new ArrayList<>(nbTiles);
+            for (int i = 0; i < nbTiles; i++) {
+                final byte[] cover = covers.get(i);
+                tileFutures.add(submit(() -> ImageUtil.resize(cover, resize, resize)));
+            }
 
-            if (nbImages > 3) {
-                streams = new ArrayList<>(images.keySet());
+            final Bitmap bitmap = Bitmap.createBitmap(ARTIST_BITMAP_SIZE, ARTIST_BITMAP_SIZE, Bitmap.Config.RGB_565);
+            final Canvas canvas = new Canvas(bitmap);
 
-                int divisor = 1;
-                for (int i = 1; i < nbImages && Math.pow(i, 2) <= nbImages; ++i) {
-                    divisor = i;
-                }
-                divisor += 1;
-                double nbTiles = Math.pow(divisor, 2);
+            int x = 0;
+            int y = 0;
 
-                if (nbImages < nbTiles) {
-                    divisor -= 1;
-                    nbTiles = Math.pow(divisor, 2);
+            for (Future<Bitmap> tileFuture : tileFutures) {
+                final Bitmap tile = getResult(tileFuture);
+                if (tile != null) {
+                    canvas.drawBitmap(tile, x, y, null);
+                    tile.recycle();
                 }
-                final int resize = (artistBitMapSize / divisor) + 1;
+                x += resize;
 
-                final Bitmap bitmap = Bitmap.createBitmap(artistBitMapSize, artistBitMapSize, Bitmap.Config.RGB_565);
-                final Canvas canvas = new Canvas(bitmap);
-
-                int x = 0;
-                int y = 0;
-
-                for (int i = 0; i < streams.size() && i < nbTiles; ++i) {
-                    final Bitmap bitmap1 = ImageUtil.resize(streams.get(i), resize, resize);
-                    canvas.drawBitmap(bitmap1, x, y, null);
-                    x += resize;
-
-                    if (x >= artistBitMapSize) {
-                        x = 0;
-                        y += resize;
-                    }
-                }
-
-                final ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                bitmap.compress(Bitmap.CompressFormat.PNG, 0, bos);
-                result = new ByteArrayInputStream(bos.toByteArray());
-
-            } else if (nbImages > 0) {
-                // we return the last cover album of the artist
-                Map.Entry<InputStream, Integer> maxEntryYear = null;
-
-                for (final Map.Entry<InputStream, Integer> entry : images.entrySet()) {
-                    if (maxEntryYear == null || entry.getValue()
-                            .compareTo(maxEntryYear.getValue()) > 0) {
-                        maxEntryYear = entry;
-                    }
+                if (x >= ARTIST_BITMAP_SIZE) {
+                    x = 0;
+                    y += resize;
                 }
+            }
 
-                if (maxEntryYear != null) {
-                    result = maxEntryYear.getKey();
-                } else {
-                    result = images.entrySet()
-                            .iterator()
-                            .next()
-                            .getKey();
+            return new MosaicInputStream(bitmap);
+        } else if (nbImages > 0) {
+            // we return the last cover album of the artist
+            int newest = 0;
+            for (int i = 1; i < nbImages; i++) {
+                if (years.get(i) > years.get(newest)) {
+                    newest = i;
                 }
+            }
+            return new ByteArrayInputStream(covers.get(newest));
+        }
+        return null;
+    }
 
+    @Nullable
+    private byte[] readCover(@NonNull final String filePath) throws IOException {
+        if (cancelled) {
+            return null;
+        }
+        try (InputStream cover = ignoreMediaStore
+                ? AudioFileCoverUtils.fallback(filePath)
+                : AudioFileCoverUtils.extract(filePath)) {
+            if (cover == null) {
+                return null;
             }
-        } finally {
-            try { // idk just added a try catch cus it asked me to
-                retriever.release();
-            } catch (IOException e) {
-                e.printStackTrace();
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = cover.read(buffer)) != -1) {
+                bos.write(buffer, 0, read);
             }
+            return bos.toByteArray();
+        }
+    }
 
-//            retriever.release();
-
-            try {
-                for (final InputStream stream : streams) {
-                    stream.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    @NonNull
+    private <T> Future<T> submit(@NonNull Callable<T> task) {
+        final Future<T> future = COVER_EXECUTOR.submit(task);
+        synchronized (pendingFutures) {
+            pendingFutures.add(future);
+        }
+        return future;
+    }
 
+    @Nullable
+    private static <T> T getResult(@NonNull Future<T> future) {
+        try {
+            return future.get();
+        } catch (CancellationException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         }
-        return result;
     }
 
     @Override
@@ -176,6 +191,11 @@ public class ArtistImageFetcher implements DataFetcher<InputStream> {
 
     @Override
     public void cancel() {
-
+        cancelled = true;
+        synchronized (pendingFutures) {
+            for (Future<?> future : pendingFutures) {
+                future.cancel(false);
+            }
+        }
     }
 }
@@ -0,0 +1,68 @@
+package com.kabouzeid.trebl.glide.artistimage;
+
+import android.graphics.Bitmap;
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Carries an already drawn artist mosaic to the {@link ArtistImageBitmapDecoder}, which hands the bitmap to Glide
+ * as it is. Only if the stream is read by another decoder the mosaic is encoded as PNG.
+ */
+public class MosaicInputStream extends InputStream {
+    @NonNull
+    private final Bitmap bitmap;
+    private InputStream encoded;
+
+    public MosaicInputStream(@NonNull Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    @NonNull
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    @NonNull
+    private InputStream getEncoded() {
+        if (encoded == null) {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.PNG, 0, bos);
+            encoded = new ByteArrayInputStream(bos.toByteArray());
+        }
+        return encoded;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return getEncoded().read();
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+        return getEncoded().read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return getEncoded().available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        getEncoded().mark(readLimit);
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        getEncoded().reset();
+    }
+}
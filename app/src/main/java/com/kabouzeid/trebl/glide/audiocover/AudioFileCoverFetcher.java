@@ -1,8 +1,5 @@
 package com.kabouzeid.trebl.glide.audiocover;
 
-import android.media.MediaMetadataRetriever;
-
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -30,20 +27,7 @@ public class AudioFileCoverFetcher implements DataFetcher<InputStream> {
 
     @Override
     public InputStream loadData(final Priority priority) throws Exception {
-
-        final MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-        try {
-            retriever.setDataSource(model.filePath);
-            byte[] picture = retriever.getEmbeddedPicture();
-            if (picture != null) {
-                stream = new ByteArrayInputStream(picture);
-            } else {
-                stream = AudioFileCoverUtils.fallback(model.filePath);
-            }
-        } finally {
-            retriever.release();
-        }
-
+        stream = AudioFileCoverUtils.extract(model.filePath);
         return stream;
     }
 
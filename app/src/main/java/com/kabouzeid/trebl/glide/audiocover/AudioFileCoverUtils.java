@@ -1,49 +1,306 @@
 package com.kabouzeid.trebl.glide.audiocover;
 
+import android.media.MediaMetadataRetriever;
+import android.util.Log;
+import android.util.LruCache;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
-import org.jaudiotagger.audio.exceptions.InvalidAudioFrameException;
-import org.jaudiotagger.audio.exceptions.ReadOnlyFileException;
-import org.jaudiotagger.audio.mp3.MP3File;
-import org.jaudiotagger.tag.TagException;
-import org.jaudiotagger.tag.images.Artwork;
-
+/**
+ * Finds the cover of an audio file in a single pass.
+ * <p>
+ * ID3v2 tags are parsed directly: only the tag region at the start of the file is read and only the picture frame
+ * is extracted. Other formats go through {@link MediaMetadataRetriever}. If the file has no picture the cover files
+ * of its folder are looked up, the result is cached per folder so the sibling tracks of an album don't list the
+ * folder again.
+ */
 public class AudioFileCoverUtils {
+    private static final String TAG = AudioFileCoverUtils.class.getSimpleName();
 
     public static final String[] FALLBACKS = {"cover.jpg", "album.jpg", "folder.jpg", "cover.png", "album.png", "folder.png"};
 
+    // tags bigger than this are left to the MediaMetadataRetriever
+    private static final int MAX_TAG_SIZE = 16 * 1024 * 1024;
+    private static final int ID3_HEADER_SIZE = 10;
+    private static final int PICTURE_TYPE_FRONT_COVER = 3;
 
-    public static InputStream fallback(String path) throws FileNotFoundException {
-        // Method 1: use embedded high resolution album art if there is any
-        try {
-            MP3File mp3File = new MP3File(path);
-            if (mp3File.hasID3v2Tag()) {
-                Artwork art = mp3File.getTag().getFirstArtwork();
-                if (art != null) {
-                    byte[] imageData = art.getBinaryData();
-                    return new ByteArrayInputStream(imageData);
+    // folder path -> cover file name, or NO_FOLDER_IMAGE
+    private static final LruCache<String, String> folderImages = new LruCache<>(256);
+    private static final String NO_FOLDER_IMAGE = "";
+
+    /**
+     * Embedded picture, then the cover files of the folder.
+     */
+    @Nullable
+    public static InputStream extract(@NonNull String path) throws FileNotFoundException {
+        final Id3Result id3 = readId3Picture(path);
+        if (id3.picture != null) {
+            return id3.picture;
+        }
+        if (!id3.parsed) {
+            final MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+            try {
+                retriever.setDataSource(path);
+                final byte[] picture = retriever.getEmbeddedPicture();
+                if (picture != null) {
+                    return new ByteArrayInputStream(picture);
                 }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "MediaMetadataRetriever failed for " + path, e);
+            } finally {
+                retriever.release();
             }
-            // If there are any exceptions, we ignore them and continue to the other fallback method
-        } catch (ReadOnlyFileException ignored) {
-        } catch (InvalidAudioFrameException ignored) {
-        } catch (TagException ignored) {
-        } catch (IOException ignored) {
         }
+        return folderImage(path);
+    }
+
+    /**
+     * Like {@link #extract(String)}, but only pictures of ID3v2 tags are used, never the {@link MediaMetadataRetriever}.
+     */
+    @Nullable
+    public static InputStream fallback(@NonNull String path) throws FileNotFoundException {
+        final Id3Result id3 = readId3Picture(path);
+        if (id3.picture != null) {
+            return id3.picture;
+        }
+        return folderImage(path);
+    }
 
-        // Method 2: look for album art in external files
+    @Nullable
+    private static InputStream folderImage(@NonNull String path) throws FileNotFoundException {
         final File parent = new File(path).getParentFile();
+        if (parent == null) {
+            return null;
+        }
+        final String folder = parent.getPath();
+        String fileName = folderImages.get(folder);
+        if (fileName == null) {
+            fileName = findFolderImage(parent);
+            folderImages.put(folder, fileName);
+        }
+        if (NO_FOLDER_IMAGE.equals(fileName)) {
+            return null;
+        }
+        return new FileInputStream(new File(parent, fileName));
+    }
+
+    @NonNull
+    private static String findFolderImage(@NonNull File folder) {
+        // one listing instead of an exists() call per candidate
+        final String[] names = folder.list();
+        if (names == null) {
+            return NO_FOLDER_IMAGE;
+        }
+        // lower case name -> actual name, the storage may match names case-insensitively like exists() did
+        final Map<String, String> existing = new HashMap<>(names.length);
+        for (String name : names) {
+            final String lowerName = name.toLowerCase(Locale.ROOT);
+            if (!existing.containsKey(lowerName)) {
+                existing.put(lowerName, name);
+            }
+        }
         for (String fallback : FALLBACKS) {
-            File cover = new File(parent, fallback);
-            if (cover.exists()) {
-                return new FileInputStream(cover);
+            final String name = existing.get(fallback);
+            if (name != null) {
+                return name;
+            }
+        }
+        return NO_FOLDER_IMAGE;
+    }
+
+    private static class Id3Result {
+        static final Id3Result NOT_PARSED = new Id3Result(false, null);
+        static final Id3Result NO_PICTURE = new Id3Result(true, null);
+
+        // true if the file has an ID3v2 tag which could be read completely
+        final boolean parsed;
+        @Nullable
+        final InputStream picture;
+
+        Id3Result(boolean parsed, @Nullable InputStream picture) {
+            this.parsed = parsed;
+            this.picture = picture;
+        }
+    }
+
+    @NonNull
+    private static Id3Result readId3Picture(@NonNull String path) {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            final byte[] header = new byte[ID3_HEADER_SIZE];
+            if (file.read(header) != ID3_HEADER_SIZE || header[0] != 'I' || header[1] != 'D' || header[2] != '3') {
+                return Id3Result.NOT_PARSED;
+            }
+            final int version = header[3];
+            final int flags = header[5];
+            final int tagSize = synchsafe(header, 6);
+            if (version < 2 || version > 4 || tagSize <= 0 || tagSize > MAX_TAG_SIZE || tagSize > file.length() - ID3_HEADER_SIZE) {
+                return Id3Result.NOT_PARSED;
+            }
+            byte[] tag = new byte[tagSize];
+            file.readFully(tag);
+            int tagLength = tagSize;
+            if (version < 4 && (flags & 0x80) != 0) {
+                tagLength = removeUnsynchronisation(tag, 0, tagSize);
+            }
+            return findPicture(tag, tagLength, version, flags);
+        } catch (IOException | RuntimeException e) {
+            return Id3Result.NOT_PARSED;
+        }
+    }
+
+    @NonNull
+    private static Id3Result findPicture(@NonNull byte[] tag, int tagLength, int version, int flags) {
+        int position = 0;
+        if ((flags & 0x40) != 0 && version >= 3) {
+            // extended header, its size doesn't include the size field in version 3
+            position = version == 3 ? readInt(tag, 0) + 4 : synchsafe(tag, 0);
+        }
+
+        final int frameHeaderSize = version == 2 ? 6 : 10;
+        int coverOffset = -1;
+        int coverLength = 0;
+        boolean malformed = false;
+        while (position + frameHeaderSize <= tagLength && tag[position] != 0) {
+            final boolean isPicture;
+            int frameSize;
+            int formatFlags = 0;
+            if (version == 2) {
+                isPicture = tag[position] == 'P' && tag[position + 1] == 'I' && tag[position + 2] == 'C';
+                frameSize = ((tag[position + 3] & 0xff) << 16) | ((tag[position + 4] & 0xff) << 8) | (tag[position + 5] & 0xff);
+            } else {
+                isPicture = tag[position] == 'A' && tag[position + 1] == 'P' && tag[position + 2] == 'I' && tag[position + 3] == 'C';
+                frameSize = version == 4 ? synchsafe(tag, position + 4) : readInt(tag, position + 4);
+                formatFlags = tag[position + 9] & 0xff;
+            }
+            final int dataStart = position + frameHeaderSize;
+            if (frameSize <= 0 || dataStart + frameSize > tagLength) {
+                // not padding, the frames can't be walked any further, e.g. a v2.4 tag with non-synchsafe sizes
+                malformed = true;
+                break;
+            }
+            position = dataStart + frameSize;
+            if (!isPicture || isCompressedOrEncrypted(version, formatFlags)) {
+                continue;
+            }
+
+            int offset = dataStart;
+            int length = frameSize;
+            if (version == 4) {
+                if ((formatFlags & 0x40) != 0) {
+                    // group id
+                    offset++;
+                    length--;
+                }
+                if ((formatFlags & 0x01) != 0) {
+                    // data length indicator
+                    offset += 4;
+                    length -= 4;
+                }
+                if ((formatFlags & 0x02) != 0) {
+                    length = removeUnsynchronisation(tag, offset, length);
+                }
+            }
+            final int[] picture = parsePictureFrame(tag, offset, length, version);
+            if (picture != null && (coverOffset < 0 || picture[2] == PICTURE_TYPE_FRONT_COVER)) {
+                coverOffset = picture[0];
+                coverLength = picture[1];
+                if (picture[2] == PICTURE_TYPE_FRONT_COVER) {
+                    break;
+                }
+            }
+        }
+        if (coverOffset < 0) {
+            // the picture may be in the part that couldn't be walked, leave it to the MediaMetadataRetriever then
+            return malformed ? Id3Result.NOT_PARSED : Id3Result.NO_PICTURE;
+        }
+        return new Id3Result(true, new ByteArrayInputStream(tag, coverOffset, coverLength));
+    }
+
+    private static boolean isCompressedOrEncrypted(int version, int formatFlags) {
+        if (version == 3) {
+            return (formatFlags & 0xc0) != 0;
+        }
+        return version == 4 && (formatFlags & 0x0c) != 0;
+    }
+
+    /**
+     * @return offset and length of the image data and the picture type, or null if the frame is malformed
+     */
+    @Nullable
+    private static int[] parsePictureFrame(@NonNull byte[] tag, int offset, int length, int version) {
+        final int end = offset + length;
+        int position = offset;
+        if (position >= end) {
+            return null;
+        }
+        final int encoding = tag[position++];
+        if (version == 2) {
+            // three character image format
+            position += 3;
+        } else {
+            while (position < end && tag[position] != 0) {
+                position++;
+            }
+            // mime type terminator
+            position++;
+        }
+        if (position >= end) {
+            return null;
+        }
+        final int pictureType = tag[position++] & 0xff;
+        // description
+        if (encoding == 1 || encoding == 2) {
+            while (position + 1 < end && (tag[position] != 0 || tag[position + 1] != 0)) {
+                position += 2;
+            }
+            position += 2;
+        } else {
+            while (position < end && tag[position] != 0) {
+                position++;
+            }
+            position++;
+        }
+        if (position >= end) {
+            return null;
+        }
+        return new int[]{position, end - position, pictureType};
+    }
+
+    /**
+     * Replaces every 0xff 0x00 pair with 0xff in place.
+     *
+     * @return the new length of the region
+     */
+    private static int removeUnsynchronisation(@NonNull byte[] data, int offset, int length) {
+        final int end = offset + length;
+        int write = offset;
+        for (int read = offset; read < end; read++) {
+            data[write++] = data[read];
+            if ((data[read] & 0xff) == 0xff && read + 1 < end && data[read + 1] == 0) {
+                read++;
             }
         }
-        return null;
+        return write - offset;
+    }
+
+    private static int synchsafe(@NonNull byte[] data, int offset) {
+        return ((data[offset] & 0x7f) << 21) | ((data[offset + 1] & 0x7f) << 14)
+                | ((data[offset + 2] & 0x7f) << 7) | (data[offset + 3] & 0x7f);
+    }
+
+    private static int readInt(@NonNull byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
     }
 }
@@ -0,0 +1,227 @@
+package com.kabouzeid.trebl.helper;
+
+import android.content.Context;
+import android.util.LruCache;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kabouzeid.trebl.model.Song;
+import com.kabouzeid.trebl.model.lyrics.Lyrics;
+import com.kabouzeid.trebl.provider.LyricsStore;
+import com.kabouzeid.trebl.util.FileUtil;
+
+import org.jaudiotagger.audio.AudioFileIO;
+import org.jaudiotagger.tag.FieldKey;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Finds the lyrics of a song: synchronized lyrics embedded in the file first, then a .lrc or .txt file next to it
+ * whose name contains the file name or the title of the song, then any other embedded lyrics.
+ * <p>
+ * The result is kept in the {@link LyricsStore} per path and modification date of the song file, so the tags are
+ * read only once. The date is taken from the file itself, the songs in the queue keep their old date after their
+ * tags were edited. When the directory was searched as well, the entry also holds when the directory was last
+ * modified. Lyrics files that are added or removed later change that date. Editing a lyrics file in place doesn't,
+ * so lyrics from a file are also checked against the modification date of that file. The lyrics files of a
+ * directory are listed once and indexed by name.
+ */
+public class LyricsResolver {
+    private static final int MEMORY_CACHE_SIZE = 16;
+    private static final int DIRECTORY_CACHE_SIZE = 8;
+
+    private static final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+
+    @Nullable
+    private static LyricsResolver sInstance;
+
+    @NonNull
+    private final LyricsStore store;
+    // path -> entry, saves the database lookups for the songs played recently
+    @NonNull
+    private final LruCache<String, CachedEntry> entries = new LruCache<>(MEMORY_CACHE_SIZE);
+    // directory path -> its lyrics files
+    @NonNull
+    private final LruCache<String, DirectoryIndex> directories = new LruCache<>(DIRECTORY_CACHE_SIZE);
+
+    @NonNull
+    public static synchronized LyricsResolver getInstance(@NonNull final Context context) {
+        if (sInstance == null) {
+            sInstance = new LyricsResolver(LyricsStore.getInstance(context));
+        }
+        return sInstance;
+    }
+
+    private LyricsResolver(@NonNull LyricsStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Blocks, don't call on the main thread.
+     *
+     * @return the raw lyrics of the song or null if it has none.
+     */
+    @Nullable
+    public String getLyrics(@NonNull final Song song) {
+        if (song.data == null || song.data.isEmpty()) {
+            return null;
+        }
+        final File file = new File(song.data);
+        final File directory = file.getAbsoluteFile().getParentFile();
+        final long dateModified = file.lastModified();
+
+        final CachedEntry cached = entries.get(song.data);
+        if (cached != null && cached.dateModified == dateModified && isCurrent(cached.entry, directory)) {
+            return cached.entry.lyrics;
+        }
+        LyricsStore.Entry entry = store.get(song.data, dateModified);
+        if (entry == null || !isCurrent(entry, directory)) {
+            entry = resolve(song, file, directory);
+            store.put(song.data, dateModified, entry);
+        }
+        entries.put(song.data, new CachedEntry(dateModified, entry));
+        return entry.lyrics;
+    }
+
+    /**
+     * Resolves the lyrics of the song in the background, for example of the next song in the queue.
+     */
+    public void prefetch(@Nullable final Song song) {
+        if (song == null || song.id == Song.EMPTY_SONG.id) {
+            return;
+        }
+        prefetchExecutor.execute(() -> {
+            try {
+                getLyrics(song);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private static boolean isCurrent(@NonNull LyricsStore.Entry entry, @Nullable File directory) {
+        if (entry.directoryModified != 0 && (directory == null || directory.lastModified() != entry.directoryModified)) {
+            return false;
+        }
+        return entry.source != LyricsStore.SOURCE_FILE
+                || (entry.lyricsFile != null && new File(entry.lyricsFile).lastModified() == entry.lyricsFileModified);
+    }
+
+    @NonNull
+    private LyricsStore.Entry resolve(@NonNull final Song song, @NonNull final File file, @Nullable final File directory) {
+        String lyrics = null;
+        try {
+            lyrics = AudioFileIO.read(file).getTagOrCreateDefault().getFirst(FieldKey.LYRICS);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (lyrics != null && lyrics.trim().isEmpty()) {
+            lyrics = null;
+        }
+        if (lyrics != null && Lyrics.isSynchronized(lyrics)) {
+            return new LyricsStore.Entry(LyricsStore.SOURCE_EMBEDDED, 0, lyrics);
+        }
+
+        final long directoryModified = directory == null ? 0 : directory.lastModified();
+        if (directoryModified == 0) {
+            // no directory to search
+            return new LyricsStore.Entry(lyrics == null ? LyricsStore.SOURCE_NONE : LyricsStore.SOURCE_EMBEDDED, 0, lyrics);
+        }
+        int source = lyrics == null ? LyricsStore.SOURCE_NONE : LyricsStore.SOURCE_EMBEDDED;
+        File sourceFile = null;
+        long sourceFileModified = 0;
+        for (File lyricsFile : getDirectoryIndex(directory, directoryModified).find(FileUtil.stripExtension(file.getName()), song.title)) {
+            try {
+                final long lyricsFileModified = lyricsFile.lastModified();
+                final String fileLyrics = FileUtil.read(lyricsFile);
+                if (fileLyrics != null && !fileLyrics.trim().isEmpty()) {
+                    if (Lyrics.isSynchronized(fileLyrics)) {
+                        return new LyricsStore.Entry(LyricsStore.SOURCE_FILE, directoryModified, lyricsFile.getPath(), lyricsFileModified, fileLyrics);
+                    }
+                    lyrics = fileLyrics;
+                    source = LyricsStore.SOURCE_FILE;
+                    sourceFile = lyricsFile;
+                    sourceFileModified = lyricsFileModified;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return new LyricsStore.Entry(source, directoryModified, sourceFile == null ? null : sourceFile.getPath(), sourceFileModified, lyrics);
+    }
+
+    @NonNull
+    private DirectoryIndex getDirectoryIndex(@NonNull final File directory, final long directoryModified) {
+        final String path = directory.getPath();
+        DirectoryIndex index = directories.get(path);
+        if (index == null || index.lastModified != directoryModified) {
+            index = new DirectoryIndex(directory, directoryModified);
+            directories.put(path, index);
+        }
+        return index;
+    }
+
+    private static class CachedEntry {
+        final long dateModified;
+        @NonNull
+        final LyricsStore.Entry entry;
+
+        CachedEntry(long dateModified, @NonNull LyricsStore.Entry entry) {
+            this.dateModified = dateModified;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * The .lrc and .txt files of a directory with their lower case names.
+     */
+    private static class DirectoryIndex {
+        final long lastModified;
+        @NonNull
+        final File[] files;
+        @NonNull
+        final String[] names;
+
+        DirectoryIndex(@NonNull File directory, long lastModified) {
+            this.lastModified = lastModified;
+            File[] found = directory.listFiles(f -> isLyricsFile(f.getName().toLowerCase(Locale.ROOT)));
+            if (found == null) {
+                found = new File[0];
+            }
+            Arrays.sort(found);
+            files = found;
+            names = new String[found.length];
+            for (int i = 0; i < found.length; i++) {
+                names[i] = found[i].getName().toLowerCase(Locale.ROOT);
+            }
+        }
+
+        /**
+         * @return the files whose name contains the file name or the title.
+         */
+        @NonNull
+        List<File> find(@Nullable String fileName, @Nullable String title) {
+            final String lowerFileName = fileName == null ? null : fileName.toLowerCase(Locale.ROOT);
+            final String lowerTitle = title == null ? null : title.toLowerCase(Locale.ROOT);
+            final List<File> found = new ArrayList<>();
+            for (int i = 0; i < names.length; i++) {
+                // the extension isn't part of the match
+                final String name = names[i].substring(0, names[i].length() - 4);
+                if ((lowerFileName != null && name.contains(lowerFileName)) || (lowerTitle != null && name.contains(lowerTitle))) {
+                    found.add(files[i]);
+                }
+            }
+            return found;
+        }
+
+        private static boolean isLyricsFile(@NonNull String lowerName) {
+            return lowerName.endsWith(".lrc") || lowerName.endsWith(".txt");
+        }
+    }
+}
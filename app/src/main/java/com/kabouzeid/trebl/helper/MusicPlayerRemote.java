@@ -235,6 +235,16 @@ public class MusicPlayerRemote {
         return Song.EMPTY_SONG;
     }
 
+    /**
+     * @return the song that plays when the current one completes.
+     */
+    public static Song getNextSong() {
+        if (musicService != null) {
+            return musicService.getSongAt(musicService.getNextPosition(false));
+        }
+        return Song.EMPTY_SONG;
+    }
+
     public static int getPosition() {
         if (musicService != null) {
             return musicService.getPosition();
@@ -373,6 +383,21 @@ public class MusicPlayerRemote {
         return false;
     }
 
+    /**
+     * Like {@link #enqueue(List)} without the toast, for songs that are added bit by bit.
+     */
+    public static boolean appendToQueue(@NonNull List<Song> songs) {
+        if (musicService != null) {
+            if (getPlayingQueue().size() > 0) {
+                musicService.addSongs(songs);
+            } else {
+                openQueue(songs, 0, false);
+            }
+            return true;
+        }
+        return false;
+    }
+
     public static boolean enqueue(@NonNull List<Song> songs) {
         if (musicService != null) {
             if (getPlayingQueue().size() > 0) {
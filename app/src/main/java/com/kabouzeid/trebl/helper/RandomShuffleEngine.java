@@ -0,0 +1,25 @@
+package com.kabouzeid.trebl.helper;
+
+import androidx.annotation.NonNull;
+
+import java.util.Random;
+
+/**
+ * Every remaining position is equally likely, a plain Fisher-Yates shuffle.
+ */
+class RandomShuffleEngine extends ShuffleEngine {
+
+    RandomShuffleEngine(int size, int first, long seed) {
+        super(size, first, seed);
+    }
+
+    @Override
+    public int getMode() {
+        return MODE_RANDOM;
+    }
+
+    @Override
+    protected int choose(int remaining, int previous, @NonNull Random random) {
+        return random.nextInt(remaining);
+    }
+}
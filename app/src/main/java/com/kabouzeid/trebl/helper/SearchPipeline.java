@@ -0,0 +1,237 @@
+package com.kabouzeid.trebl.helper;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kabouzeid.trebl.BuildConfig;
+import com.kabouzeid.trebl.loader.SearchIndex;
+import com.kabouzeid.trebl.loader.TermIndex;
+import com.kabouzeid.trebl.model.Song;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the queries typed into the search box against the {@link SearchIndex}.
+ * <p>
+ * Input is debounced, only a query that stayed unchanged for a moment is searched. A newer query cancels the one in
+ * flight, it stops before its next step and never delivers. The songs are delivered as soon as they are found, the
+ * albums and artists follow with the complete result. Complete results are cached by their words, so going back to
+ * an earlier query, like when deleting characters, doesn't search again. A query that isn't cached is narrowed from
+ * the cached result of its longest prefix when possible: only the hits of the prefix are scored again, not the whole
+ * library. That also covers the prefixes the debounce skipped, once a shorter one was searched.
+ * <p>
+ * All callbacks are made on the main thread.
+ */
+public class SearchPipeline {
+    private static final String TAG = SearchPipeline.class.getSimpleName();
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+
+    private static final long DEBOUNCE_MILLIS = 150;
+    private static final int CACHE_SIZE = 32;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    public interface Callbacks {
+        /**
+         * The songs found for the query, the albums and artists follow with {@link #onSearchCompleted}.
+         */
+        void onSongsFound(@NonNull String query, @NonNull List<Song> songs);
+
+        void onSearchCompleted(@NonNull String query, @NonNull SearchIndex.Result result);
+    }
+
+    @NonNull
+    private final Context context;
+    @NonNull
+    private final Callbacks callbacks;
+    @NonNull
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // folded query -> result, only touched on the main thread
+    @NonNull
+    private final LruCache<String, CachedResult> cache = new LruCache<>(CACHE_SIZE);
+
+    @Nullable
+    private Search pending;
+    @Nullable
+    private Search running;
+
+    public SearchPipeline(@NonNull Context context, @NonNull Callbacks callbacks) {
+        this.context = context.getApplicationContext();
+        this.callbacks = callbacks;
+    }
+
+    /**
+     * Searches the query once the input settled. An empty query completes right away with an empty result.
+     */
+    public void search(@Nullable String query) {
+        cancel();
+        final String text = query == null ? "" : query;
+        final String[] tokens = TermIndex.tokenize(text);
+        final String key = TextUtils.join(" ", tokens);
+        if (tokens.length == 0) {
+            callbacks.onSearchCompleted(text, SearchIndex.Result.EMPTY);
+            return;
+        }
+        final CachedResult cached = cache.get(key);
+        if (cached != null) {
+            if (DEBUG) Log.d(TAG, "\"" + text + "\" served from cache");
+            callbacks.onSearchCompleted(text, cached.result);
+            return;
+        }
+        final Search search = new Search(text, tokens, key, findPrefix(key, tokens));
+        pending = search;
+        mainHandler.postDelayed(search.start, DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * @return the cached result of the longest prefix of the query that narrows to it, or null
+     */
+    @Nullable
+    private CachedResult findPrefix(@NonNull String key, @NonNull String[] tokens) {
+        for (int end = key.length() - 1; end > 0; end--) {
+            if (key.charAt(end - 1) == ' ') {
+                // the same words as without the space
+                continue;
+            }
+            final CachedResult cached = cache.get(key.substring(0, end));
+            if (cached != null && TermIndex.narrows(cached.tokens, tokens)) {
+                return cached;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the cached results, for when the library changed.
+     */
+    public void invalidate() {
+        cache.evictAll();
+    }
+
+    /**
+     * Cancels the pending and the running search, neither delivers afterwards.
+     */
+    public void cancel() {
+        if (pending != null) {
+            mainHandler.removeCallbacks(pending.start);
+            pending = null;
+        }
+        if (running != null) {
+            running.cancelled = true;
+            running = null;
+        }
+    }
+
+    private class Search implements Runnable {
+        @NonNull
+        final String query;
+        @NonNull
+        final String[] tokens;
+        @NonNull
+        final String key;
+        // the hits to narrow, null to search the whole index
+        @Nullable
+        final CachedResult prefix;
+        final long createdAt = SystemClock.elapsedRealtime();
+        long startedAt;
+
+        // set on the main thread, read by the executor
+        volatile boolean cancelled;
+
+        @NonNull
+        final Runnable start = () -> {
+            pending = null;
+            running = this;
+            startedAt = SystemClock.elapsedRealtime();
+            executor.execute(this);
+        };
+
+        Search(@NonNull String query, @NonNull String[] tokens, @NonNull String key, @Nullable CachedResult prefix) {
+            this.query = query;
+            this.tokens = tokens;
+            this.key = key;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) return;
+            final SearchIndex index = SearchIndex.getInstance(context);
+            // positions of an older index don't apply
+            final CachedResult narrowed = prefix != null && prefix.index == index ? prefix : null;
+
+            if (cancelled) return;
+            final int[] rankedSongs = index.rankSongs(tokens, narrowed == null ? null : narrowed.songs);
+            final List<Song> songs = index.getSongs(rankedSongs);
+            final long songsAt = SystemClock.elapsedRealtime();
+            deliver(() -> callbacks.onSongsFound(query, songs));
+
+            if (cancelled) return;
+            final int[] rankedArtists = index.rankArtists(tokens, narrowed == null ? null : narrowed.artists);
+            if (cancelled) return;
+            final int[] rankedAlbums = index.rankAlbums(tokens, narrowed == null ? null : narrowed.albums);
+            final SearchIndex.Result result = new SearchIndex.Result(songs, index.getAlbums(rankedAlbums), index.getArtists(rankedArtists));
+            final CachedResult cached = new CachedResult(index, tokens, rankedSongs, rankedAlbums, rankedArtists, result);
+            deliver(() -> {
+                running = null;
+                cache.put(key, cached);
+                callbacks.onSearchCompleted(query, result);
+                logLatency(songsAt - startedAt, narrowed != null);
+            });
+        }
+
+        private void deliver(@NonNull Runnable callback) {
+            mainHandler.post(() -> {
+                // checked again, the search may have been cancelled while the callback was queued
+                if (!cancelled) {
+                    callback.run();
+                }
+            });
+        }
+
+        private void logLatency(long songsMillis, boolean narrowed) {
+            if (!DEBUG) return;
+            final long now = SystemClock.elapsedRealtime();
+            Log.d(TAG, "\"" + query + "\" debounced " + (startedAt - createdAt) + "ms, songs after "
+                    + songsMillis + "ms, complete after " + (now - startedAt) + "ms"
+                    + (narrowed ? ", narrowed from the hits of \"" + TextUtils.join(" ", prefix.tokens) + "\"" : ""));
+        }
+    }
+
+    /**
+     * A complete result with the positions of its hits in the index that found them.
+     */
+    private static class CachedResult {
+        @NonNull
+        final SearchIndex index;
+        @NonNull
+        final String[] tokens;
+        @NonNull
+        final int[] songs;
+        @NonNull
+        final int[] albums;
+        @NonNull
+        final int[] artists;
+        @NonNull
+        final SearchIndex.Result result;
+
+        CachedResult(@NonNull SearchIndex index, @NonNull String[] tokens, @NonNull int[] songs, @NonNull int[] albums,
+                     @NonNull int[] artists, @NonNull SearchIndex.Result result) {
+            this.index = index;
+            this.tokens = tokens;
+            this.songs = songs;
+            this.albums = albums;
+            this.artists = artists;
+            this.result = result;
+        }
+    }
+}
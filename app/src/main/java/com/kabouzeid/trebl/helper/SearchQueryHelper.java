@@ -5,89 +5,101 @@ import android.content.Context;
 import android.os.Bundle;
 import android.provider.MediaStore;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import com.kabouzeid.trebl.loader.SongLoader;
+import com.kabouzeid.trebl.loader.LibraryIndex;
 import com.kabouzeid.trebl.model.Song;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
+ * Resolves the songs of a media search, like "play X by Y" from the assistant.
+ * <p>
+ * The fallbacks are tried from the most specific (artist, album and title) down to a free text match of the
+ * title. All of them are scored in a single pass over the songs of the {@link LibraryIndex}, the songs of the most
+ * specific fallback that matches anything win.
+ *
  * @author Karim Abou Zeid (kabouzeid)
  */
 public class SearchQueryHelper {
-    private static final String TITLE_SELECTION = "lower(" + MediaStore.Audio.AudioColumns.TITLE + ") = ?";
-    private static final String ALBUM_SELECTION = "lower(" + MediaStore.Audio.AudioColumns.ALBUM + ") = ?";
-    private static final String ARTIST_SELECTION = "lower(" + MediaStore.Audio.AudioColumns.ARTIST + ") = ?";
-    private static final String AND = " AND ";
+    private static final int ARTIST_ALBUM_TITLE = 0;
+    private static final int ARTIST_TITLE = 1;
+    private static final int ALBUM_TITLE = 2;
+    private static final int ARTIST = 3;
+    private static final int ALBUM = 4;
+    private static final int TITLE = 5;
+    private static final int QUERY_ARTIST = 6;
+    private static final int QUERY_ALBUM = 7;
+    private static final int QUERY_TITLE = 8;
+    private static final int QUERY_IN_TITLE = 9;
+    private static final int NO_MATCH = 10;
 
     @NonNull
     public static List<Song> getSongs(@NonNull final Context context, @NonNull final Bundle extras) {
-        final String query = extras.getString(SearchManager.QUERY, null);
-        final String artistName = extras.getString(MediaStore.EXTRA_MEDIA_ARTIST, null);
-        final String albumName = extras.getString(MediaStore.EXTRA_MEDIA_ALBUM, null);
-        final String titleName = extras.getString(MediaStore.EXTRA_MEDIA_TITLE, null);
+        final String query = normalize(extras.getString(SearchManager.QUERY, null));
+        final String artistName = normalize(extras.getString(MediaStore.EXTRA_MEDIA_ARTIST, null));
+        final String albumName = normalize(extras.getString(MediaStore.EXTRA_MEDIA_ALBUM, null));
+        final String titleName = normalize(extras.getString(MediaStore.EXTRA_MEDIA_TITLE, null));
 
         List<Song> songs = new ArrayList<>();
-
-        if (artistName != null && albumName != null && titleName != null) {
-            songs = SongLoader.getSongs(SongLoader.makeSongCursor(context, ARTIST_SELECTION + AND + ALBUM_SELECTION + AND + TITLE_SELECTION, new String[]{artistName.toLowerCase().trim(), albumName.toLowerCase().trim(), titleName.toLowerCase().trim()}));
-        }
-        if (!songs.isEmpty()) {
-            return songs;
-        }
-
-        if (artistName != null && titleName != null) {
-            songs = SongLoader.getSongs(SongLoader.makeSongCursor(context, ARTIST_SELECTION + AND + TITLE_SELECTION, new String[]{artistName.toLowerCase().trim(), titleName.toLowerCase().trim()}));
-        }
-        if (!songs.isEmpty()) {
-            return songs;
-        }
-
-        if (albumName != null && titleName != null) {
-            songs = SongLoader.getSongs(SongLoader.makeSongCursor(context, ALBUM_SELECTION + AND + TITLE_SELECTION, new String[]{albumName.toLowerCase().trim(), titleName.toLowerCase().trim()}));
-        }
-        if (!songs.isEmpty()) {
-            return songs;
-        }
-
-        if (artistName != null) {
-            songs = SongLoader.getSongs(SongLoader.makeSongCursor(context, ARTIST_SELECTION, new String[]{artistName.toLowerCase().trim()}));
-        }
-        if (!songs.isEmpty()) {
-            return songs;
-        }
-
-        if (albumName != null) {
-            songs = SongLoader.getSongs(SongLoader.makeSongCursor(context, ALBUM_SELECTION, new String[]{albumName.toLowerCase().trim()}));
-        }
-        if (!songs.isEmpty()) {
-            return songs;
-        }
-
-        if (titleName != null) {
-            songs = SongLoader.getSongs(SongLoader.makeSongCursor(context, TITLE_SELECTION, new String[]{titleName.toLowerCase().trim()}));
-        }
-        if (!songs.isEmpty()) {
-            return songs;
-        }
-
-
-        songs = SongLoader.getSongs(SongLoader.makeSongCursor(context, ARTIST_SELECTION, new String[]{query.toLowerCase().trim()}));
-        if (!songs.isEmpty()) {
-            return songs;
-        }
-
-        songs = SongLoader.getSongs(SongLoader.makeSongCursor(context, ALBUM_SELECTION, new String[]{query.toLowerCase().trim()}));
-        if (!songs.isEmpty()) {
-            return songs;
+        int bestTier = NO_MATCH;
+        for (Song song : LibraryIndex.getInstance(context).getSongs()) {
+            final int tier = getTier(song, query, artistName, albumName, titleName, bestTier);
+            if (tier < bestTier) {
+                bestTier = tier;
+                songs = new ArrayList<>();
+            }
+            if (tier == bestTier && tier != NO_MATCH) {
+                songs.add(song);
+            }
         }
+        return songs;
+    }
 
-        songs = SongLoader.getSongs(SongLoader.makeSongCursor(context, TITLE_SELECTION, new String[]{query.toLowerCase().trim()}));
-        if (!songs.isEmpty()) {
-            return songs;
+    /**
+     * @return the most specific fallback the song matches, or {@link #NO_MATCH} if it matches none before the limit.
+     */
+    private static int getTier(@NonNull Song song, @Nullable String query, @Nullable String artistName, @Nullable String albumName, @Nullable String titleName, int limit) {
+        final String artist = normalize(song.artistName);
+        final String album = normalize(song.albumName);
+        final String title = normalize(song.title);
+        final boolean artistMatches = artistName != null && artistName.equals(artist);
+        final boolean albumMatches = albumName != null && albumName.equals(album);
+        final boolean titleMatches = titleName != null && titleName.equals(title);
+
+        final int tier;
+        if (artistMatches && albumMatches && titleMatches) {
+            tier = ARTIST_ALBUM_TITLE;
+        } else if (artistMatches && titleMatches) {
+            tier = ARTIST_TITLE;
+        } else if (albumMatches && titleMatches) {
+            tier = ALBUM_TITLE;
+        } else if (artistMatches) {
+            tier = ARTIST;
+        } else if (albumMatches) {
+            tier = ALBUM;
+        } else if (titleMatches) {
+            tier = TITLE;
+        } else if (query == null || limit <= QUERY_ARTIST) {
+            tier = NO_MATCH;
+        } else if (query.equals(artist)) {
+            tier = QUERY_ARTIST;
+        } else if (query.equals(album)) {
+            tier = QUERY_ALBUM;
+        } else if (query.equals(title)) {
+            tier = QUERY_TITLE;
+        } else if (title != null && title.contains(query)) {
+            tier = QUERY_IN_TITLE;
+        } else {
+            tier = NO_MATCH;
         }
+        return tier;
+    }
 
-        return SongLoader.getSongs(context, query);
+    @Nullable
+    private static String normalize(@Nullable String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT).trim();
     }
 }
@@ -0,0 +1,155 @@
+package com.kabouzeid.trebl.helper;
+
+import androidx.annotation.NonNull;
+
+import com.kabouzeid.trebl.model.Song;
+import com.kabouzeid.trebl.util.LongIntMap;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Shuffles the positions of a queue with a lazy Fisher-Yates shuffle.
+ * <p>
+ * Positions are only drawn when they are asked for, so shuffling a huge queue does no work up front. The untouched
+ * rest of the permutation is kept implicitly, only the swapped positions are stored until the whole permutation
+ * is requested. The random numbers come from a seed, the same seed, mode and songs always give the same
+ * permutation. That's what makes it possible to restore a shuffle by saving just the seed.
+ * <p>
+ * Subclasses decide which of the remaining positions is drawn next.
+ */
+public abstract class ShuffleEngine {
+    public static final int MODE_RANDOM = 0;
+    public static final int MODE_SPREAD = 1;
+
+    private static final Random seeds = new Random();
+
+    private final int size;
+    private final int first;
+    private final long seed;
+    private final Random random;
+
+    // position -> value for the positions that were swapped, null once the permutation is dense
+    private LongIntMap swapped = new LongIntMap();
+    private int[] dense;
+    private int generated;
+
+    /**
+     * @param mode  {@link #MODE_RANDOM} or {@link #MODE_SPREAD}
+     * @param first the position that should come first, or -1
+     */
+    @NonNull
+    public static ShuffleEngine create(int mode, @NonNull List<Song> songs, int first, long seed) {
+        if (mode == MODE_SPREAD) {
+            return new SpreadShuffleEngine(songs, first, seed);
+        }
+        return new RandomShuffleEngine(songs.size(), first, seed);
+    }
+
+    public static long newSeed() {
+        synchronized (seeds) {
+            return seeds.nextLong();
+        }
+    }
+
+    protected ShuffleEngine(int size, int first, long seed) {
+        this.size = size;
+        this.first = first >= 0 && first < size ? first : -1;
+        this.seed = seed;
+        this.random = new Random(seed);
+        if (this.first != -1) {
+            swap(0, this.first);
+            generated = 1;
+        }
+    }
+
+    public abstract int getMode();
+
+    public final int size() {
+        return size;
+    }
+
+    public final int getFirst() {
+        return first;
+    }
+
+    public final long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the original position that is shuffled to the given position.
+     */
+    public final synchronized int get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", Size: " + size);
+        }
+        while (generated <= position) {
+            generateNext();
+        }
+        return valueAt(position);
+    }
+
+    /**
+     * @return the whole permutation, for every position the original position.
+     */
+    @NonNull
+    public final synchronized int[] toArray() {
+        if (dense == null) {
+            final int[] values = new int[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = valueAt(i);
+            }
+            dense = values;
+            swapped = null;
+        }
+        while (generated < size) {
+            generateNext();
+        }
+        return dense.clone();
+    }
+
+    /**
+     * @param remaining the number of positions that can still be drawn
+     * @param previous  the original position drawn before, or -1
+     * @return the offset of the drawn candidate, see {@link #candidate(int)}, between 0 and remaining - 1
+     */
+    protected abstract int choose(int remaining, int previous, @NonNull Random random);
+
+    /**
+     * @return the original position of a candidate that wasn't drawn yet
+     */
+    protected final int candidate(int offset) {
+        return valueAt(generated + offset);
+    }
+
+    private void generateNext() {
+        final int position = generated;
+        final int remaining = size - position;
+        final int previous = position > 0 ? valueAt(position - 1) : -1;
+        final int offset = remaining > 1 ? choose(remaining, previous, random) : 0;
+        swap(position, position + offset);
+        generated++;
+    }
+
+    private int valueAt(int position) {
+        if (dense != null) {
+            return dense[position];
+        }
+        final int value = swapped.get(position);
+        return value == LongIntMap.NO_VALUE ? position : value;
+    }
+
+    private void swap(int a, int b) {
+        if (a == b) return;
+        final int valueA = valueAt(a);
+        final int valueB = valueAt(b);
+        if (dense != null) {
+            dense[a] = valueB;
+            dense[b] = valueA;
+        } else {
+            swapped.put(a, valueB);
+            swapped.put(b, valueA);
+        }
+    }
+}
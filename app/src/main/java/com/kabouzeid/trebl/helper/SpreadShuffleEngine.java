@@ -0,0 +1,55 @@
+package com.kabouzeid.trebl.helper;
+
+import androidx.annotation.NonNull;
+
+import com.kabouzeid.trebl.model.Song;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Avoids playing two songs of the same artist or album back to back.
+ * <p>
+ * A few random candidates are drawn for every position and the first one that doesn't share the artist or album
+ * of the previous song is taken. If all of them do, as with a queue of one album, the last candidate is taken.
+ */
+class SpreadShuffleEngine extends ShuffleEngine {
+    private static final int MAX_ATTEMPTS = 8;
+
+    @NonNull
+    private final long[] artistIds;
+    @NonNull
+    private final long[] albumIds;
+
+    SpreadShuffleEngine(@NonNull List<Song> songs, int first, long seed) {
+        super(songs.size(), first, seed);
+        artistIds = new long[songs.size()];
+        albumIds = new long[songs.size()];
+        for (int i = 0; i < artistIds.length; i++) {
+            final Song song = songs.get(i);
+            artistIds[i] = song.artistId;
+            albumIds[i] = song.albumId;
+        }
+    }
+
+    @Override
+    public int getMode() {
+        return MODE_SPREAD;
+    }
+
+    @Override
+    protected int choose(int remaining, int previous, @NonNull Random random) {
+        int offset = random.nextInt(remaining);
+        if (previous < 0) {
+            return offset;
+        }
+        for (int attempt = 1; attempt < MAX_ATTEMPTS && isTooClose(candidate(offset), previous); attempt++) {
+            offset = random.nextInt(remaining);
+        }
+        return offset;
+    }
+
+    private boolean isTooClose(int candidate, int previous) {
+        return artistIds[candidate] == artistIds[previous] || albumIds[candidate] == albumIds[previous];
+    }
+}
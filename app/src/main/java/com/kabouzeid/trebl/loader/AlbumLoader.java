@@ -7,6 +7,7 @@ import androidx.annotation.Nullable;
 
 import com.kabouzeid.trebl.model.Album;
 import com.kabouzeid.trebl.model.Song;
+import com.kabouzeid.trebl.util.LongIntMap;
 import com.kabouzeid.trebl.util.PreferenceUtil;
 
 import java.util.ArrayList;
@@ -56,8 +57,9 @@ public class AlbumLoader {
     public static List<Album> splitIntoAlbums(@Nullable final List<Song> songs) {
         List<Album> albums = new ArrayList<>();
         if (songs != null) {
+            LongIntMap albumPositions = new LongIntMap();
             for (Song song : songs) {
-                getOrCreateAlbum(albums, song.albumId).songs.add(song);
+                getOrCreateAlbum(albums, albumPositions, song.albumId).songs.add(song);
             }
         }
         for (Album album : albums) {
@@ -66,13 +68,13 @@ public class AlbumLoader {
         return albums;
     }
 
-    private static Album getOrCreateAlbum(List<Album> albums, long albumId) {
-        for (Album album : albums) {
-            if (!album.songs.isEmpty() && album.songs.get(0).albumId == albumId) {
-                return album;
-            }
+    private static Album getOrCreateAlbum(List<Album> albums, LongIntMap albumPositions, long albumId) {
+        int position = albumPositions.get(albumId);
+        if (position != LongIntMap.NO_VALUE) {
+            return albums.get(position);
         }
         Album album = new Album();
+        albumPositions.put(albumId, albums.size());
         albums.add(album);
         return album;
     }
@@ -8,6 +8,7 @@ import androidx.annotation.Nullable;
 import com.kabouzeid.trebl.model.Album;
 import com.kabouzeid.trebl.model.Artist;
 import com.kabouzeid.trebl.model.Song;
+import com.kabouzeid.trebl.util.LongIntMap;
 import com.kabouzeid.trebl.util.PreferenceUtil;
 
 import java.util.ArrayList;
@@ -58,20 +59,21 @@ public class ArtistLoader {
     public static List<Artist> splitIntoArtists(@Nullable final List<Album> albums) {
         List<Artist> artists = new ArrayList<>();
         if (albums != null) {
+            LongIntMap artistPositions = new LongIntMap();
             for (Album album : albums) {
-                getOrCreateArtist(artists, album.getArtistId()).albums.add(album);
+                getOrCreateArtist(artists, artistPositions, album.getArtistId()).albums.add(album);
             }
         }
         return artists;
     }
 
-    private static Artist getOrCreateArtist(List<Artist> artists, long artistId) {
-        for (Artist artist : artists) {
-            if (!artist.albums.isEmpty() && !artist.albums.get(0).songs.isEmpty() && artist.albums.get(0).songs.get(0).artistId == artistId) {
-                return artist;
-            }
+    private static Artist getOrCreateArtist(List<Artist> artists, LongIntMap artistPositions, long artistId) {
+        int position = artistPositions.get(artistId);
+        if (position != LongIntMap.NO_VALUE) {
+            return artists.get(position);
         }
         Artist artist = new Artist();
+        artistPositions.put(artistId, artists.size());
         artists.add(artist);
         return artist;
     }
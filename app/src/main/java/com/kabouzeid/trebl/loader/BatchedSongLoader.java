@@ -0,0 +1,165 @@
+package com.kabouzeid.trebl.loader;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.OperationCanceledException;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AudioColumns;
+import androidx.annotation.NonNull;
+
+import com.kabouzeid.trebl.model.Song;
+import com.kabouzeid.trebl.util.LongIntMap;
+import com.kabouzeid.trebl.util.LongList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Looks up many songs by id or by path at once.
+ * <p>
+ * SQLite limits the number of arguments of a statement, to 999 on older versions, so the ids and paths are split
+ * into chunks. The chunks are queried in parallel and merged through a map from id (or path) to position, so the
+ * work stays linear in the number of songs. Duplicates are only queried once. A thread that is interrupted while
+ * waiting for the chunks gets an {@link OperationCanceledException} instead of an incomplete result, which the
+ * callers would take for songs that don't exist anymore.
+ */
+public class BatchedSongLoader {
+    // leaves room for the blacklist selection arguments
+    public static final int CHUNK_SIZE = 500;
+
+    private static final int THREADS = 3;
+    private static final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    /**
+     * @param applyBlacklist whether blacklisted songs are left out
+     * @return for every id its song, or null if there is none
+     */
+    @NonNull
+    public static Song[] getSongsById(@NonNull final Context context, @NonNull final long[] ids, final boolean applyBlacklist) {
+        final LongIntMap uniquePositions = new LongIntMap(ids.length);
+        final LongList uniqueIds = new LongList(ids.length);
+        for (long id : ids) {
+            if (!uniquePositions.containsKey(id)) {
+                uniquePositions.put(id, uniqueIds.size());
+                uniqueIds.add(id);
+            }
+        }
+        final String[] values = new String[uniqueIds.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = String.valueOf(uniqueIds.get(i));
+        }
+
+        final Song[] uniqueSongs = new Song[values.length];
+        for (Song song : query(context, BaseColumns._ID, values, applyBlacklist)) {
+            final int position = uniquePositions.get(song.id);
+            if (position != LongIntMap.NO_VALUE) {
+                uniqueSongs[position] = song;
+            }
+        }
+
+        final Song[] songs = new Song[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            songs[i] = uniqueSongs[uniquePositions.get(ids[i])];
+        }
+        return songs;
+    }
+
+    /**
+     * Blacklisted songs are left out.
+     *
+     * @return for every path its song, or null if there is none
+     */
+    @NonNull
+    public static Song[] getSongsByPath(@NonNull final Context context, @NonNull final String[] paths) {
+        final Map<String, Integer> uniquePositions = new HashMap<>(paths.length * 2);
+        final List<String> uniquePaths = new ArrayList<>(paths.length);
+        for (String path : paths) {
+            if (!uniquePositions.containsKey(path)) {
+                uniquePositions.put(path, uniquePaths.size());
+                uniquePaths.add(path);
+            }
+        }
+
+        final Song[] uniqueSongs = new Song[uniquePaths.size()];
+        for (Song song : query(context, AudioColumns.DATA, uniquePaths.toArray(new String[0]), true)) {
+            final Integer position = uniquePositions.get(song.data);
+            if (position != null) {
+                uniqueSongs[position] = song;
+            }
+        }
+
+        final Song[] songs = new Song[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            songs[i] = uniqueSongs[uniquePositions.get(paths[i])];
+        }
+        return songs;
+    }
+
+    /**
+     * @return {@code column IN (?,...)} with the given number of arguments
+     */
+    @NonNull
+    public static String makeInSelection(@NonNull final String column, final int count) {
+        final StringBuilder selection = new StringBuilder(column.length() + 6 + count * 2);
+        selection.append(column).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        return selection.append(")").toString();
+    }
+
+    @NonNull
+    private static List<Song> query(@NonNull final Context context, @NonNull final String column, @NonNull final String[] values, final boolean applyBlacklist) {
+        if (values.length <= CHUNK_SIZE) {
+            return queryChunk(context, column, values, applyBlacklist);
+        }
+
+        final List<Future<List<Song>>> chunks = new ArrayList<>();
+        for (int start = 0; start < values.length; start += CHUNK_SIZE) {
+            final String[] chunk = Arrays.copyOfRange(values, start, Math.min(start + CHUNK_SIZE, values.length));
+            chunks.add(executor.submit(() -> queryChunk(context, column, chunk, applyBlacklist)));
+        }
+        final List<Song> songs = new ArrayList<>(values.length);
+        try {
+            for (Future<List<Song>> chunk : chunks) {
+                songs.addAll(chunk.get());
+            }
+        } catch (InterruptedException e) {
+            for (Future<List<Song>> chunk : chunks) {
+                chunk.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        return songs;
+    }
+
+    @NonNull
+    private static List<Song> queryChunk(@NonNull final Context context, @NonNull final String column, @NonNull final String[] values, final boolean applyBlacklist) {
+        final String selection = makeInSelection(column, values.length);
+        if (applyBlacklist) {
+            return SongLoader.getSongs(SongLoader.makeSongCursor(context, selection, values, null));
+        }
+        Cursor cursor;
+        try {
+            cursor = context.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                    SongLoader.BASE_PROJECTION, SongLoader.BASE_SELECTION + " AND " + selection, values, null);
+        } catch (SecurityException e) {
+            cursor = null;
+        }
+        return SongLoader.getSongs(cursor);
+    }
+}
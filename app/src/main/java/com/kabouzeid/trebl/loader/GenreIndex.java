@@ -0,0 +1,269 @@
+package com.kabouzeid.trebl.loader;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.provider.MediaStore.Audio.Genres;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kabouzeid.trebl.model.Genre;
+import com.kabouzeid.trebl.model.Song;
+import com.kabouzeid.trebl.util.LongIntMap;
+import com.kabouzeid.trebl.util.LongList;
+import com.kabouzeid.trebl.util.PreferenceUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The genres of the {@link LibraryIndex} with their songs.
+ * <p>
+ * The memberships are read once per library generation: a single pass over the genre column of the songs where
+ * there is one, id only member queries otherwise. They are mapped to positions in the library index, so the song
+ * counts and the songs of a genre don't need any further query and blacklisted songs are left out for free.
+ * <p>
+ * Genres without any member are removed from the MediaStore in the background, after the index was built.
+ */
+public class GenreIndex {
+    private static final ExecutorService cleanupExecutor = Executors.newSingleThreadExecutor();
+
+    @Nullable
+    private static GenreIndex sInstance;
+
+    @NonNull
+    private final LibraryIndex libraryIndex;
+    @NonNull
+    private final String sortOrder;
+    // only the genres with songs, in genre sort order
+    @NonNull
+    private final List<Genre> genres;
+    // for every genre the positions of its songs in the library index, ascending
+    @NonNull
+    private final int[][] songPositions;
+    @NonNull
+    private final LongIntMap genrePositions;
+
+    @NonNull
+    public static synchronized GenreIndex getInstance(@NonNull final Context context) {
+        final LibraryIndex libraryIndex = LibraryIndex.getInstance(context);
+        final String sortOrder = PreferenceUtil.getInstance(context).getGenreSortOrder();
+        if (sInstance == null || sInstance.libraryIndex.getGeneration() != libraryIndex.getGeneration()
+                || !sInstance.sortOrder.equals(sortOrder)) {
+            sInstance = build(context, libraryIndex, sortOrder);
+        }
+        return sInstance;
+    }
+
+    private GenreIndex(@NonNull LibraryIndex libraryIndex, @NonNull String sortOrder, @NonNull List<Genre> genres, @NonNull int[][] songPositions) {
+        this.libraryIndex = libraryIndex;
+        this.sortOrder = sortOrder;
+        this.genres = genres;
+        this.songPositions = songPositions;
+        genrePositions = new LongIntMap(genres.size());
+        for (int i = 0; i < genres.size(); i++) {
+            genrePositions.put(genres.get(i).id, i);
+        }
+    }
+
+    /**
+     * @return the genres that have songs, in genre sort order.
+     */
+    @NonNull
+    public List<Genre> getGenres() {
+        return genres;
+    }
+
+    /**
+     * @return the songs of the genre in song sort order.
+     */
+    @NonNull
+    public List<Song> getSongs(long genreId) {
+        final int genrePosition = genrePositions.get(genreId);
+        if (genrePosition == LongIntMap.NO_VALUE) {
+            return new ArrayList<>();
+        }
+        final List<Song> librarySongs = libraryIndex.getSongs();
+        final int[] positions = songPositions[genrePosition];
+        final List<Song> songs = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            songs.add(librarySongs.get(position));
+        }
+        return songs;
+    }
+
+    @NonNull
+    private static GenreIndex build(@NonNull final Context context, @NonNull final LibraryIndex libraryIndex, @NonNull final String sortOrder) {
+        final LongList genreIds = new LongList();
+        final List<String> genreNames = new ArrayList<>();
+        final Cursor cursor;
+        try {
+            cursor = context.getContentResolver().query(Genres.EXTERNAL_CONTENT_URI,
+                    new String[]{Genres._ID, Genres.NAME}, null, null, sortOrder);
+        } catch (SecurityException e) {
+            return new GenreIndex(libraryIndex, sortOrder, Collections.emptyList(), new int[0][]);
+        }
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    genreIds.add(cursor.getLong(0));
+                    genreNames.add(cursor.getString(1));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        final LongIntMap genrePositions = new LongIntMap(genreIds.size());
+        for (int i = 0; i < genreIds.size(); i++) {
+            genrePositions.put(genreIds.get(i), i);
+        }
+        final IntBuilder[] members = new IntBuilder[genreIds.size()];
+        final boolean[] hasAnyMember = new boolean[genreIds.size()];
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            fetchGenreColumn(context, libraryIndex, genrePositions, members, hasAnyMember);
+        } else {
+            for (int i = 0; i < genreIds.size(); i++) {
+                fetchMembers(context, libraryIndex, genreIds.get(i), i, members, hasAnyMember);
+            }
+        }
+
+        final List<Genre> genres = new ArrayList<>();
+        final List<int[]> songPositions = new ArrayList<>();
+        final LongList emptyGenreIds = new LongList();
+        for (int i = 0; i < genreIds.size(); i++) {
+            if (members[i] != null) {
+                final int[] positions = members[i].toSortedArray();
+                genres.add(new Genre(genreIds.get(i), genreNames.get(i), positions.length));
+                songPositions.add(positions);
+            } else if (!hasAnyMember[i]) {
+                emptyGenreIds.add(genreIds.get(i));
+            }
+        }
+        if (!emptyGenreIds.isEmpty()) {
+            removeGenres(context.getApplicationContext(), emptyGenreIds.toArray());
+        }
+        return new GenreIndex(libraryIndex, sortOrder, genres, songPositions.toArray(new int[0][]));
+    }
+
+    /**
+     * One pass over the genre id of every song.
+     */
+    private static void fetchGenreColumn(@NonNull final Context context, @NonNull final LibraryIndex libraryIndex, @NonNull final LongIntMap genrePositions,
+                                         @NonNull final IntBuilder[] members, @NonNull final boolean[] hasAnyMember) {
+        final Cursor cursor;
+        try {
+            // not restricted to the library, genres of other audio files aren't empty
+            cursor = context.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                    new String[]{BaseColumns._ID, AudioColumns.GENRE_ID}, AudioColumns.GENRE_ID + " IS NOT NULL", null, null);
+        } catch (SecurityException e) {
+            // unknown, so not empty either
+            Arrays.fill(hasAnyMember, true);
+            return;
+        }
+        if (cursor == null) {
+            Arrays.fill(hasAnyMember, true);
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                final int genrePosition = genrePositions.get(cursor.getLong(1));
+                if (genrePosition == LongIntMap.NO_VALUE) continue;
+                hasAnyMember[genrePosition] = true;
+                addIfInLibrary(libraryIndex, cursor.getLong(0), genrePosition, members);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void fetchMembers(@NonNull final Context context, @NonNull final LibraryIndex libraryIndex, final long genreId, final int genrePosition,
+                                     @NonNull final IntBuilder[] members, @NonNull final boolean[] hasAnyMember) {
+        final Cursor cursor;
+        try {
+            cursor = context.getContentResolver().query(Genres.Members.getContentUri("external", genreId),
+                    new String[]{Genres.Members.AUDIO_ID}, null, null, null);
+        } catch (SecurityException e) {
+            // unknown, so not empty either
+            hasAnyMember[genrePosition] = true;
+            return;
+        }
+        if (cursor == null) {
+            hasAnyMember[genrePosition] = true;
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                hasAnyMember[genrePosition] = true;
+                addIfInLibrary(libraryIndex, cursor.getLong(0), genrePosition, members);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void addIfInLibrary(@NonNull final LibraryIndex libraryIndex, final long songId, final int genrePosition, @NonNull final IntBuilder[] members) {
+        final int songPosition = libraryIndex.getSongPosition(songId);
+        if (songPosition == LongIntMap.NO_VALUE) return;
+        if (members[genrePosition] == null) {
+            members[genrePosition] = new IntBuilder();
+        }
+        members[genrePosition].add(songPosition);
+    }
+
+    /**
+     * Deletes the genres in a single statement per chunk, after loading.
+     */
+    private static void removeGenres(@NonNull final Context context, @NonNull final long[] genreIds) {
+        cleanupExecutor.execute(() -> {
+            for (int start = 0; start < genreIds.length; start += BatchedSongLoader.CHUNK_SIZE) {
+                final int end = Math.min(start + BatchedSongLoader.CHUNK_SIZE, genreIds.length);
+                final String[] selectionValues = new String[end - start];
+                for (int i = start; i < end; i++) {
+                    selectionValues[i - start] = String.valueOf(genreIds[i]);
+                }
+                try {
+                    context.getContentResolver().delete(Genres.EXTERNAL_CONTENT_URI,
+                            BatchedSongLoader.makeInSelection(Genres._ID, selectionValues.length), selectionValues);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    // nothing we can do then
+                }
+            }
+        });
+    }
+
+    private static final class IntBuilder {
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * @return the values sorted, without duplicates.
+         */
+        @NonNull
+        int[] toSortedArray() {
+            Arrays.sort(values, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || values[i] != values[unique - 1]) {
+                    values[unique++] = values[i];
+                }
+            }
+            return Arrays.copyOf(values, unique);
+        }
+    }
+}
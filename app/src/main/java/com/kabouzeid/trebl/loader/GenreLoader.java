@@ -1,87 +1,22 @@
 package com.kabouzeid.trebl.loader;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.provider.MediaStore.Audio.Genres;
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 
 import com.kabouzeid.trebl.model.Genre;
 import com.kabouzeid.trebl.model.Song;
-import com.kabouzeid.trebl.util.PreferenceUtil;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class GenreLoader {
 
     @NonNull
     public static List<Genre> getAllGenres(@NonNull final Context context) {
-        return getGenresFromCursor(context, makeGenreCursor(context));
+        return GenreIndex.getInstance(context).getGenres();
     }
 
     @NonNull
     public static List<Song> getSongs(@NonNull final Context context, final long genreId) {
-        return SongLoader.getSongs(makeGenreSongCursor(context, genreId));
-    }
-
-    @NonNull
-    private static List<Genre> getGenresFromCursor(@NonNull final Context context, @Nullable final Cursor cursor) {
-        final List<Genre> genres = new ArrayList<>();
-        if (cursor != null) {
-            if (cursor.moveToFirst()) {
-                do {
-                    Genre genre = getGenreFromCursor(context, cursor);
-                    if (genre.songCount > 0) {
-                        genres.add(genre);
-                    } else {
-                        // try to remove the empty genre from the media store
-                        try {
-                            context.getContentResolver().delete(Genres.EXTERNAL_CONTENT_URI, Genres._ID + " == " + genre.id, null);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            // nothing we can do then
-                        }
-                    }
-                } while (cursor.moveToNext());
-            }
-            cursor.close();
-        }
-        return genres;
-    }
-
-    @NonNull
-    private static Genre getGenreFromCursor(@NonNull final Context context, @NonNull final Cursor cursor) {
-        final long id = cursor.getLong(0);
-        final String name = cursor.getString(1);
-        final int songs = getSongs(context, id).size();
-        return new Genre(id, name, songs);
-    }
-
-    @Nullable
-    private static Cursor makeGenreSongCursor(@NonNull final Context context, long genreId) {
-        try {
-            return context.getContentResolver().query(
-                    Genres.Members.getContentUri("external", genreId),
-                    SongLoader.BASE_PROJECTION, SongLoader.BASE_SELECTION, null, PreferenceUtil.getInstance(context).getSongSortOrder());
-        } catch (SecurityException e) {
-            return null;
-        }
-    }
-
-    @Nullable
-    private static Cursor makeGenreCursor(@NonNull final Context context) {
-        final String[] projection = new String[]{
-                Genres._ID,
-                Genres.NAME
-        };
-
-        try {
-            return context.getContentResolver().query(
-                    Genres.EXTERNAL_CONTENT_URI,
-                    projection, null, null, PreferenceUtil.getInstance(context).getGenreSortOrder());
-        } catch (SecurityException e) {
-            return null;
-        }
+        return GenreIndex.getInstance(context).getSongs(genreId);
     }
 }
@@ -0,0 +1,107 @@
+package com.kabouzeid.trebl.loader;
+
+import androidx.annotation.NonNull;
+
+import com.kabouzeid.trebl.util.LongIntMap;
+
+/**
+ * The songs that were inserted, updated or deleted between two generations of the {@link LibraryIndex},
+ * together with the albums and artists they belong to.
+ */
+public class LibraryChangeSet {
+    private final int fromGeneration;
+    private final int toGeneration;
+
+    @NonNull
+    private final long[] insertedSongIds;
+    @NonNull
+    private final long[] updatedSongIds;
+    @NonNull
+    private final long[] deletedSongIds;
+
+    @NonNull
+    private final LongIntMap updatedSongs;
+    @NonNull
+    private final LongIntMap affectedAlbums;
+    @NonNull
+    private final LongIntMap affectedArtists;
+
+    LibraryChangeSet(int fromGeneration, int toGeneration,
+                     @NonNull long[] insertedSongIds, @NonNull long[] updatedSongIds, @NonNull long[] deletedSongIds,
+                     @NonNull LongIntMap affectedAlbums, @NonNull LongIntMap affectedArtists) {
+        this.fromGeneration = fromGeneration;
+        this.toGeneration = toGeneration;
+        this.insertedSongIds = insertedSongIds;
+        this.updatedSongIds = updatedSongIds;
+        this.deletedSongIds = deletedSongIds;
+        this.affectedAlbums = affectedAlbums;
+        this.affectedArtists = affectedArtists;
+
+        updatedSongs = new LongIntMap(updatedSongIds.length);
+        for (long id : updatedSongIds) {
+            updatedSongs.put(id, 0);
+        }
+    }
+
+    /**
+     * @return the generation of the index this change set has to be applied to.
+     */
+    public int getFromGeneration() {
+        return fromGeneration;
+    }
+
+    /**
+     * @return the generation of the index this change set results in.
+     */
+    public int getToGeneration() {
+        return toGeneration;
+    }
+
+    @NonNull
+    public long[] getInsertedSongIds() {
+        return insertedSongIds;
+    }
+
+    @NonNull
+    public long[] getUpdatedSongIds() {
+        return updatedSongIds;
+    }
+
+    @NonNull
+    public long[] getDeletedSongIds() {
+        return deletedSongIds;
+    }
+
+    public boolean isEmpty() {
+        return insertedSongIds.length == 0 && updatedSongIds.length == 0 && deletedSongIds.length == 0;
+    }
+
+    public boolean isSongUpdated(long songId) {
+        return updatedSongs.containsKey(songId);
+    }
+
+    /**
+     * @return true if a song of this album was inserted, updated or deleted.
+     */
+    public boolean isAlbumAffected(long albumId) {
+        return affectedAlbums.containsKey(albumId);
+    }
+
+    /**
+     * @return true if a song of this artist was inserted, updated or deleted.
+     */
+    public boolean isArtistAffected(long artistId) {
+        return affectedArtists.containsKey(artistId);
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryChangeSet{" +
+                "fromGeneration=" + fromGeneration +
+                ", toGeneration=" + toGeneration +
+                ", inserted=" + insertedSongIds.length +
+                ", updated=" + updatedSongIds.length +
+                ", deleted=" + deletedSongIds.length +
+                '}';
+    }
+}
@@ -0,0 +1,499 @@
+package com.kabouzeid.trebl.loader;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AudioColumns;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kabouzeid.trebl.model.Album;
+import com.kabouzeid.trebl.model.Artist;
+import com.kabouzeid.trebl.model.Song;
+import com.kabouzeid.trebl.util.LongIntMap;
+import com.kabouzeid.trebl.util.LongList;
+import com.kabouzeid.trebl.util.PreferenceUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In memory index of the whole music library, grouped into albums and artists.
+ * <p>
+ * The first build reads all songs in a single pass. After {@link #invalidate()} the index is refreshed
+ * incrementally: only the id, modification date and (where available) the generation of every song are read,
+ * the rows of inserted or updated songs are fetched by id and everything else is reused from the previous index.
+ * The album and artist order comes from id only passes so that every tab keeps honoring the sort orders chosen
+ * by the user. Grouping is linear in the number of songs.
+ * <p>
+ * Every new index is persisted as a {@link LibrarySnapshot}. On a cold start the snapshot is served right away
+ * and {@link #reconcile(Context)} applies the changes made to the MediaStore since it was written.
+ */
+public class LibraryIndex {
+    public static final int NO_GENERATION = -1;
+
+    // above this share of changed songs a full reload is cheaper than fetching by id
+    private static final int FULL_RELOAD_DIVISOR = 4;
+
+    private static final String[] ID_PROJECTION = new String[]{
+            BaseColumns._ID,// 0
+    };
+    private static final String[] ALBUM_ID_PROJECTION = new String[]{
+            AudioColumns.ALBUM_ID,// 0
+    };
+
+    @Nullable
+    private static LibraryIndex sInstance;
+    private static boolean sStale;
+    private static boolean sPendingReconcile;
+    private static int sLastGeneration = NO_GENERATION;
+
+    private final int generation;
+    @Nullable
+    private final String mediaStoreVersion;
+    @NonNull
+    private final String sortOrderKey;
+    @NonNull
+    private final List<Song> songs;
+    @NonNull
+    private final long[] songGenerations;
+    @NonNull
+    private final List<Album> albums;
+    @NonNull
+    private final List<Artist> artists;
+    @NonNull
+    private final LongIntMap songPositions;
+    @NonNull
+    private final LongIntMap albumPositions;
+    @NonNull
+    private final LongIntMap artistPositions;
+    @Nullable
+    private final LibraryChangeSet changeSet;
+
+    @NonNull
+    public static synchronized LibraryIndex getInstance(@NonNull final Context context) {
+        final String sortOrderKey = makeSortOrderKey(context);
+        if (sInstance == null) {
+            sInstance = LibrarySnapshot.read(context, queryMediaStoreVersion(context), sortOrderKey);
+            if (sInstance != null) {
+                sPendingReconcile = true;
+                return sInstance;
+            }
+        }
+        if (sInstance == null || sStale || !sInstance.sortOrderKey.equals(sortOrderKey)) {
+            LibraryIndex previous = sInstance;
+            sInstance = refresh(context, sortOrderKey, previous);
+            sStale = false;
+            sPendingReconcile = false;
+            if (sInstance != previous) {
+                LibrarySnapshot.write(context, sInstance);
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Brings an index that was restored from the snapshot up to date with the MediaStore. Readers keep getting the
+     * restored index while this runs.
+     *
+     * @return true if the index changed and has to be reloaded by its consumers.
+     */
+    public static boolean reconcile(@NonNull final Context context) {
+        final LibraryIndex restored;
+        synchronized (LibraryIndex.class) {
+            getInstance(context);
+            if (!sPendingReconcile) {
+                return false;
+            }
+            restored = sInstance;
+        }
+
+        final LibraryIndex reconciled = refresh(context, makeSortOrderKey(context), restored);
+
+        synchronized (LibraryIndex.class) {
+            if (sInstance != restored) {
+                // an invalidation already replaced the restored index
+                return true;
+            }
+            sPendingReconcile = false;
+            if (reconciled == restored) {
+                return false;
+            }
+            sInstance = reconciled;
+            LibrarySnapshot.write(context, reconciled);
+            return true;
+        }
+    }
+
+    /**
+     * Marks the index as outdated. The next call to {@link #getInstance(Context)} applies the MediaStore changes
+     * since the last build to it.
+     */
+    public static synchronized void invalidate() {
+        sStale = true;
+    }
+
+    LibraryIndex(@Nullable String mediaStoreVersion, @NonNull String sortOrderKey,
+                 @NonNull List<Song> songs, @NonNull long[] songGenerations,
+                 @NonNull List<Album> albums, @NonNull List<Album> artistOrderedAlbums,
+                 @Nullable LibraryIndex previous, @Nullable LongList insertedSongIds, @Nullable LongList updatedSongIds) {
+        this.generation = nextGeneration();
+        this.mediaStoreVersion = mediaStoreVersion;
+        this.sortOrderKey = sortOrderKey;
+        this.songs = Collections.unmodifiableList(songs);
+        this.songGenerations = songGenerations;
+
+        songPositions = new LongIntMap(songs.size());
+        for (int i = 0; i < songs.size(); i++) {
+            songPositions.put(songs.get(i).id, i);
+        }
+
+        albumPositions = new LongIntMap(albums.size());
+        for (int i = 0; i < albums.size(); i++) {
+            albumPositions.put(albums.get(i).getId(), i);
+        }
+        this.albums = Collections.unmodifiableList(albums);
+
+        List<Artist> artists = ArtistLoader.splitIntoArtists(artistOrderedAlbums);
+        artistPositions = new LongIntMap(artists.size());
+        for (int i = 0; i < artists.size(); i++) {
+            artistPositions.put(artists.get(i).getId(), i);
+        }
+        this.artists = Collections.unmodifiableList(artists);
+
+        changeSet = previous == null || insertedSongIds == null || updatedSongIds == null
+                ? null
+                : makeChangeSet(previous, insertedSongIds, updatedSongIds);
+    }
+
+    private static synchronized int nextGeneration() {
+        return ++sLastGeneration;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the changes that turn the index of the given generation into this one or null if they are unknown,
+     * in which case the whole data set has to be considered changed.
+     */
+    @Nullable
+    public LibraryChangeSet getChangeSetSince(int generation) {
+        if (generation == this.generation) {
+            return new LibraryChangeSet(generation, generation, new long[0], new long[0], new long[0], new LongIntMap(), new LongIntMap());
+        }
+        if (changeSet != null && changeSet.getFromGeneration() == generation) {
+            return changeSet;
+        }
+        return null;
+    }
+
+    /**
+     * @return all songs of the library in song sort order.
+     */
+    @NonNull
+    public List<Song> getSongs() {
+        return songs;
+    }
+
+    @NonNull
+    public List<Album> getAlbums() {
+        return albums;
+    }
+
+    @NonNull
+    public List<Artist> getArtists() {
+        return artists;
+    }
+
+    @NonNull
+    public Song getSong(long songId) {
+        final int position = songPositions.get(songId);
+        return position == LongIntMap.NO_VALUE ? Song.EMPTY_SONG : songs.get(position);
+    }
+
+    @NonNull
+    public Album getAlbum(long albumId) {
+        final int position = albumPositions.get(albumId);
+        return position == LongIntMap.NO_VALUE ? new Album() : albums.get(position);
+    }
+
+    @NonNull
+    public Artist getArtist(long artistId) {
+        final int position = artistPositions.get(artistId);
+        return position == LongIntMap.NO_VALUE ? new Artist() : artists.get(position);
+    }
+
+    @Nullable
+    String getMediaStoreVersion() {
+        return mediaStoreVersion;
+    }
+
+    @NonNull
+    String getSortOrderKey() {
+        return sortOrderKey;
+    }
+
+    long getSongGeneration(int position) {
+        return songGenerations[position];
+    }
+
+    int getSongPosition(long songId) {
+        return songPositions.get(songId);
+    }
+
+    int getAlbumPosition(long albumId) {
+        return albumPositions.get(albumId);
+    }
+
+    @NonNull
+    private static LibraryIndex refresh(@NonNull final Context context, @NonNull final String sortOrderKey, @Nullable final LibraryIndex previous) {
+        final String mediaStoreVersion = queryMediaStoreVersion(context);
+        if (previous == null || (mediaStoreVersion != null && !mediaStoreVersion.equals(previous.mediaStoreVersion))) {
+            // without a previous index, or after the MediaStore was rebuilt, ids can not be compared
+            return buildFull(context, mediaStoreVersion, sortOrderKey);
+        }
+
+        Cursor cursor = SongLoader.makeSongCursor(context, null, null, getSongSortOrder(context), getKeyProjection());
+        if (cursor == null) {
+            return buildFull(context, mediaStoreVersion, sortOrderKey);
+        }
+
+        final int count = cursor.getCount();
+        final Song[] songs = new Song[count];
+        final long[] songGenerations = new long[count];
+        final LongList insertedSongIds = new LongList();
+        final LongList updatedSongIds = new LongList();
+        final LongIntMap pendingPositions = new LongIntMap();
+        try {
+            int position = 0;
+            while (cursor.moveToNext() && position < count) {
+                final long id = cursor.getLong(0);
+                final long dateModified = cursor.getLong(1);
+                final long songGeneration = cursor.getColumnCount() > 2 ? cursor.getLong(2) : 0;
+
+                final int previousPosition = previous.songPositions.get(id);
+                if (previousPosition == LongIntMap.NO_VALUE) {
+                    insertedSongIds.add(id);
+                    pendingPositions.put(id, position);
+                } else if (previous.songs.get(previousPosition).dateModified != dateModified
+                        || previous.songGenerations[previousPosition] != songGeneration) {
+                    updatedSongIds.add(id);
+                    pendingPositions.put(id, position);
+                } else {
+                    songs[position] = previous.songs.get(previousPosition);
+                }
+                songGenerations[position] = songGeneration;
+                position++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        final int pendingCount = pendingPositions.size();
+        if (pendingCount > 0 && pendingCount > count / FULL_RELOAD_DIVISOR) {
+            return buildFull(context, mediaStoreVersion, sortOrderKey);
+        }
+
+        final boolean hasDeletions = count - pendingCount + updatedSongIds.size() != previous.songs.size();
+        if (pendingCount == 0 && !hasDeletions && previous.sortOrderKey.equals(sortOrderKey)) {
+            return previous;
+        }
+
+        if (pendingCount > 0) {
+            fetchSongs(context, insertedSongIds, songs, pendingPositions);
+            fetchSongs(context, updatedSongIds, songs, pendingPositions);
+        }
+
+        // songs that vanished between the key pass and the fetch are skipped
+        List<Song> songList = new ArrayList<>(count);
+        long[] generations = new long[count];
+        for (int i = 0; i < count; i++) {
+            if (songs[i] != null) {
+                generations[songList.size()] = songGenerations[i];
+                songList.add(songs[i]);
+            }
+        }
+
+        List<Album> albums = AlbumLoader.splitIntoAlbums(orderSongsForAlbums(context, songList));
+        return new LibraryIndex(mediaStoreVersion, sortOrderKey,
+                songList, Arrays.copyOf(generations, songList.size()),
+                albums, orderAlbumsForArtists(context, albums),
+                previous, insertedSongIds, updatedSongIds);
+    }
+
+    @NonNull
+    private static LibraryIndex buildFull(@NonNull final Context context, @Nullable final String mediaStoreVersion, @NonNull final String sortOrderKey) {
+        List<Song> songs = new ArrayList<>();
+        LongList songGenerations = new LongList();
+        Cursor cursor = SongLoader.makeSongCursor(context, null, null, getSongSortOrder(context), getFullProjection());
+        if (cursor != null) {
+            try {
+                final int generationColumn = cursor.getColumnCount() > SongLoader.BASE_PROJECTION.length ? SongLoader.BASE_PROJECTION.length : -1;
+                while (cursor.moveToNext()) {
+                    songs.add(SongLoader.getSongFromCursorImpl(cursor));
+                    songGenerations.add(generationColumn < 0 ? 0 : cursor.getLong(generationColumn));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        List<Album> albums = AlbumLoader.splitIntoAlbums(orderSongsForAlbums(context, songs));
+        return new LibraryIndex(mediaStoreVersion, sortOrderKey,
+                songs, songGenerations.toArray(),
+                albums, orderAlbumsForArtists(context, albums),
+                null, null, null);
+    }
+
+    /**
+     * Fetches the full rows of the given song ids and puts them at their pending position.
+     */
+    private static void fetchSongs(@NonNull final Context context, @NonNull final LongList ids, @NonNull final Song[] songs, @NonNull final LongIntMap pendingPositions) {
+        for (Song song : BatchedSongLoader.getSongsById(context, ids.toArray(), true)) {
+            if (song == null) continue;
+            final int position = pendingPositions.get(song.id);
+            if (position != LongIntMap.NO_VALUE) {
+                songs[position] = song;
+            }
+        }
+    }
+
+    /**
+     * Reorders the songs by the first appearance of their id in the album sort order.
+     */
+    @NonNull
+    private static List<Song> orderSongsForAlbums(@NonNull final Context context, @NonNull final List<Song> songs) {
+        LongIntMap songPositions = new LongIntMap(songs.size());
+        for (int i = 0; i < songs.size(); i++) {
+            songPositions.put(songs.get(i).id, i);
+        }
+
+        List<Song> orderedSongs = new ArrayList<>(songs.size());
+        Cursor cursor = SongLoader.makeSongCursor(context, null, null, AlbumLoader.getSongLoaderSortOrder(context), ID_PROJECTION);
+        if (cursor == null) {
+            return orderedSongs;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                final int position = songPositions.remove(cursor.getLong(0));
+                if (position != LongIntMap.NO_VALUE) {
+                    orderedSongs.add(songs.get(position));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return orderedSongs;
+    }
+
+    /**
+     * Reorders the already grouped albums by the first appearance of their id in the artist sort order.
+     */
+    @NonNull
+    private static List<Album> orderAlbumsForArtists(@NonNull final Context context, @NonNull final List<Album> albums) {
+        LongIntMap pendingAlbums = new LongIntMap(albums.size());
+        for (int i = 0; i < albums.size(); i++) {
+            pendingAlbums.put(albums.get(i).getId(), i);
+        }
+
+        List<Album> orderedAlbums = new ArrayList<>(albums.size());
+        Cursor cursor = SongLoader.makeSongCursor(context, null, null, ArtistLoader.getSongLoaderSortOrder(context), ALBUM_ID_PROJECTION);
+        if (cursor == null) {
+            return orderedAlbums;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                // removing the mapping marks the album as placed
+                final int position = pendingAlbums.remove(cursor.getLong(0));
+                if (position != LongIntMap.NO_VALUE) {
+                    orderedAlbums.add(albums.get(position));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return orderedAlbums;
+    }
+
+    @NonNull
+    private LibraryChangeSet makeChangeSet(@NonNull final LibraryIndex previous, @NonNull final LongList insertedSongIds, @NonNull final LongList updatedSongIds) {
+        LongIntMap affectedAlbums = new LongIntMap();
+        LongIntMap affectedArtists = new LongIntMap();
+        for (int i = 0; i < insertedSongIds.size(); i++) {
+            markAffected(getSong(insertedSongIds.get(i)), affectedAlbums, affectedArtists);
+        }
+        for (int i = 0; i < updatedSongIds.size(); i++) {
+            markAffected(previous.getSong(updatedSongIds.get(i)), affectedAlbums, affectedArtists);
+            markAffected(getSong(updatedSongIds.get(i)), affectedAlbums, affectedArtists);
+        }
+        LongList deletedSongIds = new LongList();
+        for (Song song : previous.songs) {
+            if (!songPositions.containsKey(song.id)) {
+                deletedSongIds.add(song.id);
+                markAffected(song, affectedAlbums, affectedArtists);
+            }
+        }
+        return new LibraryChangeSet(previous.generation, generation,
+                insertedSongIds.toArray(), updatedSongIds.toArray(), deletedSongIds.toArray(),
+                affectedAlbums, affectedArtists);
+    }
+
+    private static void markAffected(@NonNull Song song, @NonNull LongIntMap affectedAlbums, @NonNull LongIntMap affectedArtists) {
+        if (song.id != Song.EMPTY_SONG.id) {
+            affectedAlbums.put(song.albumId, 0);
+            affectedArtists.put(song.artistId, 0);
+        }
+    }
+
+    @NonNull
+    private static String[] getKeyProjection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return new String[]{
+                    BaseColumns._ID,// 0
+                    AudioColumns.DATE_MODIFIED,// 1
+                    MediaStore.MediaColumns.GENERATION_MODIFIED,// 2
+            };
+        }
+        return new String[]{
+                BaseColumns._ID,// 0
+                AudioColumns.DATE_MODIFIED,// 1
+        };
+    }
+
+    @NonNull
+    private static String[] getFullProjection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            String[] projection = Arrays.copyOf(SongLoader.BASE_PROJECTION, SongLoader.BASE_PROJECTION.length + 1);
+            projection[SongLoader.BASE_PROJECTION.length] = MediaStore.MediaColumns.GENERATION_MODIFIED;
+            return projection;
+        }
+        return SongLoader.BASE_PROJECTION;
+    }
+
+    @Nullable
+    private static String queryMediaStoreVersion(@NonNull final Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            try {
+                return MediaStore.getVersion(context);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    private static String getSongSortOrder(@NonNull final Context context) {
+        return PreferenceUtil.getInstance(context).getSongSortOrder();
+    }
+
+    @NonNull
+    private static String makeSortOrderKey(@NonNull final Context context) {
+        return getSongSortOrder(context) + "|" + AlbumLoader.getSongLoaderSortOrder(context) + "|" + ArtistLoader.getSongLoaderSortOrder(context);
+    }
+}
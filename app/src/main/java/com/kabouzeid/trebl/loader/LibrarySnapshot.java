@@ -0,0 +1,210 @@
+package com.kabouzeid.trebl.loader;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kabouzeid.trebl.model.Album;
+import com.kabouzeid.trebl.model.Artist;
+import com.kabouzeid.trebl.model.Song;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary copy of the {@link LibraryIndex} in the app's files dir, so the library can be shown on a cold
+ * start before the MediaStore was queried.
+ * <p>
+ * The snapshot is only valid for the MediaStore version and sort orders it was written with. Album and artist names
+ * are stored once in a string table, the album and artist order as positions into the song and album lists.
+ */
+final class LibrarySnapshot {
+    private static final String TAG = LibrarySnapshot.class.getSimpleName();
+
+    private static final String FILE_NAME = "library.snapshot";
+    private static final int MAGIC = 0x54524c53;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private LibrarySnapshot() {
+    }
+
+    @Nullable
+    static LibraryIndex read(@NonNull final Context context, @Nullable final String mediaStoreVersion, @NonNull final String sortOrderKey) {
+        final File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final String snapshotMediaStoreVersion = readString(in);
+            if (mediaStoreVersion == null ? snapshotMediaStoreVersion != null : !mediaStoreVersion.equals(snapshotMediaStoreVersion)) {
+                return null;
+            }
+            if (!sortOrderKey.equals(in.readUTF())) {
+                return null;
+            }
+
+            final String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(in);
+            }
+
+            final int songCount = in.readInt();
+            final List<Song> songs = new ArrayList<>(songCount);
+            final long[] songGenerations = new long[songCount];
+            for (int i = 0; i < songCount; i++) {
+                final long id = in.readLong();
+                final String title = readString(in);
+                final int trackNumber = in.readInt();
+                final int year = in.readInt();
+                final long duration = in.readLong();
+                final String data = readString(in);
+                final long dateModified = in.readLong();
+                final long albumId = in.readLong();
+                final String albumName = strings[in.readInt()];
+                final long artistId = in.readLong();
+                final String artistName = strings[in.readInt()];
+                songs.add(new Song(id, title, trackNumber, year, duration, data, dateModified, albumId, albumName, artistId, artistName));
+                songGenerations[i] = in.readLong();
+            }
+
+            final int albumOrderedSongCount = in.readInt();
+            final List<Song> albumOrderedSongs = new ArrayList<>(albumOrderedSongCount);
+            for (int i = 0; i < albumOrderedSongCount; i++) {
+                albumOrderedSongs.add(songs.get(in.readInt()));
+            }
+            final List<Album> albums = AlbumLoader.splitIntoAlbums(albumOrderedSongs);
+
+            final int artistOrderedAlbumCount = in.readInt();
+            final List<Album> artistOrderedAlbums = new ArrayList<>(artistOrderedAlbumCount);
+            for (int i = 0; i < artistOrderedAlbumCount; i++) {
+                artistOrderedAlbums.add(albums.get(in.readInt()));
+            }
+
+            return new LibraryIndex(snapshotMediaStoreVersion, sortOrderKey, songs, songGenerations,
+                    albums, artistOrderedAlbums, null, null, null);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Discarding unreadable library snapshot", e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    static void write(@NonNull final Context context, @NonNull final LibraryIndex index) {
+        final List<Song> songs = index.getSongs();
+        if (songs.isEmpty()) {
+            // most likely the permission is missing, keep the last good snapshot
+            return;
+        }
+
+        final File file = getFile(context);
+        final File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, index.getMediaStoreVersion());
+            out.writeUTF(index.getSortOrderKey());
+
+            final Map<String, Integer> stringPositions = new HashMap<>();
+            final List<String> strings = new ArrayList<>();
+            for (Song song : songs) {
+                addString(stringPositions, strings, song.albumName);
+                addString(stringPositions, strings, song.artistName);
+            }
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                writeString(out, string);
+            }
+
+            out.writeInt(songs.size());
+            for (int i = 0; i < songs.size(); i++) {
+                final Song song = songs.get(i);
+                out.writeLong(song.id);
+                writeString(out, song.title);
+                out.writeInt(song.trackNumber);
+                out.writeInt(song.year);
+                out.writeLong(song.duration);
+                writeString(out, song.data);
+                out.writeLong(song.dateModified);
+                out.writeLong(song.albumId);
+                out.writeInt(stringPositions.get(song.albumName));
+                out.writeLong(song.artistId);
+                out.writeInt(stringPositions.get(song.artistName));
+                out.writeLong(index.getSongGeneration(i));
+            }
+
+            final List<Album> albums = index.getAlbums();
+            int albumOrderedSongCount = 0;
+            for (Album album : albums) {
+                albumOrderedSongCount += album.songs.size();
+            }
+            out.writeInt(albumOrderedSongCount);
+            for (Album album : albums) {
+                for (Song song : album.songs) {
+                    out.writeInt(index.getSongPosition(song.id));
+                }
+            }
+
+            final List<Artist> artists = index.getArtists();
+            int artistOrderedAlbumCount = 0;
+            for (Artist artist : artists) {
+                artistOrderedAlbumCount += artist.albums.size();
+            }
+            out.writeInt(artistOrderedAlbumCount);
+            for (Artist artist : artists) {
+                for (Album album : artist.albums) {
+                    out.writeInt(index.getAlbumPosition(album.getId()));
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write library snapshot", e);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+        }
+    }
+
+    private static void addString(@NonNull Map<String, Integer> stringPositions, @NonNull List<String> strings, @Nullable String string) {
+        if (!stringPositions.containsKey(string)) {
+            stringPositions.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    private static void writeString(@NonNull DataOutputStream out, @Nullable String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    @Nullable
+    private static String readString(@NonNull DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    @NonNull
+    private static File getFile(@NonNull Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+}
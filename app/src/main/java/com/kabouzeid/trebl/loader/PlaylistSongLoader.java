@@ -13,9 +13,7 @@ import com.kabouzeid.trebl.model.Song;
 import com.kabouzeid.trebl.provider.InternalPlaylistStore;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Loader for playlist songs.
@@ -52,18 +50,17 @@ public class PlaylistSongLoader {
             return songs;
         }
 
-        // Build list of audio IDs to query
-        List<Long> audioIds = new ArrayList<>();
-        for (InternalPlaylistStore.PlaylistSongEntity entry : playlistSongs) {
-            audioIds.add(entry.audioId);
+        // Query MediaStore for song metadata, in chunks for big playlists
+        long[] audioIds = new long[playlistSongs.size()];
+        for (int i = 0; i < audioIds.length; i++) {
+            audioIds[i] = playlistSongs.get(i).audioId;
         }
-
-        // Query MediaStore for song metadata
-        Map<Long, Song> songMap = getSongsById(context, audioIds);
+        Song[] playlistSongMetadata = BatchedSongLoader.getSongsById(context, audioIds, false);
 
         // Build PlaylistSong list in the correct order
-        for (InternalPlaylistStore.PlaylistSongEntity entry : playlistSongs) {
-            Song song = songMap.get(entry.audioId);
+        for (int i = 0; i < audioIds.length; i++) {
+            InternalPlaylistStore.PlaylistSongEntity entry = playlistSongs.get(i);
+            Song song = playlistSongMetadata[i];
             if (song != null) {
                 PlaylistSong playlistSong = new PlaylistSong(
                         song.id,
@@ -88,84 +85,6 @@ public class PlaylistSongLoader {
         return songs;
     }
 
-    /**
-     * Query MediaStore for multiple songs by their IDs.
-     * Returns a map of audioId -> Song for efficient lookup.
-     */
-    @NonNull
-    private static Map<Long, Song> getSongsById(@NonNull Context context, @NonNull List<Long> audioIds) {
-        Map<Long, Song> songMap = new HashMap<>();
-
-        if (audioIds.isEmpty()) {
-            return songMap;
-        }
-
-        // Build selection for multiple IDs: _ID IN (?, ?, ?, ...)
-        StringBuilder selection = new StringBuilder();
-        selection.append(AudioColumns._ID).append(" IN (");
-        String[] selectionArgs = new String[audioIds.size()];
-        for (int i = 0; i < audioIds.size(); i++) {
-            if (i > 0) selection.append(",");
-            selection.append("?");
-            selectionArgs[i] = String.valueOf(audioIds.get(i));
-        }
-        selection.append(")");
-
-        // Add base selection for valid music files
-        String fullSelection = SongLoader.BASE_SELECTION + " AND " + selection.toString();
-
-        Cursor cursor = null;
-        try {
-            cursor = context.getContentResolver().query(
-                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                    new String[]{
-                            AudioColumns._ID,           // 0
-                            AudioColumns.TITLE,         // 1
-                            AudioColumns.TRACK,         // 2
-                            AudioColumns.YEAR,          // 3
-                            AudioColumns.DURATION,      // 4
-                            AudioColumns.DATA,          // 5
-                            AudioColumns.DATE_MODIFIED, // 6
-                            AudioColumns.ALBUM_ID,      // 7
-                            AudioColumns.ALBUM,         // 8
-                            AudioColumns.ARTIST_ID,     // 9
-                            AudioColumns.ARTIST         // 10
-                    },
-                    fullSelection,
-                    selectionArgs,
-                    null
-            );
-
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    long id = cursor.getLong(0);
-                    String title = cursor.getString(1);
-                    int trackNumber = cursor.getInt(2);
-                    int year = cursor.getInt(3);
-                    long duration = cursor.getLong(4);
-                    String data = cursor.getString(5);
-                    long dateModified = cursor.getLong(6);
-                    long albumId = cursor.getLong(7);
-                    String albumName = cursor.getString(8);
-                    long artistId = cursor.getLong(9);
-                    String artistName = cursor.getString(10);
-
-                    Song song = new Song(id, title, trackNumber, year, duration, data,
-                            dateModified, albumId, albumName, artistId, artistName);
-                    songMap.put(id, song);
-                } while (cursor.moveToNext());
-            }
-        } catch (SecurityException e) {
-            // Permission denied
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
-
-        return songMap;
-    }
-
     // ==================== MediaStore Methods (for migration) ====================
 
     /**
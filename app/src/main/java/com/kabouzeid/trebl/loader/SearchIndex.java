@@ -0,0 +1,311 @@
+package com.kabouzeid.trebl.loader;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.BaseColumns;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.LongSparseArray;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kabouzeid.trebl.model.Album;
+import com.kabouzeid.trebl.model.Artist;
+import com.kabouzeid.trebl.model.Genre;
+import com.kabouzeid.trebl.model.Song;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Full text search over the {@link LibraryIndex}.
+ * <p>
+ * Songs are found by title, artist, album, album artist and genre, albums by title and artist and artists by name.
+ * Matching folds case and diacritics, accepts prefixes and tolerates typos in longer words, see {@link TermIndex}.
+ * <p>
+ * The index follows the generations of the library index. The album artists and genres aren't part of the songs,
+ * they are read from the MediaStore once and afterwards only for the songs of a change set. The term indexes
+ * themselves are rebuilt in memory, that's a single pass over the library.
+ */
+public class SearchIndex {
+    private static final String ALBUM_ARTIST = "album_artist";
+
+    private static final int SONG_TITLE = 0;
+    private static final int SONG_ARTIST = 1;
+    private static final int SONG_ALBUM = 2;
+    private static final int SONG_ALBUM_ARTIST = 3;
+    private static final int SONG_GENRE = 4;
+
+    private static final int ALBUM_TITLE = 0;
+    private static final int ALBUM_ARTIST_NAME = 1;
+
+    private static final int ARTIST_NAME = 0;
+
+    @Nullable
+    private static SearchIndex sInstance;
+
+    @NonNull
+    private final LibraryIndex libraryIndex;
+    // song id -> album artist and genre, only for the songs that have one
+    @NonNull
+    private final LongSparseArray<String> albumArtists;
+    @NonNull
+    private final LongSparseArray<String> genres;
+
+    @NonNull
+    private final TermIndex songIndex;
+    @NonNull
+    private final TermIndex albumIndex;
+    @NonNull
+    private final TermIndex artistIndex;
+
+    @NonNull
+    public static synchronized SearchIndex getInstance(@NonNull final Context context) {
+        final LibraryIndex libraryIndex = LibraryIndex.getInstance(context);
+        if (sInstance == null || sInstance.libraryIndex.getGeneration() != libraryIndex.getGeneration()) {
+            sInstance = build(context, libraryIndex, sInstance);
+        }
+        return sInstance;
+    }
+
+    private SearchIndex(@NonNull LibraryIndex libraryIndex, @NonNull LongSparseArray<String> albumArtists, @NonNull LongSparseArray<String> genres) {
+        this.libraryIndex = libraryIndex;
+        this.albumArtists = albumArtists;
+        this.genres = genres;
+
+        final List<Song> songs = libraryIndex.getSongs();
+        final TermIndex.Builder songBuilder = new TermIndex.Builder(1f, 0.8f, 0.7f, 0.6f, 0.4f);
+        for (int i = 0; i < songs.size(); i++) {
+            final Song song = songs.get(i);
+            songBuilder.add(i, SONG_TITLE, song.title)
+                    .add(i, SONG_ARTIST, song.artistName)
+                    .add(i, SONG_ALBUM, song.albumName)
+                    .add(i, SONG_ALBUM_ARTIST, albumArtists.get(song.id))
+                    .add(i, SONG_GENRE, genres.get(song.id));
+        }
+        songIndex = songBuilder.build();
+
+        final List<Album> albums = libraryIndex.getAlbums();
+        final TermIndex.Builder albumBuilder = new TermIndex.Builder(1f, 0.7f);
+        for (int i = 0; i < albums.size(); i++) {
+            final Album album = albums.get(i);
+            albumBuilder.add(i, ALBUM_TITLE, album.getTitle())
+                    .add(i, ALBUM_ARTIST_NAME, album.getArtistName());
+        }
+        albumIndex = albumBuilder.build();
+
+        final List<Artist> artists = libraryIndex.getArtists();
+        final TermIndex.Builder artistBuilder = new TermIndex.Builder(1f);
+        for (int i = 0; i < artists.size(); i++) {
+            artistBuilder.add(i, ARTIST_NAME, artists.get(i).getName());
+        }
+        artistIndex = artistBuilder.build();
+    }
+
+    /**
+     * @return the matching songs, albums and artists, best matches first.
+     */
+    @NonNull
+    public Result search(@Nullable final String query) {
+        final String[] tokens = TermIndex.tokenize(query);
+        return new Result(searchSongs(tokens), searchAlbums(tokens), searchArtists(tokens));
+    }
+
+    /**
+     * @param tokens as returned by {@link TermIndex#tokenize(String)}
+     */
+    @NonNull
+    public List<Song> searchSongs(@NonNull final String[] tokens) {
+        return getSongs(rankSongs(tokens, null));
+    }
+
+    /**
+     * @param tokens as returned by {@link TermIndex#tokenize(String)}
+     */
+    @NonNull
+    public List<Album> searchAlbums(@NonNull final String[] tokens) {
+        return getAlbums(rankAlbums(tokens, null));
+    }
+
+    /**
+     * @param tokens as returned by {@link TermIndex#tokenize(String)}
+     */
+    @NonNull
+    public List<Artist> searchArtists(@NonNull final String[] tokens) {
+        return getArtists(rankArtists(tokens, null));
+    }
+
+    /**
+     * @param candidates the positions of the songs to score, like the ranking of an earlier query that
+     *                   {@link TermIndex#narrows(String[], String[]) narrows} to this one, null to score all songs
+     * @return the positions of the matching songs, best matches first.
+     */
+    @NonNull
+    public int[] rankSongs(@NonNull final String[] tokens, @Nullable final int[] candidates) {
+        return TermIndex.rank(songIndex.score(tokens, candidates));
+    }
+
+    /**
+     * @see #rankSongs(String[], int[])
+     */
+    @NonNull
+    public int[] rankAlbums(@NonNull final String[] tokens, @Nullable final int[] candidates) {
+        return TermIndex.rank(albumIndex.score(tokens, candidates));
+    }
+
+    /**
+     * @see #rankSongs(String[], int[])
+     */
+    @NonNull
+    public int[] rankArtists(@NonNull final String[] tokens, @Nullable final int[] candidates) {
+        return TermIndex.rank(artistIndex.score(tokens, candidates));
+    }
+
+    @NonNull
+    public List<Song> getSongs(@NonNull final int[] ranked) {
+        return pick(libraryIndex.getSongs(), ranked);
+    }
+
+    @NonNull
+    public List<Album> getAlbums(@NonNull final int[] ranked) {
+        return pick(libraryIndex.getAlbums(), ranked);
+    }
+
+    @NonNull
+    public List<Artist> getArtists(@NonNull final int[] ranked) {
+        return pick(libraryIndex.getArtists(), ranked);
+    }
+
+    @NonNull
+    private static <T> List<T> pick(@NonNull List<T> items, @NonNull int[] ranked) {
+        final List<T> picked = new ArrayList<>(ranked.length);
+        for (int position : ranked) {
+            picked.add(items.get(position));
+        }
+        return picked;
+    }
+
+    @NonNull
+    private static SearchIndex build(@NonNull final Context context, @NonNull final LibraryIndex libraryIndex, @Nullable final SearchIndex previous) {
+        final LibraryChangeSet changeSet = previous == null ? null : libraryIndex.getChangeSetSince(previous.libraryIndex.getGeneration());
+        final LongSparseArray<String> albumArtists;
+        final LongSparseArray<String> genres;
+        if (changeSet == null) {
+            albumArtists = new LongSparseArray<>();
+            genres = new LongSparseArray<>();
+            fetchMetadata(context, null, null, albumArtists, genres);
+        } else {
+            albumArtists = previous.albumArtists.clone();
+            genres = previous.genres.clone();
+            // updated songs may have lost their album artist or genre
+            for (long id : concat(changeSet.getDeletedSongIds(), changeSet.getUpdatedSongIds())) {
+                albumArtists.remove(id);
+                genres.remove(id);
+            }
+            final long[] changedIds = concat(changeSet.getInsertedSongIds(), changeSet.getUpdatedSongIds());
+            for (int start = 0; start < changedIds.length; start += BatchedSongLoader.CHUNK_SIZE) {
+                final int end = Math.min(start + BatchedSongLoader.CHUNK_SIZE, changedIds.length);
+                final String[] selectionValues = new String[end - start];
+                for (int i = start; i < end; i++) {
+                    selectionValues[i - start] = String.valueOf(changedIds[i]);
+                }
+                fetchMetadata(context, BatchedSongLoader.makeInSelection(BaseColumns._ID, selectionValues.length), selectionValues, albumArtists, genres);
+            }
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            // no genre column, the memberships come from the genre index of the same generation
+            genres.clear();
+            fetchGenreMembers(context, genres);
+        }
+        return new SearchIndex(libraryIndex, albumArtists, genres);
+    }
+
+    private static void fetchMetadata(@NonNull final Context context, @Nullable final String selection, @Nullable final String[] selectionValues,
+                                      @NonNull final LongSparseArray<String> albumArtists, @NonNull final LongSparseArray<String> genres) {
+        final boolean hasGenreColumn = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+        final String[] projection = hasGenreColumn
+                ? new String[]{BaseColumns._ID, ALBUM_ARTIST, AudioColumns.GENRE}
+                : new String[]{BaseColumns._ID, ALBUM_ARTIST};
+
+        Cursor cursor;
+        try {
+            cursor = SongLoader.makeSongCursor(context, selection, selectionValues, null, projection);
+        } catch (IllegalArgumentException e) {
+            // some devices don't expose the album artist column
+            cursor = null;
+        }
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                final long id = cursor.getLong(0);
+                putIfNotEmpty(albumArtists, id, cursor.getString(1));
+                if (hasGenreColumn) {
+                    putIfNotEmpty(genres, id, cursor.getString(2));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void fetchGenreMembers(@NonNull final Context context, @NonNull final LongSparseArray<String> genres) {
+        final GenreIndex genreIndex = GenreIndex.getInstance(context);
+        for (Genre genre : genreIndex.getGenres()) {
+            if (genre.name == null || genre.name.isEmpty()) continue;
+            for (Song song : genreIndex.getSongs(genre.id)) {
+                final String other = genres.get(song.id);
+                // a song can be in several genres
+                genres.put(song.id, other == null ? genre.name : other + " " + genre.name);
+            }
+        }
+    }
+
+    private static void putIfNotEmpty(@NonNull LongSparseArray<String> values, long id, @Nullable String value) {
+        if (value != null && !value.isEmpty()) {
+            values.put(id, value);
+        }
+    }
+
+    @NonNull
+    private static long[] concat(@NonNull long[] a, @NonNull long[] b) {
+        final long[] result = new long[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    public static class Result {
+        public static final Result EMPTY = new Result(Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+        @NonNull
+        private final List<Song> songs;
+        @NonNull
+        private final List<Album> albums;
+        @NonNull
+        private final List<Artist> artists;
+
+        public Result(@NonNull List<Song> songs, @NonNull List<Album> albums, @NonNull List<Artist> artists) {
+            this.songs = songs;
+            this.albums = albums;
+            this.artists = artists;
+        }
+
+        @NonNull
+        public List<Song> getSongs() {
+            return songs;
+        }
+
+        @NonNull
+        public List<Album> getAlbums() {
+            return albums;
+        }
+
+        @NonNull
+        public List<Artist> getArtists() {
+            return artists;
+        }
+    }
+}
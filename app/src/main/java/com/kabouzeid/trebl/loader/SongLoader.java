@@ -81,7 +81,7 @@ public class SongLoader {
     }
 
     @NonNull
-    private static Song getSongFromCursorImpl(@NonNull Cursor cursor) {
+    static Song getSongFromCursorImpl(@NonNull Cursor cursor) {
         final long id = cursor.getLong(0);
         final String title = cursor.getString(1);
         final int trackNumber = cursor.getInt(2);
@@ -104,6 +104,11 @@ public class SongLoader {
 
     @Nullable
     public static Cursor makeSongCursor(@NonNull final Context context, @Nullable String selection, String[] selectionValues, final String sortOrder) {
+        return makeSongCursor(context, selection, selectionValues, sortOrder, BASE_PROJECTION);
+    }
+
+    @Nullable
+    public static Cursor makeSongCursor(@NonNull final Context context, @Nullable String selection, String[] selectionValues, final String sortOrder, @NonNull final String[] projection) {
         if (selection != null && !selection.trim().equals("")) {
             selection = BASE_SELECTION + " AND " + selection;
         } else {
@@ -111,36 +116,25 @@ public class SongLoader {
         }
 
         // Blacklist
-        List<String> paths = BlacklistStore.getInstance(context).getPaths();
-        if (!paths.isEmpty()) {
-            selection = generateBlacklistSelection(selection, paths.size());
-            selectionValues = addBlacklistSelectionValues(selectionValues, paths);
+        BlacklistStore.Selection blacklist = BlacklistStore.getInstance(context).getSelection();
+        if (blacklist != null) {
+            selection = selection + " AND " + blacklist.clause;
+            selectionValues = addBlacklistSelectionValues(selectionValues, blacklist.values);
         }
 
         try {
             return context.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                    BASE_PROJECTION, selection, selectionValues, sortOrder);
+                    projection, selection, selectionValues, sortOrder);
         } catch (SecurityException e) {
             return null;
         }
     }
 
-    private static String generateBlacklistSelection(String selection, int pathCount) {
-        String newSelection = selection != null && !selection.trim().equals("") ? selection + " AND " : "";
-        newSelection += AudioColumns.DATA + " NOT LIKE ?";
-        for (int i = 0; i < pathCount - 1; i++) {
-            newSelection += " AND " + AudioColumns.DATA + " NOT LIKE ?";
-        }
-        return newSelection;
-    }
-
-    private static String[] addBlacklistSelectionValues(String[] selectionValues, List<String> paths) {
-        if (selectionValues == null) selectionValues = new String[0];
-        String[] newSelectionValues = new String[selectionValues.length + paths.size()];
+    private static String[] addBlacklistSelectionValues(String[] selectionValues, String[] blacklistValues) {
+        if (selectionValues == null) return blacklistValues.clone();
+        String[] newSelectionValues = new String[selectionValues.length + blacklistValues.length];
         System.arraycopy(selectionValues, 0, newSelectionValues, 0, selectionValues.length);
-        for (int i = selectionValues.length; i < newSelectionValues.length; i++) {
-            newSelectionValues[i] = paths.get(i - selectionValues.length) + "%";
-        }
+        System.arraycopy(blacklistValues, 0, newSelectionValues, selectionValues.length, blacklistValues.length);
         return newSelectionValues;
     }
-}
\ No newline at end of file
+}
@@ -20,10 +20,10 @@ import android.database.Cursor;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
+import com.kabouzeid.trebl.util.LongIntMap;
+import com.kabouzeid.trebl.util.LongList;
+
+import java.util.Arrays;
 
 /**
  * This cursor basically wraps a song cursor and is given a list of the order of the ids of the
@@ -34,11 +34,11 @@ public class SortedLongCursor extends AbstractCursor {
     // cursor to wrap
     private final Cursor mCursor;
     // the map of external indices to internal indices
-    private List<Integer> mOrderedPositions;
+    private int[] mOrderedPositions;
     // this contains the ids that weren't found in the underlying cursor
-    private List<Long> mMissingIds;
-    // this contains the mapped cursor positions and afterwards the extra ids that weren't found
-    private HashMap<Long, Integer> mMapCursorPositions;
+    private long[] mMissingIds;
+    // this contains the ids that were in the underlying cursor but not part of the ordered list
+    private long[] mExtraIds;
 
     /**
      * @param cursor     to wrap
@@ -48,62 +48,73 @@ public class SortedLongCursor extends AbstractCursor {
     public SortedLongCursor(final Cursor cursor, final long[] order, final String columnName) {
 
         mCursor = cursor;
-        mMissingIds = buildCursorPositionMapping(order, columnName);
+        buildCursorPositionMapping(order, columnName);
     }
 
     /**
      * This function populates mOrderedPositions with the cursor positions in the order based
-     * on the order passed in
+     * on the order passed in, and the missing and extra ids
      *
      * @param order the target order of the internal cursor
-     * @return returns the ids that aren't found in the underlying cursor
      */
-    @NonNull
-    private List<Long> buildCursorPositionMapping(@Nullable final long[] order, final String columnName) {
-        List<Long> missingIds = new ArrayList<>();
-
-        mOrderedPositions = new ArrayList<>(mCursor.getCount());
-
-        mMapCursorPositions = new HashMap<>(mCursor.getCount());
+    private void buildCursorPositionMapping(@Nullable final long[] order, final String columnName) {
+        final int count = mCursor.getCount();
+        final long[] ids = new long[count];
+        final LongIntMap cursorPositions = new LongIntMap(count);
         final int idPosition = mCursor.getColumnIndex(columnName);
 
+        // first figure out where each of the ids are in the cursor
         if (mCursor.moveToFirst()) {
-            // first figure out where each of the ids are in the cursor
             do {
-                mMapCursorPositions.put(mCursor.getLong(idPosition), mCursor.getPosition());
+                ids[mCursor.getPosition()] = mCursor.getLong(idPosition);
+                cursorPositions.put(ids[mCursor.getPosition()], mCursor.getPosition());
             } while (mCursor.moveToNext());
+            mCursor.moveToFirst();
+        }
 
-            // now create the ordered positions to map to the internal cursor given the
-            // external sort order
-            for (int i = 0; order != null && i < order.length; i++) {
-                final long id = order[i];
-                if (mMapCursorPositions.containsKey(id)) {
-                    mOrderedPositions.add(mMapCursorPositions.get(id));
-                    mMapCursorPositions.remove(id);
-                } else {
-                    missingIds.add(id);
-                }
+        // now create the ordered positions to map to the internal cursor given the
+        // external sort order
+        final int orderLength = order == null ? 0 : order.length;
+        final int[] orderedPositions = new int[Math.min(count, orderLength)];
+        final boolean[] used = new boolean[count];
+        final LongList missingIds = new LongList();
+        int size = 0;
+        for (int i = 0; i < orderLength; i++) {
+            final int position = cursorPositions.get(order[i]);
+            if (position == LongIntMap.NO_VALUE) {
+                missingIds.add(order[i]);
+            } else if (!used[position]) {
+                used[position] = true;
+                orderedPositions[size++] = position;
             }
+        }
 
-            mCursor.moveToFirst();
+        final LongList extraIds = new LongList();
+        for (int position = 0; position < count; position++) {
+            if (!used[position]) {
+                extraIds.add(ids[position]);
+            }
         }
 
-        return missingIds;
+        mOrderedPositions = size == orderedPositions.length ? orderedPositions : Arrays.copyOf(orderedPositions, size);
+        mMissingIds = missingIds.toArray();
+        mExtraIds = extraIds.toArray();
     }
 
     /**
-     * @return the list of ids that weren't found in the underlying cursor
+     * @return the ids that weren't found in the underlying cursor
      */
-    public List<Long> getMissingIds() {
+    @NonNull
+    public long[] getMissingIds() {
         return mMissingIds;
     }
 
     /**
-     * @return the list of ids that were in the underlying cursor but not part of the ordered list
+     * @return the ids that were in the underlying cursor but not part of the ordered list
      */
     @NonNull
-    public Collection<Long> getExtraIds() {
-        return mMapCursorPositions.keySet();
+    public long[] getExtraIds() {
+        return mExtraIds;
     }
 
     @Override
@@ -115,7 +126,7 @@ public class SortedLongCursor extends AbstractCursor {
 
     @Override
     public int getCount() {
-        return mOrderedPositions.size();
+        return mOrderedPositions.length;
     }
 
     @Override
@@ -161,7 +172,7 @@ public class SortedLongCursor extends AbstractCursor {
     @Override
     public boolean onMove(int oldPosition, int newPosition) {
         if (newPosition >= 0 && newPosition < getCount()) {
-            mCursor.moveToPosition(mOrderedPositions.get(newPosition));
+            mCursor.moveToPosition(mOrderedPositions[newPosition]);
             return true;
         }
 
@@ -0,0 +1,414 @@
+package com.kabouzeid.trebl.loader;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index from folded words to the documents and fields they appear in.
+ * <p>
+ * Every query word has to match a word of the document: exactly, as a prefix or, for longer words, with one or two
+ * typos. The terms are sorted so a prefix is a range found by binary search, typos are only looked for among the
+ * terms of about the same length. The terms of every document are kept as well, so the hits of an earlier query can
+ * be scored again without going through the whole index.
+ */
+public final class TermIndex {
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // a posting is the document shifted left by FIELD_BITS, or-ed with the field
+    private static final int FIELD_BITS = 3;
+    private static final int FIELD_MASK = (1 << FIELD_BITS) - 1;
+    public static final int MAX_FIELDS = 1 << FIELD_BITS;
+
+    private static final float EXACT_MATCH = 1f;
+    private static final float PREFIX_MATCH = 0.6f;
+    private static final float TYPO_MATCH = 0.4f;
+
+    private final int documentCount;
+    @NonNull
+    private final float[] fieldWeights;
+    // sorted alphabetically
+    @NonNull
+    private final String[] terms;
+    @NonNull
+    private final int[][] postings;
+    // term positions sorted by term length, lengthStarts[l] is the first one of length l
+    @NonNull
+    private final int[] termsByLength;
+    @NonNull
+    private final int[] lengthStarts;
+    // the characters of every term, see characterMask()
+    @NonNull
+    private final long[] termMasks;
+    // for every document its terms, shifted left by FIELD_BITS and or-ed with the field
+    @NonNull
+    private final int[][] documentTerms;
+
+    private TermIndex(int documentCount, @NonNull float[] fieldWeights, @NonNull String[] terms, @NonNull int[][] postings) {
+        this.documentCount = documentCount;
+        this.fieldWeights = fieldWeights;
+        this.terms = terms;
+        this.postings = postings;
+
+        int maxLength = 0;
+        for (String term : terms) {
+            maxLength = Math.max(maxLength, term.length());
+        }
+        lengthStarts = new int[maxLength + 2];
+        for (String term : terms) {
+            lengthStarts[term.length() + 1]++;
+        }
+        for (int i = 1; i < lengthStarts.length; i++) {
+            lengthStarts[i] += lengthStarts[i - 1];
+        }
+        termsByLength = new int[terms.length];
+        final int[] next = Arrays.copyOf(lengthStarts, lengthStarts.length);
+        for (int i = 0; i < terms.length; i++) {
+            termsByLength[next[terms[i].length()]++] = i;
+        }
+        termMasks = new long[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            termMasks[i] = characterMask(terms[i]);
+        }
+
+        final int[] termCounts = new int[documentCount];
+        for (int[] termPostings : postings) {
+            for (int posting : termPostings) {
+                termCounts[posting >>> FIELD_BITS]++;
+            }
+        }
+        documentTerms = new int[documentCount][];
+        for (int d = 0; d < documentCount; d++) {
+            documentTerms[d] = new int[termCounts[d]];
+            termCounts[d] = 0;
+        }
+        for (int term = 0; term < terms.length; term++) {
+            for (int posting : postings[term]) {
+                final int document = posting >>> FIELD_BITS;
+                documentTerms[document][termCounts[document]++] = (term << FIELD_BITS) | (posting & FIELD_MASK);
+            }
+        }
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Lower case, without diacritics, ligatures spelled out.
+     */
+    @NonNull
+    public static String fold(@Nullable String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String folded = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        folded = COMBINING_MARKS.matcher(folded).replaceAll("");
+        // letters that don't decompose
+        if (folded.indexOf('\u00df') >= 0) folded = folded.replace("\u00df", "ss");
+        if (folded.indexOf('\u00e6') >= 0) folded = folded.replace("\u00e6", "ae");
+        if (folded.indexOf('\u0153') >= 0) folded = folded.replace("\u0153", "oe");
+        if (folded.indexOf('\u00f8') >= 0) folded = folded.replace('\u00f8', 'o');
+        if (folded.indexOf('\u0142') >= 0) folded = folded.replace('\u0142', 'l');
+        if (folded.indexOf('\u0111') >= 0) folded = folded.replace('\u0111', 'd');
+        return folded;
+    }
+
+    /**
+     * @return the folded words of the text
+     */
+    @NonNull
+    public static String[] tokenize(@Nullable String text) {
+        final String folded = fold(text).trim();
+        if (folded.isEmpty()) {
+            return new String[0];
+        }
+        final List<String> tokens = new ArrayList<>();
+        for (String token : SEPARATORS.split(folded)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    /**
+     * @return the score of every document, 0 for the documents that don't match all tokens.
+     */
+    @NonNull
+    public float[] score(@NonNull String[] tokens) {
+        final float[] scores = new float[documentCount];
+        if (tokens.length == 0) {
+            return scores;
+        }
+        final float[] tokenScores = new float[documentCount];
+        for (int t = 0; t < tokens.length; t++) {
+            Arrays.fill(tokenScores, 0f);
+            scoreToken(tokens[t], tokenScores);
+            for (int d = 0; d < documentCount; d++) {
+                if (t > 0 && scores[d] == 0f) continue;
+                scores[d] = tokenScores[d] == 0f ? 0f : scores[d] + tokenScores[d];
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Like {@link #score(String[])}, but only the candidates are scored, all other documents get 0.
+     *
+     * @param candidates the documents to score, null for all of them
+     */
+    @NonNull
+    public float[] score(@NonNull String[] tokens, @Nullable int[] candidates) {
+        if (candidates == null) {
+            return score(tokens);
+        }
+        final float[] scores = new float[documentCount];
+        if (tokens.length == 0) {
+            return scores;
+        }
+        for (int document : candidates) {
+            // summed in the same order as score(), so the results are the same
+            float score = 0f;
+            for (String token : tokens) {
+                final float tokenScore = scoreDocument(token, document);
+                if (tokenScore == 0f) {
+                    score = 0f;
+                    break;
+                }
+                score += tokenScore;
+            }
+            scores[document] = score;
+        }
+        return scores;
+    }
+
+    /**
+     * @param prefixTokens the tokens of a query the given one was typed after, like "hello w" after "hello"
+     * @return whether every document that matches the tokens also matches the prefix tokens, then scoring the hits
+     * of the prefix with {@link #score(String[], int[])} finds the same documents as scoring everything.
+     */
+    public static boolean narrows(@NonNull String[] prefixTokens, @NonNull String[] tokens) {
+        if (prefixTokens.length == 0 || prefixTokens.length > tokens.length) {
+            return false;
+        }
+        for (int i = 0; i < prefixTokens.length; i++) {
+            if (tokens[i].equals(prefixTokens[i])) {
+                continue;
+            }
+            // a longer word may match terms with typos that don't start with the shorter one
+            if (!tokens[i].startsWith(prefixTokens[i]) || getMaxTypos(tokens[i]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the positions of the documents with a score above 0, best first. Documents with the same score keep
+     * their order.
+     */
+    @NonNull
+    public static int[] rank(@NonNull float[] scores) {
+        int count = 0;
+        for (float score : scores) {
+            if (score > 0f) count++;
+        }
+        final long[] keys = new long[count];
+        int i = 0;
+        for (int d = 0; d < scores.length; d++) {
+            if (scores[d] > 0f) {
+                // descending score in the upper bits, ascending position in the lower bits
+                keys[i++] = ((long) (Integer.MAX_VALUE - Float.floatToIntBits(scores[d])) << 32) | d;
+            }
+        }
+        Arrays.sort(keys);
+        final int[] ranked = new int[count];
+        for (i = 0; i < count; i++) {
+            ranked[i] = (int) keys[i];
+        }
+        return ranked;
+    }
+
+    private void scoreToken(@NonNull String token, @NonNull float[] tokenScores) {
+        // prefix range, the exact match is its first term if there is one
+        int position = Arrays.binarySearch(terms, token);
+        if (position < 0) position = -position - 1;
+        final int prefixStart = position;
+        for (; position < terms.length && terms[position].startsWith(token); position++) {
+            final float match = terms[position].length() == token.length() ? EXACT_MATCH : PREFIX_MATCH;
+            addPostings(position, match, tokenScores);
+        }
+        final int prefixEnd = position;
+
+        final int maxTypos = getMaxTypos(token);
+        if (maxTypos == 0) {
+            return;
+        }
+        final long tokenMask = characterMask(token);
+        final int minLength = Math.max(1, token.length() - maxTypos);
+        final int maxLength = Math.min(lengthStarts.length - 2, token.length() + maxTypos);
+        for (int length = minLength; length <= maxLength; length++) {
+            for (int i = lengthStarts[length]; i < lengthStarts[length + 1]; i++) {
+                final int term = termsByLength[i];
+                if (term >= prefixStart && term < prefixEnd) continue;
+                // every edit adds or removes at most one distinct character
+                if (Long.bitCount(tokenMask & ~termMasks[term]) > maxTypos
+                        || Long.bitCount(termMasks[term] & ~tokenMask) > maxTypos) continue;
+                if (isWithinDistance(token, terms[term], maxTypos)) {
+                    addPostings(term, TYPO_MATCH, tokenScores);
+                }
+            }
+        }
+    }
+
+    /**
+     * The same matches as {@link #scoreToken(String, float[])}, for a single document.
+     */
+    private float scoreDocument(@NonNull String token, int document) {
+        final int maxTypos = getMaxTypos(token);
+        float best = 0f;
+        for (int entry : documentTerms[document]) {
+            final String term = terms[entry >>> FIELD_BITS];
+            final float match;
+            if (term.startsWith(token)) {
+                match = term.length() == token.length() ? EXACT_MATCH : PREFIX_MATCH;
+            } else if (maxTypos > 0 && Math.abs(term.length() - token.length()) <= maxTypos
+                    && isWithinDistance(token, term, maxTypos)) {
+                match = TYPO_MATCH;
+            } else {
+                continue;
+            }
+            final float score = match * fieldWeights[entry & FIELD_MASK];
+            if (score > best) {
+                best = score;
+            }
+        }
+        return best;
+    }
+
+    private static int getMaxTypos(@NonNull String token) {
+        return token.length() >= 8 ? 2 : token.length() >= 4 ? 1 : 0;
+    }
+
+    private void addPostings(int term, float match, @NonNull float[] tokenScores) {
+        for (int posting : postings[term]) {
+            final int document = posting >>> FIELD_BITS;
+            final float score = match * fieldWeights[posting & FIELD_MASK];
+            if (score > tokenScores[document]) {
+                tokenScores[document] = score;
+            }
+        }
+    }
+
+    /**
+     * @return a bit for every character, characters may share a bit so this only ever underestimates differences.
+     */
+    private static long characterMask(@NonNull String term) {
+        long mask = 0;
+        for (int i = 0; i < term.length(); i++) {
+            mask |= 1L << (term.charAt(i) & 63);
+        }
+        return mask;
+    }
+
+    /**
+     * Optimal string alignment distance, gives up as soon as the distance exceeds the maximum.
+     */
+    static boolean isWithinDistance(@NonNull String a, @NonNull String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) return false;
+        int[] beforePrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        int previousRowMin = 0;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                final int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, beforePrevious[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            // a transposition can still reach back two rows
+            if (rowMin > max && previousRowMin > max) return false;
+            previousRowMin = rowMin;
+            final int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()] <= max;
+    }
+
+    public static final class Builder {
+        @NonNull
+        private final float[] fieldWeights;
+        @NonNull
+        private final Map<String, int[]> postings = new HashMap<>();
+        @NonNull
+        private final Map<String, Integer> postingCounts = new HashMap<>();
+        private int documentCount;
+
+        /**
+         * @param fieldWeights the weight of a match for every field, at most {@link #MAX_FIELDS} fields
+         */
+        public Builder(@NonNull float... fieldWeights) {
+            if (fieldWeights.length > MAX_FIELDS) {
+                throw new IllegalArgumentException("At most " + MAX_FIELDS + " fields");
+            }
+            this.fieldWeights = fieldWeights;
+        }
+
+        /**
+         * Documents have to be added in ascending order, starting at 0.
+         */
+        @NonNull
+        public Builder add(int document, int field, @Nullable String text) {
+            documentCount = Math.max(documentCount, document + 1);
+            for (String token : tokenize(text)) {
+                final int posting = (document << FIELD_BITS) | field;
+                int[] termPostings = postings.get(token);
+                final Integer boxedCount = postingCounts.get(token);
+                int count = boxedCount == null ? 0 : boxedCount;
+                if (termPostings == null) {
+                    termPostings = new int[2];
+                    postings.put(token, termPostings);
+                } else if (termPostings[count - 1] == posting) {
+                    // same word twice in the field
+                    continue;
+                } else if (count == termPostings.length) {
+                    termPostings = Arrays.copyOf(termPostings, count << 1);
+                    postings.put(token, termPostings);
+                }
+                termPostings[count] = posting;
+                postingCounts.put(token, count + 1);
+            }
+            return this;
+        }
+
+        @NonNull
+        public TermIndex build() {
+            final String[] terms = postings.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+            final int[][] termPostings = new int[terms.length][];
+            for (int i = 0; i < terms.length; i++) {
+                termPostings[i] = Arrays.copyOf(postings.get(terms[i]), postingCounts.get(terms[i]));
+            }
+            return new TermIndex(documentCount, fieldWeights, terms, termPostings);
+        }
+    }
+}
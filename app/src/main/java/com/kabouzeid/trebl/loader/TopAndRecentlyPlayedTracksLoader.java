@@ -18,6 +18,7 @@ package com.kabouzeid.trebl.loader;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.MergeCursor;
 import android.provider.BaseColumns;
 
 import androidx.annotation.NonNull;
@@ -48,11 +49,8 @@ public class TopAndRecentlyPlayedTracksLoader {
 
         // clean up the databases with any ids not found
         if (retCursor != null) {
-            List<Long> missingIds = retCursor.getMissingIds();
-            if (missingIds != null && missingIds.size() > 0) {
-                for (long id : missingIds) {
-                    HistoryStore.getInstance(context).removeSongId(id);
-                }
+            for (long id : retCursor.getMissingIds()) {
+                HistoryStore.getInstance(context).removeSongId(id);
             }
         }
         return retCursor;
@@ -64,11 +62,8 @@ public class TopAndRecentlyPlayedTracksLoader {
 
         // clean up the databases with any ids not found
         if (retCursor != null) {
-            List<Long> missingIds = retCursor.getMissingIds();
-            if (missingIds != null && missingIds.size() > 0) {
-                for (long id : missingIds) {
-                    SongPlayCountStore.getInstance(context).removeItem(id);
-                }
+            for (long id : retCursor.getMissingIds()) {
+                SongPlayCountStore.getInstance(context).removeItem(id);
             }
         }
         return retCursor;
@@ -107,36 +102,42 @@ public class TopAndRecentlyPlayedTracksLoader {
     @Nullable
     private static SortedLongCursor makeSortedCursor(@NonNull final Context context, @Nullable final Cursor cursor, final int idColumn) {
         if (cursor != null && cursor.moveToFirst()) {
-            // create the list of ids to select against
-            StringBuilder selection = new StringBuilder();
-            selection.append(BaseColumns._ID);
-            selection.append(" IN (");
-
             // this tracks the order of the ids
             long[] order = new long[cursor.getCount()];
-
-            long id = cursor.getLong(idColumn);
-            selection.append(id);
-            order[cursor.getPosition()] = id;
-
-            while (cursor.moveToNext()) {
-                selection.append(",");
-
-                id = cursor.getLong(idColumn);
-                order[cursor.getPosition()] = id;
-                selection.append(String.valueOf(id));
+            do {
+                order[cursor.getPosition()] = cursor.getLong(idColumn);
+            } while (cursor.moveToNext());
+
+            // get the songs in chunks that stay below the argument limit
+            Cursor[] songCursors = new Cursor[(order.length + BatchedSongLoader.CHUNK_SIZE - 1) / BatchedSongLoader.CHUNK_SIZE];
+            for (int chunk = 0; chunk < songCursors.length; chunk++) {
+                final int start = chunk * BatchedSongLoader.CHUNK_SIZE;
+                final int end = Math.min(start + BatchedSongLoader.CHUNK_SIZE, order.length);
+                String[] selectionValues = new String[end - start];
+                for (int i = start; i < end; i++) {
+                    selectionValues[i - start] = String.valueOf(order[i]);
+                }
+                songCursors[chunk] = SongLoader.makeSongCursor(context,
+                        BatchedSongLoader.makeInSelection(BaseColumns._ID, selectionValues.length), selectionValues);
+                if (songCursors[chunk] == null) {
+                    closeAll(songCursors);
+                    return null;
+                }
             }
 
-            selection.append(")");
-
-            // get a list of songs with the data given the selection statement
-            Cursor songCursor = SongLoader.makeSongCursor(context, selection.toString(), null);
-            if (songCursor != null) {
-                // now return the wrapped TopTracksCursor to handle sorting given order
-                return new SortedLongCursor(songCursor, order, BaseColumns._ID);
-            }
+            // now return the wrapped TopTracksCursor to handle sorting given order
+            Cursor songCursor = songCursors.length == 1 ? songCursors[0] : new MergeCursor(songCursors);
+            return new SortedLongCursor(songCursor, order, BaseColumns._ID);
         }
 
         return null;
     }
+
+    private static void closeAll(@NonNull final Cursor[] cursors) {
+        for (Cursor cursor : cursors) {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
 }
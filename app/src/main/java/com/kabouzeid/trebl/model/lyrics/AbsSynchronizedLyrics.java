@@ -1,29 +1,17 @@
 package com.kabouzeid.trebl.model.lyrics;
 
-import android.util.SparseArray;
+import androidx.annotation.NonNull;
 
 public abstract class AbsSynchronizedLyrics extends Lyrics {
     private static final int TIME_OFFSET_MS = 500; // time adjustment to display line before it actually starts
 
-    protected final SparseArray<String> lines = new SparseArray<>();
+    @NonNull
+    protected LyricsTimeline timeline = LyricsTimeline.EMPTY;
     protected int offset = 0;
 
     public String getLine(int time) {
-        time += offset + AbsSynchronizedLyrics.TIME_OFFSET_MS;
-
-        int lastLineTime = lines.keyAt(0);
-
-        for (int i = 0; i < lines.size(); i++) {
-            int lineTime = lines.keyAt(i);
-
-            if (time >= lineTime) {
-                lastLineTime = lineTime;
-            } else {
-                break;
-            }
-        }
-
-        return lines.get(lastLineTime);
+        final int index = timeline.indexOf(time + offset + AbsSynchronizedLyrics.TIME_OFFSET_MS);
+        return index < 0 ? "" : timeline.getLine(index);
     }
 
     public boolean isSynchronized() {
@@ -42,8 +30,8 @@ public abstract class AbsSynchronizedLyrics extends Lyrics {
         if (valid) {
             StringBuilder sb = new StringBuilder();
 
-            for (int i = 0; i < lines.size(); i++) {
-                String line = lines.valueAt(i);
+            for (int i = 0; i < timeline.size(); i++) {
+                String line = timeline.getLine(i);
                 sb.append(line).append("\r\n");
             }
 
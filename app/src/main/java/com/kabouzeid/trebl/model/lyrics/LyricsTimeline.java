@@ -0,0 +1,118 @@
+package com.kabouzeid.trebl.model.lyrics;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * The lines of synchronized lyrics ordered by their start time.
+ * <p>
+ * The times and lines are kept in parallel arrays, a line is found by binary search. The last line found is
+ * remembered and checked first, so lookups while the song simply plays on are constant time.
+ */
+public final class LyricsTimeline {
+    public static final LyricsTimeline EMPTY = new Builder().build();
+
+    @NonNull
+    private final int[] times;
+    @NonNull
+    private final String[] lines;
+
+    // only a hint, a stale value costs a binary search
+    private int lastIndex;
+
+    private LyricsTimeline(@NonNull int[] times, @NonNull String[] lines) {
+        this.times = times;
+        this.lines = lines;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public int getTime(int index) {
+        return times[index];
+    }
+
+    @NonNull
+    public String getLine(int index) {
+        return lines[index];
+    }
+
+    /**
+     * @return the line that is sung at the given time, the first line before it started and -1 if there are no
+     * lines.
+     */
+    public int indexOf(int time) {
+        final int count = times.length;
+        if (count == 0) return -1;
+
+        final int hint = lastIndex;
+        if (isAt(hint, time)) return hint;
+        if (hint + 1 < count && isAt(hint + 1, time)) return lastIndex = hint + 1;
+
+        int index = Arrays.binarySearch(times, time);
+        // the last line that started at or before the time
+        if (index < 0) index = -index - 2;
+        return lastIndex = Math.max(index, 0);
+    }
+
+    private boolean isAt(int index, int time) {
+        return times[index] <= time && (index + 1 == times.length || time < times[index + 1]) || index == 0 && time < times[0];
+    }
+
+    public static final class Builder {
+        private int[] times = new int[16];
+        private String[] lines = new String[16];
+        private int size;
+
+        /**
+         * Lines may be added in any order, of several lines with the same time the last one wins.
+         */
+        @NonNull
+        public Builder add(int time, @NonNull String line) {
+            if (size == times.length) {
+                final int capacity = size << 1;
+                times = Arrays.copyOf(times, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+            }
+            times[size] = time;
+            lines[size] = line;
+            size++;
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @NonNull
+        public LyricsTimeline build() {
+            // time in the upper bits, the order of addition in the lower bits
+            final long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((long) times[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+
+            int count = 0;
+            final int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                final int index = (int) keys[i];
+                if (count > 0 && times[order[count - 1]] == times[index]) {
+                    order[count - 1] = index;
+                } else {
+                    order[count++] = index;
+                }
+            }
+
+            final int[] sortedTimes = new int[count];
+            final String[] sortedLines = new String[count];
+            for (int i = 0; i < count; i++) {
+                sortedTimes[i] = times[order[i]];
+                sortedLines[i] = lines[order[i]];
+            }
+            return new LyricsTimeline(sortedTimes, sortedLines);
+        }
+    }
+}
@@ -1,15 +1,23 @@
 package com.kabouzeid.trebl.model.lyrics;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import androidx.annotation.NonNull;
 
-class SynchronizedLyricsLRC extends AbsSynchronizedLyrics {
-    private static final Pattern LRC_LINE_PATTERN = Pattern.compile("((?:\\[.*?\\])+)(.*)");
-    private static final Pattern LRC_TIME_PATTERN = Pattern.compile("\\[(\\d+):(\\d{2}(?:\\.\\d+)?)\\]");
-    private static final Pattern LRC_ATTRIBUTE_PATTERN = Pattern.compile("\\[(\\D+):(.+)\\]");
+import java.util.Arrays;
+import java.util.Locale;
 
-    private static final float LRC_SECONDS_TO_MS_MULTIPLIER = 1000f;
+/**
+ * LRC lyrics: every line starts with one or more {@code [mm:ss.xx]} time tags, attribute lines like
+ * {@code [offset:+250]} adjust them. The {@code <mm:ss.xx>} word tags of enhanced LRC are removed from the text.
+ * <p>
+ * Lines are scanned by hand instead of matched by regular expressions, tags that don't parse are skipped.
+ */
+class SynchronizedLyricsLRC extends AbsSynchronizedLyrics {
+    private static final int LRC_SECONDS_TO_MS_MULTIPLIER = 1000;
     private static final int LRC_MINUTES_TO_MS_MULTIPLIER = 60000;
+    // more minutes than that would overflow the milliseconds
+    private static final int MAX_MINUTE_DIGITS = 4;
+
+    private static final int NO_TIME = -1;
 
     @Override
     public SynchronizedLyricsLRC parse(boolean check) {
@@ -17,56 +25,128 @@ class SynchronizedLyricsLRC extends AbsSynchronizedLyrics {
             return this;
         }
 
-        String[] lines = this.data.split("\r?\n");
+        final String data = this.data;
+        final LyricsTimeline.Builder builder = new LyricsTimeline.Builder();
+        final int[] lineTimes = new int[4];
+        // reused for every line
+        final StringBuilder text = new StringBuilder();
 
-        for (String line : lines) {
-            line = line.trim();
-            if (line.isEmpty()) {
+        int lineStart = 0;
+        while (lineStart <= data.length()) {
+            int lineEnd = data.indexOf('\n', lineStart);
+            if (lineEnd < 0) lineEnd = data.length();
+            final int nextLineStart = lineEnd + 1;
+
+            // trim, which also drops the \r of \r\n
+            int start = lineStart;
+            int end = lineEnd;
+            while (start < end && data.charAt(start) <= ' ') start++;
+            while (end > start && data.charAt(end - 1) <= ' ') end--;
+            lineStart = nextLineStart;
+            if (start == end || data.charAt(start) != '[') {
                 continue;
             }
 
-            Matcher attrMatcher = SynchronizedLyricsLRC.LRC_ATTRIBUTE_PATTERN.matcher(line);
-            if (attrMatcher.find()) {
-                try {
-                    String attr = attrMatcher.group(1).toLowerCase().trim();
-                    String value = attrMatcher.group(2).toLowerCase().trim();
-                    switch (attr) {
-                        case "offset":
-                            this.offset = Integer.parseInt(value);
-                            break;
-                    }
-                } catch (Exception ex) {
-                    ex.printStackTrace();
+            // the leading tags
+            int timeCount = 0;
+            int[] times = lineTimes;
+            int position = start;
+            while (position < end && data.charAt(position) == '[') {
+                final int close = data.indexOf(']', position + 1);
+                if (close < 0 || close >= end) break;
+                final int time = parseTime(data, position + 1, close);
+                if (time != NO_TIME) {
+                    this.valid = true;
+                    if (check) return this;
+                    if (timeCount == times.length) times = Arrays.copyOf(times, timeCount << 1);
+                    times[timeCount++] = time;
+                } else if (timeCount == 0) {
+                    parseAttribute(data, position + 1, close);
                 }
-            } else {
-                Matcher matcher = SynchronizedLyricsLRC.LRC_LINE_PATTERN.matcher(line);
-                if (matcher.find()) {
-                    String time = matcher.group(1);
-                    String text = matcher.group(2);
-
-                    Matcher timeMatcher = SynchronizedLyricsLRC.LRC_TIME_PATTERN.matcher(time);
-                    while (timeMatcher.find()) {
-                        int m = 0;
-                        float s = 0f;
-                        try {
-                            m = Integer.parseInt(timeMatcher.group(1));
-                            s = Float.parseFloat(timeMatcher.group(2));
-                        } catch (NumberFormatException ex) {
-                            ex.printStackTrace();
-                        }
-                        int ms = (int) (s * LRC_SECONDS_TO_MS_MULTIPLIER) + m * LRC_MINUTES_TO_MS_MULTIPLIER;
-
-                        this.valid = true;
-                        if (check) return this;
-
-                        this.lines.append(ms, text);
+                position = close + 1;
+            }
+            if (timeCount == 0) {
+                continue;
+            }
+
+            // the text, without the word tags
+            text.setLength(0);
+            while (position < end) {
+                final char c = data.charAt(position);
+                if (c == '<') {
+                    final int close = data.indexOf('>', position + 1);
+                    if (close > 0 && close < end && parseTime(data, position + 1, close) != NO_TIME) {
+                        position = close + 1;
+                        continue;
                     }
                 }
+                text.append(c);
+                position++;
+            }
+
+            final String line = text.toString();
+            for (int i = 0; i < timeCount; i++) {
+                builder.add(times[i], line);
             }
         }
 
+        this.timeline = builder.build();
         this.parsed = true;
 
         return this;
     }
+
+    private void parseAttribute(@NonNull String data, int start, int end) {
+        final int colon = data.indexOf(':', start);
+        if (colon < 0 || colon >= end) return;
+        final String attr = data.substring(start, colon).trim().toLowerCase(Locale.ROOT);
+        if (attr.equals("offset")) {
+            try {
+                this.offset = Integer.parseInt(data.substring(colon + 1, end).trim());
+            } catch (NumberFormatException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Parses {@code m:ss}, optionally followed by a fraction of a second after a dot (or a colon, as some files
+     * have it).
+     *
+     * @return the time in milliseconds or {@link #NO_TIME}
+     */
+    private static int parseTime(@NonNull String data, int start, int end) {
+        int position = start;
+        int minutes = 0;
+        while (position < end && isDigit(data.charAt(position))) {
+            minutes = minutes * 10 + (data.charAt(position) - '0');
+            position++;
+        }
+        final int minuteDigits = position - start;
+        if (minuteDigits == 0 || minuteDigits > MAX_MINUTE_DIGITS) return NO_TIME;
+        if (position + 3 > end || data.charAt(position) != ':'
+                || !isDigit(data.charAt(position + 1)) || !isDigit(data.charAt(position + 2))) return NO_TIME;
+        final int seconds = (data.charAt(position + 1) - '0') * 10 + (data.charAt(position + 2) - '0');
+        position += 3;
+
+        int millis = 0;
+        if (position < end) {
+            final char separator = data.charAt(position);
+            if (separator != '.' && separator != ':') return NO_TIME;
+            position++;
+            if (position == end) return NO_TIME;
+            int scale = 100;
+            for (; position < end; position++) {
+                final char c = data.charAt(position);
+                if (!isDigit(c)) return NO_TIME;
+                millis += (c - '0') * scale;
+                scale /= 10;
+            }
+        }
+        return minutes * LRC_MINUTES_TO_MS_MULTIPLIER + seconds * LRC_SECONDS_TO_MS_MULTIPLIER + millis;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
 }
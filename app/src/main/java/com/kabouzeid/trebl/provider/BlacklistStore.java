@@ -7,14 +7,18 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Environment;
+import android.provider.MediaStore.Audio.AudioColumns;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import com.kabouzeid.trebl.loader.LibraryIndex;
 import com.kabouzeid.trebl.service.MusicService;
 import com.kabouzeid.trebl.util.FileUtil;
 import com.kabouzeid.trebl.util.PreferenceUtil;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class BlacklistStore extends SQLiteOpenHelper {
@@ -23,6 +27,12 @@ public class BlacklistStore extends SQLiteOpenHelper {
     private static final int VERSION = 1;
     private Context context;
 
+    // read from the database on first use and after every change
+    @Nullable
+    private volatile List<String> paths;
+    @Nullable
+    private volatile Selection selection;
+
     public BlacklistStore(final Context context) {
         super(context, DATABASE_NAME, null, VERSION);
         this.context = context;
@@ -86,6 +96,7 @@ public class BlacklistStore extends SQLiteOpenHelper {
         } finally {
             database.endTransaction();
         }
+        invalidate();
     }
 
     public boolean contains(File file) {
@@ -115,6 +126,7 @@ public class BlacklistStore extends SQLiteOpenHelper {
         database.delete(BlacklistStoreColumns.NAME,
                 BlacklistStoreColumns.PATH + "=?",
                 new String[]{path});
+        invalidate();
 
         notifyMediaStoreChanged();
     }
@@ -122,16 +134,48 @@ public class BlacklistStore extends SQLiteOpenHelper {
     public void clear() {
         final SQLiteDatabase database = getWritableDatabase();
         database.delete(BlacklistStoreColumns.NAME, null, null);
+        invalidate();
 
         notifyMediaStoreChanged();
     }
 
     private void notifyMediaStoreChanged() {
+        // the songs of the library depend on the blacklist
+        LibraryIndex.invalidate();
         context.sendBroadcast(new Intent(MusicService.MEDIA_STORE_CHANGED));
     }
 
+    private void invalidate() {
+        paths = null;
+        selection = null;
+    }
+
     @NonNull
     public List<String> getPaths() {
+        List<String> paths = this.paths;
+        if (paths == null) {
+            paths = Collections.unmodifiableList(queryPaths());
+            this.paths = paths;
+        }
+        return paths;
+    }
+
+    /**
+     * @return the selection that excludes the blacklisted songs from a MediaStore query, or null if nothing is
+     * blacklisted.
+     */
+    @Nullable
+    public Selection getSelection() {
+        Selection selection = this.selection;
+        if (selection == null) {
+            selection = new Selection(getPaths());
+            this.selection = selection;
+        }
+        return selection.values.length == 0 ? null : selection;
+    }
+
+    @NonNull
+    private List<String> queryPaths() {
         Cursor cursor = getReadableDatabase().query(BlacklistStoreColumns.NAME,
                 new String[]{BlacklistStoreColumns.PATH},
                 null, null, null, null, null);
@@ -148,6 +192,51 @@ public class BlacklistStore extends SQLiteOpenHelper {
         return paths;
     }
 
+    /**
+     * One {@code NOT LIKE} clause per blacklisted path, leaving out the paths that are inside of another
+     * blacklisted path as the clause of the outer one already excludes them.
+     */
+    public static class Selection {
+        @NonNull
+        public final String clause;
+        @NonNull
+        public final String[] values;
+
+        Selection(@NonNull List<String> paths) {
+            final List<String> prefixes = compact(paths);
+            final StringBuilder clause = new StringBuilder();
+            values = new String[prefixes.size()];
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) clause.append(" AND ");
+                clause.append(AudioColumns.DATA).append(" NOT LIKE ? ESCAPE '\\'");
+                values[i] = escapeLike(prefixes.get(i)) + "%";
+            }
+            this.clause = clause.toString();
+        }
+
+        /**
+         * @return the paths that don't start with another one of the paths, sorted.
+         */
+        @NonNull
+        static List<String> compact(@NonNull List<String> paths) {
+            final List<String> sorted = new ArrayList<>(paths);
+            Collections.sort(sorted);
+            final List<String> prefixes = new ArrayList<>();
+            for (String path : sorted) {
+                // a path sorts right after the paths that are its prefixes, so only the last kept one has to be checked
+                if (prefixes.isEmpty() || !path.startsWith(prefixes.get(prefixes.size() - 1))) {
+                    prefixes.add(path);
+                }
+            }
+            return prefixes;
+        }
+
+        @NonNull
+        private static String escapeLike(@NonNull String path) {
+            return path.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        }
+    }
+
     public interface BlacklistStoreColumns {
         String NAME = "blacklist";
 
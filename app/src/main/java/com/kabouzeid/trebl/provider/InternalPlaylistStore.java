@@ -67,6 +67,9 @@ public class InternalPlaylistStore {
 
     public static final String DATABASE_NAME = "internal_playlists.db";
 
+    // stays below SQLite's limit of 999 bound arguments per statement
+    private static final int MAX_IDS_PER_QUERY = 500;
+
     @Nullable
     private static InternalPlaylistStore sInstance = null;
 
@@ -162,9 +165,11 @@ public class InternalPlaylistStore {
      * Delete multiple playlists.
      */
     public void deletePlaylists(@NonNull List<Long> ids) {
-        for (Long id : ids) {
-            database.playlistDao().deletePlaylistById(id);
-        }
+        database.runInTransaction(() -> {
+            for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+                database.playlistDao().deletePlaylistsByIds(ids.subList(start, Math.min(start + MAX_IDS_PER_QUERY, ids.size())));
+            }
+        });
     }
 
     /**
@@ -183,61 +188,47 @@ public class InternalPlaylistStore {
      * @return true if added successfully
      */
     public boolean addSongToPlaylist(long playlistId, long audioId) {
-        // Check if song already exists in playlist
-        if (doesPlaylistContainSong(playlistId, audioId)) {
-            return false;
-        }
-
-        // Get the next order position
-        int nextOrder = database.playlistDao().getMaxSongOrder(playlistId) + 1;
-
-        PlaylistSongEntity song = new PlaylistSongEntity();
-        song.playlistId = playlistId;
-        song.audioId = audioId;
-        song.songOrder = nextOrder;
-        song.addedAt = System.currentTimeMillis();
-
-        long result = database.playlistDao().insertPlaylistSong(song);
-
-        // Update playlist modified time
-        if (result != -1) {
-            database.playlistDao().updatePlaylistModifiedTime(playlistId, System.currentTimeMillis());
-        }
-
-        return result != -1;
+        List<Long> audioIds = new ArrayList<>(1);
+        audioIds.add(audioId);
+        return addSongsToPlaylist(playlistId, audioIds) == 1;
     }
 
     /**
      * Add multiple songs to a playlist.
+     * All songs are inserted in one transaction, songs that are already in the playlist are
+     * skipped by the unique (playlist_id, audio_id) index.
      * @return number of songs added
      */
     public int addSongsToPlaylist(long playlistId, @NonNull List<Long> audioIds) {
-        int added = 0;
-        int nextOrder = database.playlistDao().getMaxSongOrder(playlistId) + 1;
-
-        for (Long audioId : audioIds) {
-            // Skip if song already exists
-            if (doesPlaylistContainSong(playlistId, audioId)) {
-                continue;
+        if (audioIds.isEmpty()) {
+            return 0;
+        }
+        return database.runInTransaction(() -> {
+            int nextOrder = database.playlistDao().getMaxSongOrder(playlistId) + 1;
+            long now = System.currentTimeMillis();
+
+            List<PlaylistSongEntity> songs = new ArrayList<>(audioIds.size());
+            for (Long audioId : audioIds) {
+                PlaylistSongEntity song = new PlaylistSongEntity();
+                song.playlistId = playlistId;
+                song.audioId = audioId;
+                song.songOrder = nextOrder++;
+                song.addedAt = now;
+                songs.add(song);
             }
 
-            PlaylistSongEntity song = new PlaylistSongEntity();
-            song.playlistId = playlistId;
-            song.audioId = audioId;
-            song.songOrder = nextOrder++;
-            song.addedAt = System.currentTimeMillis();
-
-            long result = database.playlistDao().insertPlaylistSong(song);
-            if (result != -1) {
-                added++;
+            int added = 0;
+            for (long result : database.playlistDao().insertPlaylistSongs(songs)) {
+                if (result != -1) {
+                    added++;
+                }
             }
-        }
-
-        if (added > 0) {
-            database.playlistDao().updatePlaylistModifiedTime(playlistId, System.currentTimeMillis());
-        }
 
-        return added;
+            if (added > 0) {
+                database.playlistDao().updatePlaylistModifiedTime(playlistId, now);
+            }
+            return added;
+        });
     }
 
     /**
@@ -268,10 +259,12 @@ public class InternalPlaylistStore {
      * Remove multiple songs from a playlist by their IDs.
      */
     public void removeSongsFromPlaylist(long playlistId, @NonNull List<Long> idsInPlaylist) {
-        for (Long id : idsInPlaylist) {
-            database.playlistDao().removeSongById(id);
-        }
-        database.playlistDao().updatePlaylistModifiedTime(playlistId, System.currentTimeMillis());
+        database.runInTransaction(() -> {
+            for (int start = 0; start < idsInPlaylist.size(); start += MAX_IDS_PER_QUERY) {
+                database.playlistDao().removeSongsByIds(idsInPlaylist.subList(start, Math.min(start + MAX_IDS_PER_QUERY, idsInPlaylist.size())));
+            }
+            database.playlistDao().updatePlaylistModifiedTime(playlistId, System.currentTimeMillis());
+        });
     }
 
     /**
@@ -292,27 +285,29 @@ public class InternalPlaylistStore {
         if (fromPosition == toPosition) {
             return true;
         }
-
-        List<PlaylistSongEntity> songs = database.playlistDao().getPlaylistSongs(playlistId);
-        if (fromPosition < 0 || fromPosition >= songs.size() ||
-            toPosition < 0 || toPosition >= songs.size()) {
+        if (fromPosition < 0 || toPosition < 0) {
             return false;
         }
 
-        // Reorder in memory
-        PlaylistSongEntity movedSong = songs.remove(fromPosition);
-        songs.add(toPosition, movedSong);
+        return database.runInTransaction(() -> {
+            PlaylistSongEntity movedSong = database.playlistDao().getSongAtPosition(playlistId, fromPosition);
+            PlaylistSongEntity targetSong = database.playlistDao().getSongAtPosition(playlistId, toPosition);
+            if (movedSong == null || targetSong == null) {
+                return false;
+            }
 
-        // Update all order values
-        for (int i = 0; i < songs.size(); i++) {
-            PlaylistSongEntity song = songs.get(i);
-            if (song.songOrder != i) {
-                database.playlistDao().updateSongOrder(song.id, i);
+            // The orders may have gaps, but they are unique. Shifting the songs in between by one
+            // frees the order of the target song without touching the rest of the playlist.
+            if (fromPosition < toPosition) {
+                database.playlistDao().shiftSongOrders(playlistId, movedSong.songOrder + 1, targetSong.songOrder, -1);
+            } else {
+                database.playlistDao().shiftSongOrders(playlistId, targetSong.songOrder, movedSong.songOrder - 1, 1);
             }
-        }
+            database.playlistDao().updateSongOrder(movedSong.id, targetSong.songOrder);
 
-        database.playlistDao().updatePlaylistModifiedTime(playlistId, System.currentTimeMillis());
-        return true;
+            database.playlistDao().updatePlaylistModifiedTime(playlistId, System.currentTimeMillis());
+            return true;
+        });
     }
 
     /**
@@ -346,17 +341,7 @@ public class InternalPlaylistStore {
                 List<PlaylistSong> songs = PlaylistSongLoader.getPlaylistSongListFromMediaStore(context, playlist.id);
 
                 // Add songs to internal playlist
-                for (int i = 0; i < songs.size(); i++) {
-                    PlaylistSong song = songs.get(i);
-
-                    PlaylistSongEntity entity = new PlaylistSongEntity();
-                    entity.playlistId = newPlaylistId;
-                    entity.audioId = song.id;
-                    entity.songOrder = i;
-                    entity.addedAt = System.currentTimeMillis();
-
-                    database.playlistDao().insertPlaylistSong(entity);
-                }
+                database.playlistDao().insertPlaylistSongs(toEntities(newPlaylistId, songs));
 
                 imported++;
             }
@@ -365,6 +350,21 @@ public class InternalPlaylistStore {
         return imported;
     }
 
+    @NonNull
+    private static List<PlaylistSongEntity> toEntities(long playlistId, @NonNull List<PlaylistSong> songs) {
+        long now = System.currentTimeMillis();
+        List<PlaylistSongEntity> entities = new ArrayList<>(songs.size());
+        for (int i = 0; i < songs.size(); i++) {
+            PlaylistSongEntity entity = new PlaylistSongEntity();
+            entity.playlistId = playlistId;
+            entity.audioId = songs.get(i).id;
+            entity.songOrder = i;
+            entity.addedAt = now;
+            entities.add(entity);
+        }
+        return entities;
+    }
+
     /**
      * Check if there are any playlists in MediaStore that can be migrated.
      */
@@ -388,14 +388,7 @@ public class InternalPlaylistStore {
             long newPlaylistId = createPlaylist(playlist.name);
             if (newPlaylistId != -1) {
                 List<PlaylistSong> songs = PlaylistSongLoader.getPlaylistSongListFromMediaStore(context, playlistId);
-                for (int i = 0; i < songs.size(); i++) {
-                    PlaylistSongEntity entity = new PlaylistSongEntity();
-                    entity.playlistId = newPlaylistId;
-                    entity.audioId = songs.get(i).id;
-                    entity.songOrder = i;
-                    entity.addedAt = System.currentTimeMillis();
-                    database.playlistDao().insertPlaylistSong(entity);
-                }
+                database.playlistDao().insertPlaylistSongs(toEntities(newPlaylistId, songs));
                 imported++;
             }
         }
@@ -500,6 +493,9 @@ public class InternalPlaylistStore {
         @Query("DELETE FROM playlists WHERE id = :id")
         void deletePlaylistById(long id);
 
+        @Query("DELETE FROM playlists WHERE id IN (:ids)")
+        void deletePlaylistsByIds(List<Long> ids);
+
         // Playlist song queries
         @Query("SELECT * FROM playlist_songs WHERE playlist_id = :playlistId ORDER BY song_order ASC")
         List<PlaylistSongEntity> getPlaylistSongs(long playlistId);
@@ -507,6 +503,9 @@ public class InternalPlaylistStore {
         @Query("SELECT * FROM playlist_songs WHERE playlist_id = :playlistId AND audio_id = :audioId LIMIT 1")
         PlaylistSongEntity getSongByAudioId(long playlistId, long audioId);
 
+        @Query("SELECT * FROM playlist_songs WHERE playlist_id = :playlistId ORDER BY song_order ASC LIMIT 1 OFFSET :position")
+        PlaylistSongEntity getSongAtPosition(long playlistId, int position);
+
         @Query("SELECT COALESCE(MAX(song_order), -1) FROM playlist_songs WHERE playlist_id = :playlistId")
         int getMaxSongOrder(long playlistId);
 
@@ -516,13 +515,22 @@ public class InternalPlaylistStore {
         @Insert(onConflict = OnConflictStrategy.IGNORE)
         long insertPlaylistSong(PlaylistSongEntity song);
 
+        @Insert(onConflict = OnConflictStrategy.IGNORE)
+        long[] insertPlaylistSongs(List<PlaylistSongEntity> songs);
+
         @Query("DELETE FROM playlist_songs WHERE playlist_id = :playlistId AND audio_id = :audioId")
         void removeSongByAudioId(long playlistId, long audioId);
 
         @Query("DELETE FROM playlist_songs WHERE id = :id")
         void removeSongById(long id);
 
+        @Query("DELETE FROM playlist_songs WHERE id IN (:ids)")
+        void removeSongsByIds(List<Long> ids);
+
         @Query("UPDATE playlist_songs SET song_order = :newOrder WHERE id = :id")
         void updateSongOrder(long id, int newOrder);
+
+        @Query("UPDATE playlist_songs SET song_order = song_order + :delta WHERE playlist_id = :playlistId AND song_order BETWEEN :fromOrder AND :toOrder")
+        void shiftSongOrders(long playlistId, int fromOrder, int toOrder, int delta);
     }
 }
@@ -0,0 +1,200 @@
+package com.kabouzeid.trebl.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Remembers where the lyrics of a song were found, and what they are, per song path and modification date.
+ * <p>
+ * Only the songs used most recently are kept, the least recently used entries are deleted once there are too many.
+ */
+public class LyricsStore extends SQLiteOpenHelper {
+    public static final String DATABASE_NAME = "lyrics.db";
+    private static final int VERSION = 1;
+    private static final int MAX_ITEMS_IN_DB = 200;
+
+    public static final int SOURCE_NONE = 0;
+    public static final int SOURCE_EMBEDDED = 1;
+    public static final int SOURCE_FILE = 2;
+
+    @Nullable
+    private static LyricsStore sInstance = null;
+
+    public LyricsStore(final Context context) {
+        super(context, DATABASE_NAME, null, VERSION);
+    }
+
+    @Override
+    public void onCreate(@NonNull final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + LyricsStoreColumns.NAME + " ("
+                + LyricsStoreColumns.PATH + " TEXT PRIMARY KEY NOT NULL,"
+                + LyricsStoreColumns.DATE_MODIFIED + " LONG NOT NULL,"
+                + LyricsStoreColumns.SOURCE + " INT NOT NULL,"
+                + LyricsStoreColumns.DIRECTORY_MODIFIED + " LONG NOT NULL,"
+                + LyricsStoreColumns.LYRICS_FILE + " TEXT,"
+                + LyricsStoreColumns.LYRICS_FILE_MODIFIED + " LONG NOT NULL,"
+                + LyricsStoreColumns.LYRICS + " TEXT,"
+                + LyricsStoreColumns.LAST_USED + " LONG NOT NULL);");
+    }
+
+    @Override
+    public void onUpgrade(@NonNull final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + LyricsStoreColumns.NAME);
+        onCreate(db);
+    }
+
+    @Override
+    public void onDowngrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + LyricsStoreColumns.NAME);
+        onCreate(db);
+    }
+
+    @NonNull
+    public static synchronized LyricsStore getInstance(@NonNull final Context context) {
+        if (sInstance == null) {
+            sInstance = new LyricsStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the entry of the path if it was stored for the same modification date.
+     */
+    @Nullable
+    public Entry get(@NonNull final String path, final long dateModified) {
+        final SQLiteDatabase database = getReadableDatabase();
+        final String selection = LyricsStoreColumns.PATH + "=? AND " + LyricsStoreColumns.DATE_MODIFIED + "=?";
+        final String[] selectionArgs = new String[]{path, String.valueOf(dateModified)};
+        Cursor cursor = database.query(LyricsStoreColumns.NAME,
+                new String[]{LyricsStoreColumns.SOURCE, LyricsStoreColumns.DIRECTORY_MODIFIED,
+                        LyricsStoreColumns.LYRICS_FILE, LyricsStoreColumns.LYRICS_FILE_MODIFIED, LyricsStoreColumns.LYRICS},
+                selection, selectionArgs,
+                null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        final Entry entry;
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            entry = new Entry(cursor.getInt(0), cursor.getLong(1), cursor.getString(2), cursor.getLong(3), cursor.getString(4));
+        } finally {
+            cursor.close();
+        }
+
+        final ContentValues values = new ContentValues(1);
+        values.put(LyricsStoreColumns.LAST_USED, System.currentTimeMillis());
+        getWritableDatabase().update(LyricsStoreColumns.NAME, values, selection, selectionArgs);
+        return entry;
+    }
+
+    /**
+     * Replaces the entry of the path.
+     */
+    public void put(@NonNull final String path, final long dateModified, @NonNull final Entry entry) {
+        final SQLiteDatabase database = getWritableDatabase();
+        database.beginTransaction();
+        try {
+            final ContentValues values = new ContentValues(8);
+            values.put(LyricsStoreColumns.PATH, path);
+            values.put(LyricsStoreColumns.DATE_MODIFIED, dateModified);
+            values.put(LyricsStoreColumns.SOURCE, entry.source);
+            values.put(LyricsStoreColumns.DIRECTORY_MODIFIED, entry.directoryModified);
+            values.put(LyricsStoreColumns.LYRICS_FILE, entry.lyricsFile);
+            values.put(LyricsStoreColumns.LYRICS_FILE_MODIFIED, entry.lyricsFileModified);
+            values.put(LyricsStoreColumns.LYRICS, entry.lyrics);
+            values.put(LyricsStoreColumns.LAST_USED, System.currentTimeMillis());
+            database.insertWithOnConflict(LyricsStoreColumns.NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+            // if our db is too large, delete the least recently used entries
+            Cursor oldest = null;
+            try {
+                oldest = database.query(LyricsStoreColumns.NAME,
+                        new String[]{LyricsStoreColumns.LAST_USED}, null, null, null, null,
+                        LyricsStoreColumns.LAST_USED + " ASC");
+
+                if (oldest != null && oldest.getCount() > MAX_ITEMS_IN_DB) {
+                    oldest.moveToPosition(oldest.getCount() - MAX_ITEMS_IN_DB);
+                    long timeOfRecordToKeep = oldest.getLong(0);
+
+                    database.delete(LyricsStoreColumns.NAME,
+                            LyricsStoreColumns.LAST_USED + " < ?",
+                            new String[]{String.valueOf(timeOfRecordToKeep)});
+                }
+            } finally {
+                if (oldest != null) {
+                    oldest.close();
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    public void clear() {
+        final SQLiteDatabase database = getWritableDatabase();
+        database.delete(LyricsStoreColumns.NAME, null, null);
+    }
+
+    public static class Entry {
+        /**
+         * One of {@link #SOURCE_NONE}, {@link #SOURCE_EMBEDDED} and {@link #SOURCE_FILE}.
+         */
+        public final int source;
+        /**
+         * When the directory of the song was last modified at the time it was searched for lyrics files, 0 if it
+         * wasn't searched.
+         */
+        public final long directoryModified;
+        /**
+         * The path of the lyrics file for {@link #SOURCE_FILE}, null otherwise.
+         */
+        @Nullable
+        public final String lyricsFile;
+        /**
+         * When the lyrics file was last modified at the time it was read, 0 without a lyrics file.
+         */
+        public final long lyricsFileModified;
+        @Nullable
+        public final String lyrics;
+
+        public Entry(int source, long directoryModified, @Nullable String lyrics) {
+            this(source, directoryModified, null, 0, lyrics);
+        }
+
+        public Entry(int source, long directoryModified, @Nullable String lyricsFile, long lyricsFileModified, @Nullable String lyrics) {
+            this.source = source;
+            this.directoryModified = directoryModified;
+            this.lyricsFile = lyricsFile;
+            this.lyricsFileModified = lyricsFileModified;
+            this.lyrics = lyrics;
+        }
+    }
+
+    public interface LyricsStoreColumns {
+        String NAME = "lyrics";
+
+        String PATH = "path";
+
+        String DATE_MODIFIED = "date_modified";
+
+        String SOURCE = "source";
+
+        String DIRECTORY_MODIFIED = "directory_modified";
+
+        String LYRICS_FILE = "lyrics_file";
+
+        String LYRICS_FILE_MODIFIED = "lyrics_file_modified";
+
+        String LYRICS = "lyrics";
+
+        String LAST_USED = "last_used";
+    }
+}
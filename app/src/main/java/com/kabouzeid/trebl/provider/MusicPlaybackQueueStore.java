@@ -20,28 +20,66 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
-import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.kabouzeid.trebl.loader.SongLoader;
+import com.kabouzeid.trebl.helper.ShuffleEngine;
+import com.kabouzeid.trebl.loader.LibraryIndex;
 import com.kabouzeid.trebl.model.Song;
+import com.kabouzeid.trebl.util.LongIntMap;
+import com.kabouzeid.trebl.util.LongList;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * @author Andrew Neal, modified for Phonograph by Karim Abou Zeid
  *         <p/>
  *         This keeps track of the music playback and history state of the playback service
+ *         <p/>
+ *         Only the song ids of the queue are stored, in their original order. The queue has a compacted snapshot
+ *         table and a journal of the changes made since. A save compares the queue with the last saved one and
+ *         appends a single insert, remove, move or permutation entry, so editing a long queue only writes a few rows.
+ *         The journal is folded into the snapshot once replaying it would cost more than rewriting the snapshot.
+ *         A shuffled queue additionally stores the seed of its {@link ShuffleEngine}, which regenerates the same
+ *         order on restore. Once the shuffled queue was edited the shuffle order is stored as a single blob instead.
+ *         The spread shuffle is always stored as a blob, its order depends on the artists and albums of the songs.
  */
 public class MusicPlaybackQueueStore extends SQLiteOpenHelper {
+    private static final String TAG = MusicPlaybackQueueStore.class.getSimpleName();
+
     @Nullable
     private static MusicPlaybackQueueStore sInstance = null;
     public static final String DATABASE_NAME = "music_playback_state.db";
     public static final String PLAYING_QUEUE_TABLE_NAME = "playing_queue";
-    public static final String ORIGINAL_PLAYING_QUEUE_TABLE_NAME = "original_playing_queue";
-    private static final int VERSION = 4;
+    public static final String JOURNAL_TABLE_NAME = "playing_queue_journal";
+    public static final String SHUFFLE_ORDER_TABLE_NAME = "shuffle_order";
+    private static final int VERSION = 5;
+
+    private static final int OP_INSERT = 0;
+    private static final int OP_REMOVE = 1;
+    private static final int OP_MOVE = 2;
+    private static final int OP_PERMUTE = 3;
+
+    // compact at the latest after this many journal entries
+    private static final int MAX_JOURNAL_ENTRIES = 64;
+
+    @NonNull
+    private final Context context;
+
+    // the queue as it is stored, null until it was read from the database
+    @Nullable
+    private long[] savedQueue;
+    @Nullable
+    private ShuffleState savedShuffleState;
+    private int journalEntries;
+    // number of ids and positions in the journal, compared against the size of the snapshot
+    private int journalPayload;
 
     /**
      * Constructor of <code>MusicPlaybackState</code>
@@ -50,73 +88,69 @@ public class MusicPlaybackQueueStore extends SQLiteOpenHelper {
      */
     public MusicPlaybackQueueStore(final Context context) {
         super(context, DATABASE_NAME, null, VERSION);
+        this.context = context;
     }
 
     @Override
     public void onCreate(@NonNull final SQLiteDatabase db) {
-        createTable(db, PLAYING_QUEUE_TABLE_NAME);
-        createTable(db, ORIGINAL_PLAYING_QUEUE_TABLE_NAME);
-    }
-
-    private void createTable(@NonNull final SQLiteDatabase db, final String tableName) {
-        //noinspection StringBufferReplaceableByString
-        StringBuilder builder = new StringBuilder();
-        builder.append("CREATE TABLE IF NOT EXISTS ");
-        builder.append(tableName);
-        builder.append("(");
-
-        builder.append(BaseColumns._ID);
-        builder.append(" LONG NOT NULL,");
-
-        builder.append(AudioColumns.TITLE);
-        builder.append(" STRING NOT NULL,");
-
-        builder.append(AudioColumns.TRACK);
-        builder.append(" INT NOT NULL,");
-
-        builder.append(AudioColumns.YEAR);
-        builder.append(" INT NOT NULL,");
-
-        builder.append(AudioColumns.DURATION);
-        builder.append(" LONG NOT NULL,");
-
-        builder.append(AudioColumns.DATA);
-        builder.append(" STRING NOT NULL,");
-
-        builder.append(AudioColumns.DATE_MODIFIED);
-        builder.append(" LONG NOT NULL,");
-
-        builder.append(AudioColumns.ALBUM_ID);
-        builder.append(" LONG NOT NULL,");
-
-        builder.append(AudioColumns.ALBUM);
-        builder.append(" STRING NOT NULL,");
-
-        builder.append(AudioColumns.ARTIST_ID);
-        builder.append(" LONG NOT NULL,");
-
-        builder.append(AudioColumns.ARTIST);
-        builder.append(" STRING NOT NULL);");
-
-        db.execSQL(builder.toString());
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + PLAYING_QUEUE_TABLE_NAME + " ("
+                + SnapshotColumns.ORDINAL + " INTEGER PRIMARY KEY, "
+                + SnapshotColumns.SONG_ID + " INTEGER NOT NULL);");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + JOURNAL_TABLE_NAME + " ("
+                + JournalColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + JournalColumns.OP + " INTEGER NOT NULL, "
+                + JournalColumns.ARG1 + " INTEGER NOT NULL, "
+                + JournalColumns.ARG2 + " INTEGER NOT NULL, "
+                + JournalColumns.DATA + " BLOB);");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + SHUFFLE_ORDER_TABLE_NAME + " ("
+                + ShuffleOrderColumns._ID + " INTEGER PRIMARY KEY, "
+                + ShuffleOrderColumns.MODE + " INTEGER, "
+                + ShuffleOrderColumns.SEED + " INTEGER, "
+                + ShuffleOrderColumns.FIRST + " INTEGER, "
+                + ShuffleOrderColumns.DATA + " BLOB);");
     }
 
     @Override
     public void onUpgrade(@NonNull final SQLiteDatabase db, final int oldVersion, final int newVersion) {
-        // not necessary yet
-        db.execSQL("DROP TABLE IF EXISTS " + PLAYING_QUEUE_TABLE_NAME);
-        db.execSQL("DROP TABLE IF EXISTS " + ORIGINAL_PLAYING_QUEUE_TABLE_NAME);
+        long[] playingQueue = null;
+        long[] originalPlayingQueue = null;
+        try {
+            if (oldVersion == 4) {
+                // full song rows in insertion order
+                playingQueue = readSnapshot(db, "playing_queue", BaseColumns._ID, "rowid");
+                originalPlayingQueue = readSnapshot(db, "original_playing_queue", BaseColumns._ID, "rowid");
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not migrate the playing queue", e);
+            playingQueue = null;
+            originalPlayingQueue = null;
+        }
+
+        db.execSQL("DROP TABLE IF EXISTS original_playing_queue");
+        dropTables(db);
         onCreate(db);
+
+        if (originalPlayingQueue != null && playingQueue.length == originalPlayingQueue.length) {
+            writeSnapshot(db, originalPlayingQueue);
+            if (!Arrays.equals(playingQueue, originalPlayingQueue) && isPermutation(originalPlayingQueue, 0, playingQueue, 0, playingQueue.length)) {
+                writeShuffleState(db, new ShuffleState(makePermutation(originalPlayingQueue, playingQueue, 0, playingQueue.length)));
+            }
+        }
     }
 
     @Override
     public void onDowngrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
         // If we ever have downgrade, drop the table to be safe
-        db.execSQL("DROP TABLE IF EXISTS " + PLAYING_QUEUE_TABLE_NAME);
-        db.execSQL("DROP TABLE IF EXISTS " + ORIGINAL_PLAYING_QUEUE_TABLE_NAME);
+        dropTables(db);
         onCreate(db);
     }
 
+    private void dropTables(@NonNull final SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + PLAYING_QUEUE_TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + JOURNAL_TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + SHUFFLE_ORDER_TABLE_NAME);
+    }
+
     /**
      * @param context The {@link Context} to use
      * @return A new instance of this class.
@@ -129,73 +163,541 @@ public class MusicPlaybackQueueStore extends SQLiteOpenHelper {
         return sInstance;
     }
 
-    public synchronized void saveQueues(@NonNull final List<Song> playingQueue, @NonNull final List<Song> originalPlayingQueue) {
-        saveQueue(PLAYING_QUEUE_TABLE_NAME, playingQueue);
-        saveQueue(ORIGINAL_PLAYING_QUEUE_TABLE_NAME, originalPlayingQueue);
-    }
-
     /**
-     * Clears the existing database and saves the queue into the db so that when the
-     * app is restarted, the tracks you were listening to is restored
+     * Saves the queue so that when the app is restarted, the tracks you were listening to are restored.
+     * Only the difference to the last saved queue is written.
      *
-     * @param queue the queue to save
+     * @param queue         the songs in their original order
+     * @param shuffleEngine the shuffle as long as the shuffled queue wasn't edited
+     * @param shuffleOrder  for every queue position the position in the original order, only used without a
+     *                      shuffle engine. Both are null if the queue is not shuffled.
      */
-    private synchronized void saveQueue(final String tableName, @NonNull final List<Song> queue) {
+    public synchronized void saveQueue(@NonNull final List<Song> queue, @Nullable final ShuffleEngine shuffleEngine, @Nullable final int[] shuffleOrder) {
+        final long[] previousQueue = getSavedQueue(getReadableDatabase());
+        final ShuffleState previousShuffleState = savedShuffleState;
+        final long[] ids = toIds(queue);
+        final ShuffleState shuffleState;
+        if (shuffleEngine != null && shuffleEngine.getMode() == ShuffleEngine.MODE_SPREAD) {
+            // the spread order depends on the artists and albums, which may have changed by the time it is restored
+            if (previousShuffleState != null && previousShuffleState.order != null && previousShuffleState.matches(shuffleEngine)) {
+                shuffleState = previousShuffleState;
+            } else {
+                shuffleState = new ShuffleState(shuffleEngine.getMode(), shuffleEngine.getSeed(), shuffleEngine.getFirst(), shuffleEngine.toArray());
+            }
+        } else if (shuffleEngine != null) {
+            shuffleState = new ShuffleState(shuffleEngine.getMode(), shuffleEngine.getSeed(), shuffleEngine.getFirst());
+        } else {
+            shuffleState = shuffleOrder != null ? new ShuffleState(shuffleOrder) : null;
+        }
+
         final SQLiteDatabase database = getWritableDatabase();
         database.beginTransaction();
-
+        boolean saved = false;
         try {
-            database.delete(tableName, null, null);
+            saveQueue(database, previousQueue, ids);
+            if (previousShuffleState == null ? shuffleState != null : !previousShuffleState.equals(shuffleState)) {
+                if (shuffleState == null) {
+                    database.delete(SHUFFLE_ORDER_TABLE_NAME, null, null);
+                } else {
+                    writeShuffleState(database, shuffleState);
+                }
+            }
             database.setTransactionSuccessful();
+            saved = true;
         } finally {
             database.endTransaction();
+            if (saved) {
+                savedQueue = ids;
+                savedShuffleState = shuffleState;
+            } else {
+                // the journal counters are off as well, read everything again next time
+                savedQueue = null;
+            }
+        }
+    }
+
+    private void saveQueue(@NonNull final SQLiteDatabase database, @NonNull final long[] saved, @NonNull final long[] ids) {
+        final int minLength = Math.min(saved.length, ids.length);
+        int prefix = 0;
+        while (prefix < minLength && saved[prefix] == ids[prefix]) {
+            prefix++;
+        }
+        if (prefix == saved.length && prefix == ids.length) {
+            return;
         }
+        int suffix = 0;
+        while (suffix < minLength - prefix && saved[saved.length - 1 - suffix] == ids[ids.length - 1 - suffix]) {
+            suffix++;
+        }
+        final int savedEnd = saved.length - suffix;
+        final int end = ids.length - suffix;
+
+        if (prefix == 0 && suffix == 0 && !isPermutation(saved, 0, ids, 0, ids.length)) {
+            // a new queue was opened
+            compact(database, ids);
+            return;
+        }
+
+        if (savedEnd == prefix) {
+            appendJournalEntry(database, OP_INSERT, prefix, end - prefix, toBlob(ids, prefix, end));
+        } else if (end == prefix) {
+            appendJournalEntry(database, OP_REMOVE, prefix, savedEnd - prefix, null);
+        } else if (savedEnd == end && saved[prefix] == ids[end - 1] && rangeEquals(saved, prefix + 1, ids, prefix, end - 1 - prefix)) {
+            appendJournalEntry(database, OP_MOVE, prefix, end - 1, null);
+        } else if (savedEnd == end && saved[end - 1] == ids[prefix] && rangeEquals(saved, prefix, ids, prefix + 1, end - 1 - prefix)) {
+            appendJournalEntry(database, OP_MOVE, end - 1, prefix, null);
+        } else if (savedEnd == end && isPermutation(saved, prefix, ids, prefix, end - prefix)) {
+            appendJournalEntry(database, OP_PERMUTE, prefix, end - prefix, toBlob(makePermutation(saved, ids, prefix, end)));
+        } else {
+            appendJournalEntry(database, OP_REMOVE, prefix, savedEnd - prefix, null);
+            appendJournalEntry(database, OP_INSERT, prefix, end - prefix, toBlob(ids, prefix, end));
+        }
+
+        if (journalEntries > MAX_JOURNAL_ENTRIES || journalPayload > ids.length) {
+            compact(database, ids);
+        }
+    }
+
+    private void appendJournalEntry(@NonNull final SQLiteDatabase database, final int op, final int arg1, final int arg2, @Nullable final byte[] data) {
+        final ContentValues values = new ContentValues(4);
+        values.put(JournalColumns.OP, op);
+        values.put(JournalColumns.ARG1, arg1);
+        values.put(JournalColumns.ARG2, arg2);
+        values.put(JournalColumns.DATA, data);
+        database.insert(JOURNAL_TABLE_NAME, null, values);
+
+        journalEntries++;
+        journalPayload += op == OP_MOVE ? 1 : arg2;
+    }
+
+    /**
+     * Replaces the snapshot of the queue and drops the journal.
+     */
+    private void compact(@NonNull final SQLiteDatabase database, @NonNull final long[] ids) {
+        database.delete(PLAYING_QUEUE_TABLE_NAME, null, null);
+        database.delete(JOURNAL_TABLE_NAME, null, null);
+        writeSnapshot(database, ids);
+
+        journalEntries = 0;
+        journalPayload = 0;
+    }
+
+    private static void writeSnapshot(@NonNull final SQLiteDatabase database, @NonNull final long[] ids) {
+        final SQLiteStatement statement = database.compileStatement("INSERT INTO " + PLAYING_QUEUE_TABLE_NAME
+                + " (" + SnapshotColumns.ORDINAL + ", " + SnapshotColumns.SONG_ID + ") VALUES (?, ?)");
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                statement.bindLong(1, i);
+                statement.bindLong(2, ids[i]);
+                statement.executeInsert();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static void writeShuffleState(@NonNull final SQLiteDatabase database, @NonNull final ShuffleState shuffleState) {
+        final ContentValues values = new ContentValues(5);
+        values.put(ShuffleOrderColumns._ID, 0);
+        if (shuffleState.order != null) {
+            values.put(ShuffleOrderColumns.DATA, toBlob(shuffleState.order));
+        }
+        if (shuffleState.mode != -1) {
+            values.put(ShuffleOrderColumns.MODE, shuffleState.mode);
+            values.put(ShuffleOrderColumns.SEED, shuffleState.seed);
+            values.put(ShuffleOrderColumns.FIRST, shuffleState.first);
+        }
+        database.insertWithOnConflict(SHUFFLE_ORDER_TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * @return the saved songs in their original order, songs that are no longer in the library are dropped.
+     */
+    @NonNull
+    public synchronized List<Song> getSavedQueue() {
+        final long[] ids = getSavedQueue(getReadableDatabase());
+        final List<Song> songs = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return songs;
+        }
+        // all songs are looked up in the library index at once
+        final LibraryIndex index = LibraryIndex.getInstance(context);
+        for (long id : ids) {
+            final Song song = index.getSong(id);
+            if (song != Song.EMPTY_SONG) {
+                songs.add(song);
+            }
+        }
+        return songs;
+    }
+
+    /**
+     * @param queue the songs returned by {@link #getSavedQueue()}
+     * @return the shuffle for the queue, or null if the queue was not shuffled, the shuffled queue was edited or songs
+     * were dropped from it. Use {@link #getSavedShuffleOrder()} then.
+     */
+    @Nullable
+    public synchronized ShuffleEngine getSavedShuffleEngine(@NonNull final List<Song> queue) {
+        final long[] ids = getSavedQueue(getReadableDatabase());
+        final ShuffleState shuffleState = savedShuffleState;
+        if (shuffleState == null || shuffleState.order != null || queue.size() != ids.length) {
+            return null;
+        }
+        return ShuffleEngine.create(shuffleState.mode, queue, shuffleState.first, shuffleState.seed);
+    }
+
+    /**
+     * @return the shuffle order for the songs returned by {@link #getSavedQueue()}, or null if the queue was not
+     * shuffled or {@link #getSavedShuffleEngine(List)} restores the shuffle.
+     */
+    @Nullable
+    public synchronized int[] getSavedShuffleOrder() {
+        final long[] ids = getSavedQueue(getReadableDatabase());
+        final ShuffleState shuffleState = savedShuffleState;
+        if (shuffleState == null) {
+            return null;
+        }
+        final boolean[] missing = findMissingSongs(ids);
+        if (shuffleState.order == null && !contains(missing, true)) {
+            return null;
+        }
+        final int[] shuffleOrder = getCompleteShuffleOrder(ids, shuffleState);
 
-        final int NUM_PROCESS = 20;
+        // skip the songs that were dropped and close the gaps they leave
+        final int[] newPositions = new int[ids.length];
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            newPositions[i] = missing[i] ? -1 : count++;
+        }
+        final int[] result = new int[count];
         int position = 0;
-        while (position < queue.size()) {
-            database.beginTransaction();
+        for (int originalPosition : shuffleOrder) {
+            if (newPositions[originalPosition] != -1) {
+                result[position++] = newPositions[originalPosition];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param position the saved position in the playing order, shuffled if the queue was shuffled
+     * @return the position in the playing order of the songs returned by {@link #getSavedQueue()}. The songs that
+     * were dropped before it shift it down, if the song at it was dropped itself the next remaining song takes its
+     * place, or the last one if there is none after it. -1 if no song remains or the position is out of range.
+     */
+    public synchronized int getSavedPosition(final int position) {
+        final long[] ids = getSavedQueue(getReadableDatabase());
+        if (position < 0 || position >= ids.length) {
+            return -1;
+        }
+        final boolean[] missing = findMissingSongs(ids);
+        if (!contains(missing, true)) {
+            return position;
+        }
+        final int[] shuffleOrder = savedShuffleState == null ? null : getCompleteShuffleOrder(ids, savedShuffleState);
+
+        int remaining = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (!missing[shuffleOrder == null ? i : shuffleOrder[i]]) {
+                if (i >= position) {
+                    return remaining;
+                }
+                remaining++;
+            }
+        }
+        return remaining - 1;
+    }
+
+    /**
+     * @return the shuffle order over the complete saved queue, including the songs that are no longer in the library.
+     */
+    @NonNull
+    private int[] getCompleteShuffleOrder(@NonNull final long[] ids, @NonNull final ShuffleState shuffleState) {
+        if (shuffleState.order != null) {
+            return shuffleState.order;
+        }
+        // replay the shuffle over the complete saved queue, the dropped songs have no artist or album
+        final LibraryIndex index = LibraryIndex.getInstance(context);
+        final List<Song> songs = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            songs.add(index.getSong(id));
+        }
+        return ShuffleEngine.create(shuffleState.mode, songs, shuffleState.first, shuffleState.seed).toArray();
+    }
+
+    private static boolean contains(@NonNull final boolean[] values, final boolean value) {
+        for (boolean v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NonNull
+    private boolean[] findMissingSongs(@NonNull final long[] ids) {
+        final boolean[] missing = new boolean[ids.length];
+        if (ids.length == 0) {
+            return missing;
+        }
+        final LibraryIndex index = LibraryIndex.getInstance(context);
+        for (int i = 0; i < ids.length; i++) {
+            missing[i] = index.getSong(ids[i]) == Song.EMPTY_SONG;
+        }
+        return missing;
+    }
+
+    @NonNull
+    private long[] getSavedQueue(@NonNull final SQLiteDatabase database) {
+        if (savedQueue == null) {
             try {
-                for (int i = position; i < queue.size() && i < position + NUM_PROCESS; i++) {
-                    Song song = queue.get(i);
-                    ContentValues values = new ContentValues(4);
-
-                    values.put(BaseColumns._ID, song.id);
-                    values.put(AudioColumns.TITLE, song.title);
-                    values.put(AudioColumns.TRACK, song.trackNumber);
-                    values.put(AudioColumns.YEAR, song.year);
-                    values.put(AudioColumns.DURATION, song.duration);
-                    values.put(AudioColumns.DATA, song.data);
-                    values.put(AudioColumns.DATE_MODIFIED, song.dateModified);
-                    values.put(AudioColumns.ALBUM_ID, song.albumId);
-                    values.put(AudioColumns.ALBUM, song.albumName);
-                    values.put(AudioColumns.ARTIST_ID, song.artistId);
-                    values.put(AudioColumns.ARTIST, song.artistName);
-
-                    database.insert(tableName, null, values);
+                final long[] snapshot = readSnapshot(database, PLAYING_QUEUE_TABLE_NAME, SnapshotColumns.SONG_ID, SnapshotColumns.ORDINAL);
+                savedQueue = replayJournal(database, snapshot);
+                savedShuffleState = readShuffleState(database, savedQueue.length);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Discarding unreadable playing queue journal", e);
+                savedQueue = new long[0];
+                savedShuffleState = null;
+                final SQLiteDatabase writableDatabase = getWritableDatabase();
+                writableDatabase.delete(PLAYING_QUEUE_TABLE_NAME, null, null);
+                writableDatabase.delete(JOURNAL_TABLE_NAME, null, null);
+                writableDatabase.delete(SHUFFLE_ORDER_TABLE_NAME, null, null);
+            }
+        }
+        return savedQueue;
+    }
+
+    @Nullable
+    private static ShuffleState readShuffleState(@NonNull final SQLiteDatabase database, final int queueLength) {
+        try (Cursor cursor = database.query(SHUFFLE_ORDER_TABLE_NAME,
+                new String[]{ShuffleOrderColumns.MODE, ShuffleOrderColumns.SEED, ShuffleOrderColumns.FIRST, ShuffleOrderColumns.DATA},
+                null, null, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            if (!cursor.isNull(3)) {
+                final int[] shuffleOrder = toPositions(cursor.getBlob(3));
+                if (shuffleOrder.length != queueLength) {
+                    return null;
+                }
+                // a spread shuffle keeps its parameters next to the order
+                return cursor.isNull(0) ? new ShuffleState(shuffleOrder) : new ShuffleState(cursor.getInt(0), cursor.getLong(1), cursor.getInt(2), shuffleOrder);
+            }
+            return new ShuffleState(cursor.getInt(0), cursor.getLong(1), cursor.getInt(2));
+        }
+    }
+
+    @NonNull
+    private static long[] readSnapshot(@NonNull final SQLiteDatabase database, @NonNull final String tableName, @NonNull final String column, @NonNull final String orderBy) {
+        final LongList snapshot = new LongList();
+        try (Cursor cursor = database.query(tableName, new String[]{column}, null, null, null, null, orderBy)) {
+            while (cursor.moveToNext()) {
+                snapshot.add(cursor.getLong(0));
+            }
+        }
+        return snapshot.toArray();
+    }
+
+    @NonNull
+    private long[] replayJournal(@NonNull final SQLiteDatabase database, @NonNull long[] ids) {
+        journalEntries = 0;
+        journalPayload = 0;
+        try (Cursor cursor = database.query(JOURNAL_TABLE_NAME,
+                new String[]{JournalColumns.OP, JournalColumns.ARG1, JournalColumns.ARG2, JournalColumns.DATA},
+                null, null, null, null, JournalColumns._ID)) {
+            while (cursor.moveToNext()) {
+                final int op = cursor.getInt(0);
+                final int arg1 = cursor.getInt(1);
+                final int arg2 = cursor.getInt(2);
+                ids = replay(ids, op, arg1, arg2, cursor.getBlob(3));
+                journalEntries++;
+                journalPayload += op == OP_MOVE ? 1 : arg2;
+            }
+        }
+        return ids;
+    }
+
+    @NonNull
+    private static long[] replay(@NonNull final long[] ids, final int op, final int arg1, final int arg2, @Nullable final byte[] data) {
+        switch (op) {
+            case OP_INSERT: {
+                final long[] inserted = new long[arg2];
+                ByteBuffer.wrap(data).asLongBuffer().get(inserted);
+                final long[] result = new long[ids.length + arg2];
+                System.arraycopy(ids, 0, result, 0, arg1);
+                System.arraycopy(inserted, 0, result, arg1, arg2);
+                System.arraycopy(ids, arg1, result, arg1 + arg2, ids.length - arg1);
+                return result;
+            }
+            case OP_REMOVE: {
+                final long[] result = new long[ids.length - arg2];
+                System.arraycopy(ids, 0, result, 0, arg1);
+                System.arraycopy(ids, arg1 + arg2, result, arg1, ids.length - arg1 - arg2);
+                return result;
+            }
+            case OP_MOVE: {
+                final long moved = ids[arg1];
+                if (arg1 < arg2) {
+                    System.arraycopy(ids, arg1 + 1, ids, arg1, arg2 - arg1);
+                } else {
+                    System.arraycopy(ids, arg2, ids, arg2 + 1, arg1 - arg2);
                 }
-                database.setTransactionSuccessful();
-            } finally {
-                database.endTransaction();
-                position += NUM_PROCESS;
+                ids[arg2] = moved;
+                return ids;
+            }
+            case OP_PERMUTE: {
+                final int[] permutation = toPositions(data);
+                final long[] range = Arrays.copyOfRange(ids, arg1, arg1 + arg2);
+                for (int i = 0; i < arg2; i++) {
+                    ids[arg1 + i] = range[permutation[i]];
+                }
+                return ids;
+            }
+            default:
+                throw new IllegalStateException("Unknown journal operation " + op);
+        }
+    }
+
+    private static boolean rangeEquals(@NonNull final long[] a, final int aStart, @NonNull final long[] b, final int bStart, final int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aStart + i] != b[bStart + i]) {
+                return false;
             }
         }
+        return true;
+    }
+
+    private static boolean isPermutation(@NonNull final long[] a, final int aStart, @NonNull final long[] b, final int bStart, final int length) {
+        if (a.length - aStart < length || b.length - bStart < length) {
+            return false;
+        }
+        final long[] sortedA = Arrays.copyOfRange(a, aStart, aStart + length);
+        final long[] sortedB = Arrays.copyOfRange(b, bStart, bStart + length);
+        Arrays.sort(sortedA);
+        Arrays.sort(sortedB);
+        return Arrays.equals(sortedA, sortedB);
+    }
+
+    /**
+     * @return for every position in [start, end) of the new queue the position relative to start it had in the saved one.
+     */
+    @NonNull
+    private static int[] makePermutation(@NonNull final long[] saved, @NonNull final long[] ids, final int start, final int end) {
+        // the same song can be in the queue several times, chain its positions
+        final LongIntMap firstPositions = new LongIntMap(end - start);
+        final int[] nextPositions = new int[end - start];
+        for (int i = end - start - 1; i >= 0; i--) {
+            final long id = saved[start + i];
+            nextPositions[i] = firstPositions.get(id);
+            firstPositions.put(id, i);
+        }
+        final int[] permutation = new int[end - start];
+        for (int i = 0; i < permutation.length; i++) {
+            final long id = ids[start + i];
+            final int position = firstPositions.get(id);
+            permutation[i] = position;
+            firstPositions.put(id, nextPositions[position]);
+        }
+        return permutation;
+    }
+
+    @NonNull
+    private static long[] toIds(@NonNull final List<Song> queue) {
+        final long[] ids = new long[queue.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = queue.get(i).id;
+        }
+        return ids;
     }
 
     @NonNull
-    public List<Song> getSavedPlayingQueue() {
-        return getQueue(PLAYING_QUEUE_TABLE_NAME);
+    private static byte[] toBlob(@NonNull final long[] ids, final int start, final int end) {
+        final ByteBuffer buffer = ByteBuffer.allocate((end - start) * 8);
+        buffer.asLongBuffer().put(ids, start, end - start);
+        return buffer.array();
     }
 
     @NonNull
-    public List<Song> getSavedOriginalPlayingQueue() {
-        return getQueue(ORIGINAL_PLAYING_QUEUE_TABLE_NAME);
+    private static byte[] toBlob(@NonNull final int[] positions) {
+        final ByteBuffer buffer = ByteBuffer.allocate(positions.length * 4);
+        buffer.asIntBuffer().put(positions);
+        return buffer.array();
     }
 
     @NonNull
-    private List<Song> getQueue(@NonNull final String tableName) {
-        Cursor cursor = getReadableDatabase().query(tableName, null,
-                null, null, null, null, null);
-        return SongLoader.getSongs(cursor);
+    private static int[] toPositions(@NonNull final byte[] blob) {
+        final int[] positions = new int[blob.length / 4];
+        ByteBuffer.wrap(blob).asIntBuffer().get(positions);
+        return positions;
+    }
+
+    public interface SnapshotColumns {
+        String ORDINAL = "ordinal";
+        String SONG_ID = BaseColumns._ID;
+    }
+
+    public interface JournalColumns {
+        String _ID = BaseColumns._ID;
+        String OP = "op";
+        String ARG1 = "arg1";
+        String ARG2 = "arg2";
+        String DATA = "data";
+    }
+
+    public interface ShuffleOrderColumns {
+        String _ID = BaseColumns._ID;
+        String MODE = "mode";
+        String SEED = "seed";
+        String FIRST = "first_position";
+        String DATA = "data";
+    }
+
+    /**
+     * Either the parameters of a {@link ShuffleEngine} or an explicit shuffle order. A spread shuffle has both, it is
+     * restored from its order.
+     */
+    private static final class ShuffleState {
+        final int mode;
+        final long seed;
+        final int first;
+        @Nullable
+        final int[] order;
+
+        ShuffleState(int mode, long seed, int first) {
+            this(mode, seed, first, null);
+        }
+
+        ShuffleState(@NonNull int[] order) {
+            this(-1, 0, -1, order);
+        }
+
+        ShuffleState(int mode, long seed, int first, @Nullable int[] order) {
+            this.mode = mode;
+            this.seed = seed;
+            this.first = first;
+            this.order = order;
+        }
+
+        boolean matches(@NonNull ShuffleEngine shuffleEngine) {
+            return mode == shuffleEngine.getMode() && seed == shuffleEngine.getSeed() && first == shuffleEngine.getFirst()
+                    && order != null && order.length == shuffleEngine.size();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ShuffleState)) return false;
+            final ShuffleState other = (ShuffleState) o;
+            return mode == other.mode && seed == other.seed && first == other.first && Arrays.equals(order, other.order);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mode;
+            result = 31 * result + (int) (seed ^ (seed >>> 32));
+            result = 31 * result + first;
+            result = 31 * result + Arrays.hashCode(order);
+            return result;
+        }
     }
 }
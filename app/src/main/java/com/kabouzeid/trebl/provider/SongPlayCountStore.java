@@ -23,95 +23,130 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import android.view.animation.AccelerateInterpolator;
-import android.view.animation.Interpolator;
 
 /**
- * This database tracks the number of play counts for an individual song.  This is used to drive
+ * This database tracks every play of an individual song.  This is used to drive
  * the top played tracks as well as the playlist images
+ * <p>
+ * Plays are appended to {@link PlayEventColumns#NAME}. For each song a single row in
+ * {@link SongPlayCountColumns#NAME} is kept up to date with every play, its score is stored in a
+ * form that doesn't change over time, so the top tracks are a plain indexed query.
  */
 public class SongPlayCountStore extends SQLiteOpenHelper {
     @Nullable
     private static SongPlayCountStore sInstance = null;
 
     public static final String DATABASE_NAME = "song_play_count.db";
-    private static final int VERSION = 3;
-
-    // interpolator curve applied for measuring the curve
-    @NonNull
-    private static Interpolator sInterpolator = new AccelerateInterpolator(1.5f);
+    private static final int VERSION = 4;
 
     // how many weeks worth of playback to track
     private static final int NUM_WEEKS = 52;
 
-    // how high to multiply the interpolation curve
-    @SuppressWarnings("FieldCanBeLocal")
-    private static int INTERPOLATOR_HEIGHT = 50;
+    // how much a play counts compared to one that happened right now when it is NUM_WEEKS old
+    private static final double WEIGHT_AFTER_NUM_WEEKS = 1d / 3d;
 
-    // how high the base value is. The ratio of the Height to Base is what really matters
-    @SuppressWarnings("FieldCanBeLocal")
-    private static int INTERPOLATOR_BASE = 25;
+    // decay per week, so that weight(age) = e^(-DECAY_PER_WEEK * age)
+    private static final double DECAY_PER_WEEK = -Math.log(WEIGHT_AFTER_NUM_WEEKS) / NUM_WEEKS;
 
-    @SuppressWarnings("FieldCanBeLocal")
-    private static int ONE_WEEK_IN_MS = 1000 * 60 * 60 * 24 * 7;
+    private static final long ONE_WEEK_IN_MS = 1000L * 60 * 60 * 24 * 7;
 
     @NonNull
-    private static String WHERE_ID_EQUALS = SongPlayCountColumns.ID + "=?";
+    private static final String WHERE_ID_EQUALS = SongPlayCountColumns.ID + "=?";
 
-    // number of weeks since epoch time
-    private int mNumberOfWeeksSinceEpoch;
+    @NonNull
+    private static final String WHERE_EVENT_ID_EQUALS = PlayEventColumns.SONG_ID + "=?";
 
-    // used to track if we've walked through the db and updated all the rows
-    private boolean mDatabaseUpdated;
+    // used to track if we've already removed the plays that are too old
+    private boolean mDatabasePruned;
 
     public SongPlayCountStore(final Context context) {
         super(context, DATABASE_NAME, null, VERSION);
-
-        long msSinceEpoch = System.currentTimeMillis();
-        mNumberOfWeeksSinceEpoch = (int) (msSinceEpoch / ONE_WEEK_IN_MS);
-
-        mDatabaseUpdated = false;
+        mDatabasePruned = false;
     }
 
     @Override
     public void onCreate(@NonNull final SQLiteDatabase db) {
-        // create the play count table
-        // WARNING: If you change the order of these columns
-        // please update getColumnIndexForWeek
-        StringBuilder builder = new StringBuilder();
-        builder.append("CREATE TABLE IF NOT EXISTS ");
-        builder.append(SongPlayCountColumns.NAME);
-        builder.append("(");
-        builder.append(SongPlayCountColumns.ID);
-        builder.append(" LONG UNIQUE,");
-
-        for (int i = 0; i < NUM_WEEKS; i++) {
-            builder.append(getColumnNameForWeek(i));
-            builder.append(" INT DEFAULT 0,");
-        }
-
-        builder.append(SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX);
-        builder.append(" INT NOT NULL,");
-
-        builder.append(SongPlayCountColumns.PLAY_COUNT_SCORE);
-        builder.append(" REAL DEFAULT 0);");
-
-        db.execSQL(builder.toString());
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + PlayEventColumns.NAME + " ("
+                + PlayEventColumns.SONG_ID + " LONG NOT NULL,"
+                + PlayEventColumns.TIME_PLAYED + " LONG NOT NULL,"
+                + PlayEventColumns.LISTENED_MS + " LONG NOT NULL DEFAULT 0);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + PlayEventColumns.NAME + "_song_idx ON "
+                + PlayEventColumns.NAME + " (" + PlayEventColumns.SONG_ID + "," + PlayEventColumns.TIME_PLAYED + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + PlayEventColumns.NAME + "_time_idx ON "
+                + PlayEventColumns.NAME + " (" + PlayEventColumns.TIME_PLAYED + ");");
+
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + SongPlayCountColumns.NAME + " ("
+                + SongPlayCountColumns.ID + " LONG PRIMARY KEY,"
+                + SongPlayCountColumns.PLAY_COUNT + " INT NOT NULL,"
+                + SongPlayCountColumns.LISTENED_MS + " LONG NOT NULL,"
+                + SongPlayCountColumns.LAST_PLAYED + " LONG NOT NULL,"
+                + SongPlayCountColumns.PLAY_COUNT_SCORE + " REAL NOT NULL);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + SongPlayCountColumns.NAME + "_score_idx ON "
+                + SongPlayCountColumns.NAME + " (" + SongPlayCountColumns.PLAY_COUNT_SCORE + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + SongPlayCountColumns.NAME + "_last_played_idx ON "
+                + SongPlayCountColumns.NAME + " (" + SongPlayCountColumns.LAST_PLAYED + ");");
     }
 
     @Override
     public void onUpgrade(@NonNull final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        if (oldVersion == 3) {
+            migrateWeeklyPlayCounts(db);
+            return;
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + PlayEventColumns.NAME);
         db.execSQL("DROP TABLE IF EXISTS " + SongPlayCountColumns.NAME);
         onCreate(db);
     }
 
     @Override
     public void onDowngrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
-        // If we ever have downgrade, drop the table to be safe
+        // If we ever have downgrade, drop the tables to be safe
+        db.execSQL("DROP TABLE IF EXISTS " + PlayEventColumns.NAME);
         db.execSQL("DROP TABLE IF EXISTS " + SongPlayCountColumns.NAME);
         onCreate(db);
     }
 
+    /**
+     * Turns the weekly play counts of the version 3 table into play events at the start of the
+     * respective week, so the top tracks survive the upgrade.
+     */
+    private void migrateWeeklyPlayCounts(@NonNull final SQLiteDatabase db) {
+        final String oldTable = SongPlayCountColumns.NAME + "_v3";
+        db.execSQL("ALTER TABLE " + SongPlayCountColumns.NAME + " RENAME TO " + oldTable);
+        onCreate(db);
+
+        final Cursor cursor = db.query(oldTable, null, null, null, null, null, null);
+        if (cursor != null) {
+            try {
+                final int idColumn = cursor.getColumnIndex(SongPlayCountColumns.ID);
+                final int weekIndexColumn = cursor.getColumnIndex("week_index");
+                final ContentValues values = new ContentValues(3);
+                while (cursor.moveToNext()) {
+                    final long songId = cursor.getLong(idColumn);
+                    final long weekIndex = cursor.getLong(weekIndexColumn);
+                    boolean played = false;
+                    for (int week = 0; week < NUM_WEEKS; week++) {
+                        final int weekColumn = cursor.getColumnIndex("week" + week);
+                        final int playCount = weekColumn < 0 ? 0 : cursor.getInt(weekColumn);
+                        for (int i = 0; i < playCount; i++) {
+                            values.put(PlayEventColumns.SONG_ID, songId);
+                            values.put(PlayEventColumns.TIME_PLAYED, (weekIndex - week) * ONE_WEEK_IN_MS);
+                            values.put(PlayEventColumns.LISTENED_MS, 0);
+                            db.insert(PlayEventColumns.NAME, null, values);
+                            played = true;
+                        }
+                    }
+                    if (played) {
+                        updateRollup(db, songId, System.currentTimeMillis());
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + oldTable);
+    }
+
     /**
      * @param context The {@link Context} to use
      * @return A new instance of this class.
@@ -125,147 +160,96 @@ public class SongPlayCountStore extends SQLiteOpenHelper {
     }
 
     /**
-     * Increases the play count of a song by 1
+     * Records a play of a song
      *
-     * @param songId The song id to increase the play count
+     * @param songId     The song id to increase the play count
+     * @param listenedMs How long the song was actually listened to
      */
-    public void bumpPlayCount(final long songId) {
+    public void bumpPlayCount(final long songId, final long listenedMs) {
         if (songId == -1) {
             return;
         }
 
+        final long now = System.currentTimeMillis();
         final SQLiteDatabase database = getWritableDatabase();
-        updateExistingRow(database, songId, true);
+        database.beginTransaction();
+        try {
+            final ContentValues values = new ContentValues(3);
+            values.put(PlayEventColumns.SONG_ID, songId);
+            values.put(PlayEventColumns.TIME_PLAYED, now);
+            values.put(PlayEventColumns.LISTENED_MS, listenedMs);
+            database.insert(PlayEventColumns.NAME, null, values);
+
+            updateRollup(database, songId, now);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
     }
 
     /**
-     * This creates a new entry that indicates a song has been played once as well as its score
+     * Recalculates the rollup row of a song from its plays in the past NUM_WEEKS
      *
-     * @param database a write able database
+     * @param database a writeable database
      * @param songId   the id of the track
+     * @param now      the current time in ms
      */
-    private void createNewPlayedEntry(@NonNull final SQLiteDatabase database, final long songId) {
-        // no row exists, create a new one
-        float newScore = getScoreMultiplierForWeek(0);
-        int newPlayCount = 1;
-
-        final ContentValues values = new ContentValues(3);
-        values.put(SongPlayCountColumns.ID, songId);
-        values.put(SongPlayCountColumns.PLAY_COUNT_SCORE, newScore);
-        values.put(SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX, mNumberOfWeeksSinceEpoch);
-        values.put(getColumnNameForWeek(0), newPlayCount);
-
-        database.insert(SongPlayCountColumns.NAME, null, values);
-    }
-
-    /**
-     * This function will take a song entry and update it to the latest week and increase the count
-     * for the current week by 1 if necessary
-     *
-     * @param database  a writeable database
-     * @param id        the id of the track to bump
-     * @param bumpCount whether to bump the current's week play count by 1 and adjust the score
-     */
-    private void updateExistingRow(@NonNull final SQLiteDatabase database, final long id, boolean bumpCount) {
-        String stringId = String.valueOf(id);
-
-        // begin the transaction
-        database.beginTransaction();
-
-        // get the cursor of this content inside the transaction
-        final Cursor cursor = database.query(SongPlayCountColumns.NAME, null, WHERE_ID_EQUALS,
-                new String[]{stringId}, null, null, null);
-
-        // if we have a result
-        if (cursor != null && cursor.moveToFirst()) {
-            // figure how many weeks since we last updated
-            int lastUpdatedIndex = cursor.getColumnIndex(SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX);
-            int lastUpdatedWeek = cursor.getInt(lastUpdatedIndex);
-            int weekDiff = mNumberOfWeeksSinceEpoch - lastUpdatedWeek;
-
-            // if it's more than the number of weeks we track, delete it and create a new entry
-            if (Math.abs(weekDiff) >= NUM_WEEKS) {
-                // this entry needs to be dropped since it is too outdated
-                deleteEntry(database, stringId);
-                if (bumpCount) {
-                    createNewPlayedEntry(database, id);
-                }
-            } else if (weekDiff != 0) {
-                // else, shift the weeks
-                int[] playCounts = new int[NUM_WEEKS];
-
-                if (weekDiff > 0) {
-                    // time is shifted forwards
-                    for (int i = 0; i < NUM_WEEKS - weekDiff; i++) {
-                        playCounts[i + weekDiff] = cursor.getInt(getColumnIndexForWeek(i));
-                    }
-                } else if (weekDiff < 0) {
-                    // time is shifted backwards (by user) - nor typical behavior but we
-                    // will still handle it
-
-                    // since weekDiff is -ve, NUM_WEEKS + weekDiff is the real # of weeks we have to
-                    // transfer.  Then we transfer the old week i - weekDiff to week i
-                    // for example if the user shifted back 2 weeks, ie -2, then for 0 to
-                    // NUM_WEEKS + (-2) we set the new week i = old week i - (-2) or i+2
-                    for (int i = 0; i < NUM_WEEKS + weekDiff; i++) {
-                        playCounts[i] = cursor.getInt(getColumnIndexForWeek(i - weekDiff));
-                    }
-                }
-
-                // bump the count
-                if (bumpCount) {
-                    playCounts[0]++;
-                }
-
-                float score = calculateScore(playCounts);
-
-                // if the score is non-existant, then delete it
-                if (score < .01f) {
-                    deleteEntry(database, stringId);
-                } else {
-                    // create the content values
-                    ContentValues values = new ContentValues(NUM_WEEKS + 2);
-                    values.put(SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX, mNumberOfWeeksSinceEpoch);
-                    values.put(SongPlayCountColumns.PLAY_COUNT_SCORE, score);
-
-                    for (int i = 0; i < NUM_WEEKS; i++) {
-                        values.put(getColumnNameForWeek(i), playCounts[i]);
-                    }
+    private static void updateRollup(@NonNull final SQLiteDatabase database, final long songId, final long now) {
+        final String[] selectionArgs = new String[]{String.valueOf(songId), String.valueOf(getOldestTimeWeCareAbout(now))};
+        final Cursor cursor = database.query(PlayEventColumns.NAME,
+                new String[]{PlayEventColumns.TIME_PLAYED, PlayEventColumns.LISTENED_MS},
+                WHERE_EVENT_ID_EQUALS + " AND " + PlayEventColumns.TIME_PLAYED + ">=?", selectionArgs,
+                null, null, PlayEventColumns.TIME_PLAYED + " DESC");
+        if (cursor == null) {
+            return;
+        }
 
-                    // update the entry
-                    database.update(SongPlayCountColumns.NAME, values, WHERE_ID_EQUALS,
-                            new String[]{stringId});
+        int playCount = 0;
+        long listenedMs = 0;
+        long lastPlayed = 0;
+        double maxExponent = 0;
+        double sum = 0;
+        try {
+            while (cursor.moveToNext()) {
+                final long timePlayed = cursor.getLong(0);
+                final double exponent = getScoreExponent(timePlayed);
+                if (playCount == 0) {
+                    // the most recent play has the largest exponent
+                    lastPlayed = timePlayed;
+                    maxExponent = exponent;
                 }
-            } else if (bumpCount) {
-                // else no shifting, just update the scores
-                ContentValues values = new ContentValues(2);
-
-                // increase the score by a single score amount
-                int scoreIndex = cursor.getColumnIndex(SongPlayCountColumns.PLAY_COUNT_SCORE);
-                float score = cursor.getFloat(scoreIndex) + getScoreMultiplierForWeek(0);
-                values.put(SongPlayCountColumns.PLAY_COUNT_SCORE, score);
-
-                // increase the play count by 1
-                values.put(getColumnNameForWeek(0), cursor.getInt(getColumnIndexForWeek(0)) + 1);
-
-                // update the entry
-                database.update(SongPlayCountColumns.NAME, values, WHERE_ID_EQUALS,
-                        new String[]{stringId});
+                sum += Math.exp(exponent - maxExponent);
+                listenedMs += cursor.getLong(1);
+                playCount++;
             }
-
+        } finally {
             cursor.close();
-        } else if (bumpCount) {
-            // if we have no existing results, create a new one
-            createNewPlayedEntry(database, id);
         }
 
-        database.setTransactionSuccessful();
-        database.endTransaction();
+        if (playCount == 0) {
+            database.delete(SongPlayCountColumns.NAME, WHERE_ID_EQUALS, new String[]{String.valueOf(songId)});
+            return;
+        }
+
+        final ContentValues values = new ContentValues(5);
+        values.put(SongPlayCountColumns.ID, songId);
+        values.put(SongPlayCountColumns.PLAY_COUNT, playCount);
+        values.put(SongPlayCountColumns.LISTENED_MS, listenedMs);
+        values.put(SongPlayCountColumns.LAST_PLAYED, lastPlayed);
+        values.put(SongPlayCountColumns.PLAY_COUNT_SCORE, maxExponent + Math.log(sum));
+        database.replace(SongPlayCountColumns.NAME, null, values);
     }
 
     public void clear() {
         final SQLiteDatabase database = getWritableDatabase();
-        database.delete(SongPlayCountColumns.NAME, null, null);
+        database.beginTransaction();
+        try {
+            database.delete(PlayEventColumns.NAME, null, null);
+            database.delete(SongPlayCountColumns.NAME, null, null);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
     }
 
     /**
@@ -276,7 +260,7 @@ public class SongPlayCountStore extends SQLiteOpenHelper {
      * @return the top tracks
      */
     public Cursor getTopPlayedResults(int numResults) {
-        updateResults();
+        pruneOldPlays();
 
         final SQLiteDatabase database = getReadableDatabase();
         return database.query(SongPlayCountColumns.NAME, new String[]{SongPlayCountColumns.ID},
@@ -285,112 +269,79 @@ public class SongPlayCountStore extends SQLiteOpenHelper {
     }
 
     /**
-     * This updates all the results for the getTopPlayedResults so that we can get an
-     * accurate list of the top played results
+     * Removes the plays that are older than NUM_WEEKS.  Only the songs which lost a play need
+     * their rollup row to be recalculated
      */
-    private synchronized void updateResults() {
-        if (mDatabaseUpdated) {
+    private synchronized void pruneOldPlays() {
+        if (mDatabasePruned) {
             return;
         }
 
+        final long now = System.currentTimeMillis();
+        final String[] oldestTimeArgs = new String[]{String.valueOf(getOldestTimeWeCareAbout(now))};
         final SQLiteDatabase database = getWritableDatabase();
-
         database.beginTransaction();
-
-        int oldestWeekWeCareAbout = mNumberOfWeeksSinceEpoch - NUM_WEEKS + 1;
-        // delete rows we don't care about anymore
-        database.delete(SongPlayCountColumns.NAME, SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX
-                + " < " + oldestWeekWeCareAbout, null);
-
-        // get the remaining rows
-        Cursor cursor = database.query(SongPlayCountColumns.NAME,
-                new String[]{SongPlayCountColumns.ID},
-                null, null, null, null, null);
-
-        if (cursor != null && cursor.moveToFirst()) {
-            // for each row, update it
-            do {
-                updateExistingRow(database, cursor.getLong(0), false);
-            } while (cursor.moveToNext());
-
-            cursor.close();
+        try {
+            final Cursor cursor = database.query(true, PlayEventColumns.NAME, new String[]{PlayEventColumns.SONG_ID},
+                    PlayEventColumns.TIME_PLAYED + "<?", oldestTimeArgs, null, null, null, null);
+            database.delete(PlayEventColumns.NAME, PlayEventColumns.TIME_PLAYED + "<?", oldestTimeArgs);
+            if (cursor != null) {
+                try {
+                    while (cursor.moveToNext()) {
+                        updateRollup(database, cursor.getLong(0), now);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            mDatabasePruned = true;
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
-
-        mDatabaseUpdated = true;
-        database.setTransactionSuccessful();
-        database.endTransaction();
     }
 
     /**
      * @param songId The song Id to remove.
      */
     public void removeItem(final long songId) {
+        final String[] whereArgs = new String[]{String.valueOf(songId)};
         final SQLiteDatabase database = getWritableDatabase();
-        deleteEntry(database, String.valueOf(songId));
+        database.beginTransaction();
+        try {
+            database.delete(PlayEventColumns.NAME, WHERE_EVENT_ID_EQUALS, whereArgs);
+            database.delete(SongPlayCountColumns.NAME, WHERE_ID_EQUALS, whereArgs);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
     }
 
-    /**
-     * Deletes the entry
-     *
-     * @param database database to use
-     * @param stringId id to delete
-     */
-    private void deleteEntry(@NonNull final SQLiteDatabase database, final String stringId) {
-        database.delete(SongPlayCountColumns.NAME, WHERE_ID_EQUALS, new String[]{stringId});
+    private static long getOldestTimeWeCareAbout(final long now) {
+        return now - NUM_WEEKS * ONE_WEEK_IN_MS;
     }
 
     /**
-     * Calculates the score of the song given the play counts
+     * The score of a song at time t is the sum over its plays of e^(-DECAY_PER_WEEK * (t - timePlayed)).
+     * Since every play decays at the same rate, ordering by the log of the sum of e^(DECAY_PER_WEEK * timePlayed)
+     * gives the same ranking at any time t, so the stored score never has to be rewritten.
      *
-     * @param playCounts an array of the # of times a song has been played for each week
-     *                   where playCounts[N] is the # of times it was played N weeks ago
-     * @return the score
+     * @param timePlayed time of the play in ms
+     * @return the exponent of this play
      */
-    private static float calculateScore(@Nullable final int[] playCounts) {
-        if (playCounts == null) {
-            return 0;
-        }
+    private static double getScoreExponent(final long timePlayed) {
+        return DECAY_PER_WEEK * timePlayed / ONE_WEEK_IN_MS;
+    }
 
-        float score = 0;
-        for (int i = 0; i < Math.min(playCounts.length, NUM_WEEKS); i++) {
-            score += playCounts[i] * getScoreMultiplierForWeek(i);
-        }
+    public interface PlayEventColumns {
 
-        return score;
-    }
+        String NAME = "play_event";
 
-    /**
-     * Gets the column name for each week #
-     *
-     * @param week number
-     * @return the column name
-     */
-    @NonNull
-    private static String getColumnNameForWeek(final int week) {
-        return SongPlayCountColumns.WEEK_PLAY_COUNT + String.valueOf(week);
-    }
+        String SONG_ID = "song_id";
 
-    /**
-     * Gets the score multiplier for each week
-     *
-     * @param week number
-     * @return the multiplier to apply
-     */
-    private static float getScoreMultiplierForWeek(final int week) {
-        return sInterpolator.getInterpolation(1 - (week / (float) NUM_WEEKS)) * INTERPOLATOR_HEIGHT
-                + INTERPOLATOR_BASE;
-    }
+        String TIME_PLAYED = "time_played";
 
-    /**
-     * For some performance gain, return a static value for the column index for a week
-     * WARNING: This function assumes you have selected all columns for it to work
-     *
-     * @param week number
-     * @return column index of that week
-     */
-    private static int getColumnIndexForWeek(final int week) {
-        // ID, followed by the weeks columns
-        return 1 + week;
+        String LISTENED_MS = "listened_ms";
     }
 
     public interface SongPlayCountColumns {
@@ -399,9 +350,11 @@ public class SongPlayCountStore extends SQLiteOpenHelper {
 
         String ID = "song_id";
 
-        String WEEK_PLAY_COUNT = "week";
+        String PLAY_COUNT = "play_count";
+
+        String LISTENED_MS = "listened_ms";
 
-        String LAST_UPDATED_WEEK_INDEX = "week_index";
+        String LAST_PLAYED = "last_played";
 
         String PLAY_COUNT_SCORE = "play_count_score";
     }
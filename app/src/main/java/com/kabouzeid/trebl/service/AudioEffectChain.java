@@ -0,0 +1,312 @@
+package com.kabouzeid.trebl.service;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.audiofx.AudioEffect;
+import android.media.audiofx.BassBoost;
+import android.media.audiofx.Equalizer;
+import android.media.audiofx.Virtualizer;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kabouzeid.trebl.util.PreferenceUtil;
+
+/**
+ * Owns the app's {@link Equalizer}, {@link BassBoost} and {@link Virtualizer}.
+ * <p>
+ * The effects are bound to one audio session id which is shared by every {@link android.media.MediaPlayer} of the
+ * {@link MultiPlayer}, so they are created once and not for every track. The settings of the active profile are kept
+ * in memory, changes from the {@link com.kabouzeid.trebl.ui.activities.EqualizerActivity} are persisted and only the
+ * changed value is applied to the live effects.
+ */
+public final class AudioEffectChain {
+    private static final String TAG = AudioEffectChain.class.getSimpleName();
+
+    private static final int DEFAULT_NUMBER_OF_BANDS = 5;
+
+    // the circular seek bars go from 0 to 100, the effects from 0 to 1000
+    private static final int STRENGTH_FACTOR = 10;
+
+    @Nullable
+    private static AudioEffectChain sInstance;
+
+    @NonNull
+    private final PreferenceUtil preferences;
+    private final int audioSessionId;
+
+    private int attachedSessionId = AudioEffect.ERROR_BAD_VALUE;
+    @Nullable
+    private Equalizer equalizer;
+    @Nullable
+    private BassBoost bassBoost;
+    @Nullable
+    private Virtualizer virtualizer;
+
+    private boolean enabled;
+    private int profile;
+    @NonNull
+    private int[] bandLevels = new int[0];
+    private int bassLevel;
+    private int virtualizerLevel;
+
+    private AudioEffectChain(@NonNull final Context context) {
+        preferences = PreferenceUtil.getInstance(context);
+        final AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        final int generatedId = audioManager == null ? AudioManager.ERROR : audioManager.generateAudioSessionId();
+        // 0 lets the first player pick its own session id, see MultiPlayer
+        audioSessionId = generatedId == AudioManager.ERROR ? 0 : generatedId;
+
+        enabled = preferences.readSharedPrefsBoolean("turnEqualizer", false);
+        profile = preferences.readSharedPrefsInt("currentEqProfile", 0);
+        loadProfile(DEFAULT_NUMBER_OF_BANDS);
+    }
+
+    @NonNull
+    public static synchronized AudioEffectChain getInstance(@NonNull final Context context) {
+        if (sInstance == null) {
+            sInstance = new AudioEffectChain(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the audio session id every player has to use, or 0 if none could be generated
+     */
+    public int getAudioSessionId() {
+        return audioSessionId;
+    }
+
+    /**
+     * Creates the effects on the given session if they don't exist yet and applies the active profile to them.
+     */
+    public synchronized void attach(final int sessionId) {
+        if (sessionId == attachedSessionId) {
+            return;
+        }
+        release();
+        attachedSessionId = sessionId;
+        try {
+            equalizer = new Equalizer(0, sessionId);
+            if (equalizer.getNumberOfBands() != bandLevels.length) {
+                loadProfile(equalizer.getNumberOfBands());
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not create equalizer", e);
+            equalizer = null;
+        }
+        try {
+            bassBoost = new BassBoost(0, sessionId);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not create bass boost", e);
+            bassBoost = null;
+        }
+        try {
+            virtualizer = new Virtualizer(0, sessionId);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not create virtualizer", e);
+            virtualizer = null;
+        }
+        applyAll();
+    }
+
+    /**
+     * Releases the native effects. The settings stay cached, the next {@link #attach(int)} applies them again.
+     */
+    public synchronized void release() {
+        attachedSessionId = AudioEffect.ERROR_BAD_VALUE;
+        if (equalizer != null) {
+            equalizer.release();
+            equalizer = null;
+        }
+        if (bassBoost != null) {
+            bassBoost.release();
+            bassBoost = null;
+        }
+        if (virtualizer != null) {
+            virtualizer.release();
+            virtualizer = null;
+        }
+    }
+
+    public synchronized int getNumberOfBands() {
+        if (equalizer != null) {
+            return equalizer.getNumberOfBands();
+        }
+        final Equalizer temporary = createTemporaryEqualizer();
+        if (temporary == null) {
+            return 0;
+        }
+        try {
+            return temporary.getNumberOfBands();
+        } finally {
+            temporary.release();
+        }
+    }
+
+    /**
+     * @return the minimum and maximum band level in millibel, or null if no equalizer is available
+     */
+    @Nullable
+    public synchronized short[] getBandLevelRange() {
+        if (equalizer != null) {
+            return equalizer.getBandLevelRange();
+        }
+        final Equalizer temporary = createTemporaryEqualizer();
+        if (temporary == null) {
+            return null;
+        }
+        try {
+            return temporary.getBandLevelRange();
+        } finally {
+            temporary.release();
+        }
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+        preferences.writeSharedPrefs("turnEqualizer", enabled);
+        applyAll();
+    }
+
+    public synchronized int getProfile() {
+        return profile;
+    }
+
+    public synchronized void setProfile(final int profile) {
+        if (this.profile == profile) {
+            return;
+        }
+        this.profile = profile;
+        preferences.writeSharedPrefs("currentEqProfile", profile);
+        loadProfile(bandLevels.length);
+        applyAll();
+    }
+
+    public synchronized int getBandLevel(final int band) {
+        return band < bandLevels.length ? bandLevels[band] : 0;
+    }
+
+    public synchronized void setBandLevel(final int band, final int level) {
+        if (band >= bandLevels.length) {
+            return;
+        }
+        preferences.writeSharedPrefs("profile" + profile + "Band" + band, level);
+        if (bandLevels[band] == level) {
+            return;
+        }
+        bandLevels[band] = level;
+        if (equalizer != null && enabled) {
+            try {
+                equalizer.setBandLevel((short) band, (short) level);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Could not set band level", e);
+            }
+        }
+    }
+
+    public synchronized int getBassLevel() {
+        return bassLevel;
+    }
+
+    public synchronized void setBassLevel(final int level) {
+        preferences.writeSharedPrefs("bassLevel" + profile, level);
+        if (bassLevel == level) {
+            return;
+        }
+        bassLevel = level;
+        applyBassBoost();
+    }
+
+    public synchronized int getVirtualizerLevel() {
+        return virtualizerLevel;
+    }
+
+    public synchronized void setVirtualizerLevel(final int level) {
+        preferences.writeSharedPrefs("vzLevel" + profile, level);
+        if (virtualizerLevel == level) {
+            return;
+        }
+        virtualizerLevel = level;
+        applyVirtualizer();
+    }
+
+    /**
+     * Resets all bands, the bass boost and the virtualizer of the active profile.
+     */
+    public synchronized void resetProfile() {
+        for (int i = 0; i < bandLevels.length; i++) {
+            bandLevels[i] = 0;
+            preferences.writeSharedPrefs("profile" + profile + "Band" + i, 0);
+        }
+        bassLevel = 0;
+        preferences.writeSharedPrefs("bassLevel" + profile, 0);
+        virtualizerLevel = 0;
+        preferences.writeSharedPrefs("vzLevel" + profile, 0);
+        applyAll();
+    }
+
+    private void loadProfile(final int numberOfBands) {
+        bandLevels = new int[numberOfBands];
+        for (int i = 0; i < numberOfBands; i++) {
+            bandLevels[i] = preferences.readSharedPrefsInt("profile" + profile + "Band" + i, 0);
+        }
+        bassLevel = preferences.readSharedPrefsInt("bassLevel" + profile, 0);
+        virtualizerLevel = preferences.readSharedPrefsInt("vzLevel" + profile, 0);
+    }
+
+    private void applyAll() {
+        if (equalizer != null) {
+            try {
+                equalizer.setEnabled(enabled);
+                if (enabled) {
+                    for (int i = 0; i < bandLevels.length; i++) {
+                        equalizer.setBandLevel((short) i, (short) bandLevels[i]);
+                    }
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Could not apply equalizer profile", e);
+            }
+        }
+        applyBassBoost();
+        applyVirtualizer();
+    }
+
+    private void applyBassBoost() {
+        if (bassBoost == null) {
+            return;
+        }
+        try {
+            bassBoost.setEnabled(enabled && bassLevel > 0);
+            bassBoost.setStrength((short) (bassLevel * STRENGTH_FACTOR));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not apply bass boost", e);
+        }
+    }
+
+    private void applyVirtualizer() {
+        if (virtualizer == null) {
+            return;
+        }
+        try {
+            virtualizer.setEnabled(enabled && virtualizerLevel > 0);
+            virtualizer.setStrength((short) (virtualizerLevel * STRENGTH_FACTOR));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not apply virtualizer", e);
+        }
+    }
+
+    @Nullable
+    private Equalizer createTemporaryEqualizer() {
+        try {
+            return new Equalizer(0, attachedSessionId == AudioEffect.ERROR_BAD_VALUE ? audioSessionId : attachedSessionId);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not create equalizer", e);
+            return null;
+        }
+    }
+}
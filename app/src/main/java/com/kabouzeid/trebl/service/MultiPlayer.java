@@ -5,25 +5,33 @@ import android.content.Intent;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.media.audiofx.AudioEffect;
-import android.media.audiofx.BassBoost;
-import android.media.audiofx.Equalizer;
-import android.media.audiofx.Virtualizer;
 import android.net.Uri;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Log;
 import android.widget.Toast;
 
+import com.kabouzeid.trebl.BuildConfig;
 import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.service.playback.Playback;
 import com.kabouzeid.trebl.util.PreferenceUtil;
 
 /**
+ * In the asynchronous preparation mode tracks are prepared with {@link MediaPlayer#prepareAsync()}, so a slow
+ * storage doesn't block the calling thread. Start, pause, seek and volume commands that arrive while the current
+ * track is preparing are remembered, only the last one of each kind is applied once it is prepared.
+ *
  * @author Andrew Neal, Karim Abou Zeid (kabouzeid)
  */
-public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, MediaPlayer.OnCompletionListener {
+public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, MediaPlayer.OnCompletionListener, MediaPlayer.OnPreparedListener {
     public static final String TAG = MultiPlayer.class.getSimpleName();
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_PREPARING = 1;
+    private static final int STATE_PREPARED = 2;
 
     private MediaPlayer mCurrentMediaPlayer = new MediaPlayer();
     private MediaPlayer mNextMediaPlayer;
@@ -32,14 +40,38 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
     @Nullable
     private Playback.PlaybackCallbacks callbacks;
 
+    private final boolean mAsyncPrepare;
+
     private boolean mIsInitialized = false;
 
+    private int mCurrentState = STATE_IDLE;
+    private int mNextState = STATE_IDLE;
+
+    private long mCurrentPrepareStartTime;
+    private long mNextPrepareStartTime;
+    private long mCurrentPrepareLatency = -1;
+    private long mNextPrepareLatency = -1;
+
+    // commands which arrived while the current track was preparing
+    private boolean mPlayWhenPrepared;
+    private int mPendingSeek = -1;
+    private float mVolume = 1f;
+
     /**
      * Constructor of <code>MultiPlayer</code>
      */
     public MultiPlayer(final Context context) {
+        this(context, false);
+    }
+
+    /**
+     * @param asyncPrepare Whether tracks should be prepared without blocking the calling thread
+     */
+    public MultiPlayer(final Context context, final boolean asyncPrepare) {
         this.context = context;
+        mAsyncPrepare = asyncPrepare;
         mCurrentMediaPlayer.setWakeMode(context, PowerManager.PARTIAL_WAKE_LOCK);
+        useSharedAudioSession(mCurrentMediaPlayer);
         PreferenceUtil.getInstance(context).writeSharedPrefs("audio_session_id", getAudioSessionId());
 
     }
@@ -48,11 +80,15 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * @param path The path of the file, or the http/rtsp URL of the stream
      *             you want to play
      * @return True if the <code>player</code> has been prepared and is
-     * ready to play, false otherwise
+     * ready to play, or is being prepared in the asynchronous mode, false otherwise
      */
     @Override
-    public boolean setDataSource(@NonNull final String path) {
+    public synchronized boolean setDataSource(@NonNull final String path) {
         mIsInitialized = false;
+        mPlayWhenPrepared = false;
+        mPendingSeek = -1;
+        // the previous next player must not be linked to the new track once it is prepared
+        releaseNextMediaPlayer();
         mIsInitialized = setDataSourceImpl(mCurrentMediaPlayer, path);
         if (mIsInitialized) {
             setNextDataSource(null);
@@ -65,12 +101,13 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * @param path   The path of the file, or the http/rtsp URL of the stream
      *               you want to play
      * @return True if the <code>player</code> has been prepared and is
-     * ready to play, false otherwise
+     * ready to play, or is being prepared in the asynchronous mode, false otherwise
      */
     private boolean setDataSourceImpl(@NonNull final MediaPlayer player, @NonNull final String path) {
         if (context == null) {
             return false;
         }
+        setState(player, STATE_IDLE);
         try {
             player.reset();
             player.setOnPreparedListener(null);
@@ -80,12 +117,20 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
                 player.setDataSource(path);
             }
             player.setAudioStreamType(AudioManager.STREAM_MUSIC);
-            player.prepare();
+            player.setOnCompletionListener(this);
+            player.setOnErrorListener(this);
+            setState(player, STATE_PREPARING);
+            if (mAsyncPrepare) {
+                player.setOnPreparedListener(this);
+                player.prepareAsync();
+            } else {
+                player.prepare();
+                onPrepared(player);
+            }
         } catch (Exception e) {
+            setState(player, STATE_IDLE);
             return false;
         }
-        player.setOnCompletionListener(this);
-        player.setOnErrorListener(this);
 
 
         if(PreferenceUtil.getInstance(context).readSharedPrefsString("select_equalizer", "appeq").equals("systemeq")){
@@ -98,8 +143,7 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
 
         PreferenceUtil.getInstance(context).writeSharedPrefs("audio_session_id", getAudioSessionId());
         if (PreferenceUtil.getInstance(context).readSharedPrefsString("select_equalizer", "appeq").equals("appeq")) {
-            //closeAudioEffectSession();
-            setEqualizer();
+            AudioEffectChain.getInstance(context).attach(getAudioSessionId());
         }
 
 
@@ -113,22 +157,15 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      *             you want to play
      */
     @Override
-    public void setNextDataSource(@Nullable final String path) {
+    public synchronized void setNextDataSource(@Nullable final String path) {
         if (context == null) {
             return;
         }
-        try {
-            mCurrentMediaPlayer.setNextMediaPlayer(null);
-        } catch (IllegalArgumentException e) {
-            Log.i(TAG, "Next media player is current one, continuing");
-        } catch (IllegalStateException e) {
+        if (mCurrentState == STATE_IDLE) {
             Log.e(TAG, "Media player not initialized!");
             return;
         }
-        if (mNextMediaPlayer != null) {
-            mNextMediaPlayer.release();
-            mNextMediaPlayer = null;
-        }
+        releaseNextMediaPlayer();
         if (path == null) {
             return;
         }
@@ -136,22 +173,92 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
             mNextMediaPlayer = new MediaPlayer();
             mNextMediaPlayer.setWakeMode(context, PowerManager.PARTIAL_WAKE_LOCK);
             mNextMediaPlayer.setAudioSessionId(getAudioSessionId());
-            if (setDataSourceImpl(mNextMediaPlayer, path)) {
-                try {
-                    mCurrentMediaPlayer.setNextMediaPlayer(mNextMediaPlayer);
-                } catch (@NonNull IllegalArgumentException | IllegalStateException e) {
-                    Log.e(TAG, "setNextDataSource: setNextMediaPlayer()", e);
-                    if (mNextMediaPlayer != null) {
-                        mNextMediaPlayer.release();
-                        mNextMediaPlayer = null;
-                    }
+            // the players are linked as soon as both of them are prepared, see onPrepared()
+            if (!setDataSourceImpl(mNextMediaPlayer, path)) {
+                releaseNextMediaPlayer();
+            }
+        }
+    }
+
+    private void releaseNextMediaPlayer() {
+        if (mCurrentState == STATE_PREPARED) {
+            try {
+                mCurrentMediaPlayer.setNextMediaPlayer(null);
+            } catch (IllegalArgumentException e) {
+                Log.i(TAG, "Next media player is current one, continuing");
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Media player not initialized!");
+            }
+        }
+        if (mNextMediaPlayer != null) {
+            mNextMediaPlayer.release();
+            mNextMediaPlayer = null;
+        }
+        mNextState = STATE_IDLE;
+        mNextPrepareLatency = -1;
+    }
+
+    private void linkNextMediaPlayerIfPrepared() {
+        if (mCurrentState != STATE_PREPARED || mNextMediaPlayer == null || mNextState != STATE_PREPARED) {
+            return;
+        }
+        try {
+            mCurrentMediaPlayer.setNextMediaPlayer(mNextMediaPlayer);
+        } catch (@NonNull IllegalArgumentException | IllegalStateException e) {
+            Log.e(TAG, "setNextDataSource: setNextMediaPlayer()", e);
+            mNextMediaPlayer.release();
+            mNextMediaPlayer = null;
+            mNextState = STATE_IDLE;
+        }
+    }
+
+    private void setState(@NonNull final MediaPlayer player, final int state) {
+        final long now = SystemClock.elapsedRealtime();
+        if (player == mCurrentMediaPlayer) {
+            mCurrentState = state;
+            if (state == STATE_PREPARING) {
+                mCurrentPrepareStartTime = now;
+                mCurrentPrepareLatency = -1;
+            } else if (state == STATE_PREPARED) {
+                mCurrentPrepareLatency = now - mCurrentPrepareStartTime;
+            }
+        } else if (player == mNextMediaPlayer) {
+            mNextState = state;
+            if (state == STATE_PREPARING) {
+                mNextPrepareStartTime = now;
+                mNextPrepareLatency = -1;
+            } else if (state == STATE_PREPARED) {
+                mNextPrepareLatency = now - mNextPrepareStartTime;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void onPrepared(final MediaPlayer mp) {
+        if (mp == mCurrentMediaPlayer && mCurrentState == STATE_PREPARING) {
+            setState(mp, STATE_PREPARED);
+            if (DEBUG) Log.d(TAG, "Prepared current track in " + mCurrentPrepareLatency + "ms");
+            try {
+                mp.setVolume(mVolume, mVolume);
+                if (mPendingSeek >= 0) {
+                    mp.seekTo(mPendingSeek);
                 }
-            } else {
-                if (mNextMediaPlayer != null) {
-                    mNextMediaPlayer.release();
-                    mNextMediaPlayer = null;
+                if (mPlayWhenPrepared) {
+                    mp.start();
                 }
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "onPrepared: applying pending commands failed", e);
             }
+            mPendingSeek = -1;
+            mPlayWhenPrepared = false;
+            linkNextMediaPlayerIfPrepared();
+        } else if (mp == mNextMediaPlayer && mNextState == STATE_PREPARING) {
+            setState(mp, STATE_PREPARED);
+            if (DEBUG) Log.d(TAG, "Prepared next track in " + mNextPrepareLatency + "ms");
+            linkNextMediaPlayerIfPrepared();
         }
     }
 
@@ -173,11 +280,31 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
         return mIsInitialized;
     }
 
+    /**
+     * @return True if the current track is still being prepared
+     */
+    @Override
+    public synchronized boolean isPreparing() {
+        return mIsInitialized && mCurrentState == STATE_PREPARING;
+    }
+
+    /**
+     * @return How long preparing the current track took in milliseconds, or -1 if it isn't prepared yet
+     */
+    @Override
+    public synchronized long getPrepareLatency() {
+        return mCurrentState == STATE_PREPARED ? mCurrentPrepareLatency : -1;
+    }
+
     /**
      * Starts or resumes playback.
      */
     @Override
-    public boolean start() {
+    public synchronized boolean start() {
+        if (isPreparing()) {
+            mPlayWhenPrepared = true;
+            return true;
+        }
         try {
             mCurrentMediaPlayer.start();
             return true;
@@ -190,28 +317,39 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * Resets the MediaPlayer to its uninitialized state.
      */
     @Override
-    public void stop() {
+    public synchronized void stop() {
         mCurrentMediaPlayer.reset();
         mIsInitialized = false;
+        mCurrentState = STATE_IDLE;
+        mPlayWhenPrepared = false;
+        mPendingSeek = -1;
     }
 
     /**
      * Releases resources associated with this MediaPlayer object.
      */
     @Override
-    public void release() {
+    public synchronized void release() {
         stop();
         mCurrentMediaPlayer.release();
         if (mNextMediaPlayer != null) {
             mNextMediaPlayer.release();
         }
+        mNextState = STATE_IDLE;
+        if (context != null) {
+            AudioEffectChain.getInstance(context).release();
+        }
     }
 
     /**
      * Pauses playback. Call start() to resume.
      */
     @Override
-    public boolean pause() {
+    public synchronized boolean pause() {
+        if (isPreparing()) {
+            mPlayWhenPrepared = false;
+            return true;
+        }
         try {
             mCurrentMediaPlayer.pause();
             return true;
@@ -224,7 +362,10 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * Checks whether the MultiPlayer is playing.
      */
     @Override
-    public boolean isPlaying() {
+    public synchronized boolean isPlaying() {
+        if (isPreparing()) {
+            return mPlayWhenPrepared;
+        }
         return mIsInitialized && mCurrentMediaPlayer.isPlaying();
     }
 
@@ -234,8 +375,8 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * @return The duration in milliseconds
      */
     @Override
-    public int duration() {
-        if (!mIsInitialized) {
+    public synchronized int duration() {
+        if (!mIsInitialized || mCurrentState != STATE_PREPARED) {
             return -1;
         }
         try {
@@ -251,10 +392,13 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * @return The current position in milliseconds
      */
     @Override
-    public int position() {
+    public synchronized int position() {
         if (!mIsInitialized) {
             return -1;
         }
+        if (mCurrentState == STATE_PREPARING) {
+            return Math.max(mPendingSeek, 0);
+        }
         try {
             return mCurrentMediaPlayer.getCurrentPosition();
         } catch (IllegalStateException e) {
@@ -269,7 +413,11 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * @return The offset in milliseconds from the start to seek to
      */
     @Override
-    public int seek(final int whereto) {
+    public synchronized int seek(final int whereto) {
+        if (isPreparing()) {
+            mPendingSeek = whereto;
+            return whereto;
+        }
         try {
             mCurrentMediaPlayer.seekTo(whereto);
             return whereto;
@@ -279,7 +427,11 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
     }
 
     @Override
-    public boolean setVolume(final float vol) {
+    public synchronized boolean setVolume(final float vol) {
+        mVolume = vol;
+        if (isPreparing()) {
+            return true;
+        }
         try {
             mCurrentMediaPlayer.setVolume(vol, vol);
             return true;
@@ -317,11 +469,20 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * {@inheritDoc}
      */
     @Override
-    public boolean onError(final MediaPlayer mp, final int what, final int extra) {
+    public synchronized boolean onError(final MediaPlayer mp, final int what, final int extra) {
+        if (mp == mNextMediaPlayer) {
+            // keep the current track playing, just without a gapless transition
+            releaseNextMediaPlayer();
+            return true;
+        }
         mIsInitialized = false;
+        mCurrentState = STATE_IDLE;
+        mPlayWhenPrepared = false;
+        mPendingSeek = -1;
         mCurrentMediaPlayer.release();
         mCurrentMediaPlayer = new MediaPlayer();
         mCurrentMediaPlayer.setWakeMode(context, PowerManager.PARTIAL_WAKE_LOCK);
+        useSharedAudioSession(mCurrentMediaPlayer);
         if (context != null) {
             Toast.makeText(context, context.getResources().getString(R.string.unplayable_file), Toast.LENGTH_SHORT).show();
         }
@@ -333,12 +494,22 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      */
     @Override
     public void onCompletion(final MediaPlayer mp) {
-        if (mp == mCurrentMediaPlayer && mNextMediaPlayer != null) {
-            mIsInitialized = false;
-            mCurrentMediaPlayer.release();
-            mCurrentMediaPlayer = mNextMediaPlayer;
-            mIsInitialized = true;
-            mNextMediaPlayer = null;
+        boolean wentToNext = false;
+        synchronized (this) {
+            if (mp == mCurrentMediaPlayer && mNextMediaPlayer != null && mNextState == STATE_PREPARED) {
+                mIsInitialized = false;
+                mCurrentMediaPlayer.release();
+                mCurrentMediaPlayer = mNextMediaPlayer;
+                mCurrentState = STATE_PREPARED;
+                mCurrentPrepareLatency = mNextPrepareLatency;
+                mIsInitialized = true;
+                mNextMediaPlayer = null;
+                mNextState = STATE_IDLE;
+                mNextPrepareLatency = -1;
+                wentToNext = true;
+            }
+        }
+        if (wentToNext) {
             if (callbacks != null)
                 callbacks.onTrackWentToNext();
         } else {
@@ -347,46 +518,28 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
         }
     }
 
+    /**
+     * Moves a new player to the session of the {@link AudioEffectChain}, so the effects survive replacing the player.
+     */
+    private void useSharedAudioSession(@NonNull final MediaPlayer player) {
+        if (context == null) {
+            return;
+        }
+        final int sessionId = AudioEffectChain.getInstance(context).getAudioSessionId();
+        if (sessionId == 0) {
+            return;
+        }
+        try {
+            player.setAudioSessionId(sessionId);
+        } catch (@NonNull IllegalArgumentException | IllegalStateException e) {
+            Log.e(TAG, "Could not use the shared audio session", e);
+        }
+    }
+
     private void closeAudioEffectSession() {
         final Intent audioEffectsIntent = new Intent(AudioEffect.ACTION_CLOSE_AUDIO_EFFECT_CONTROL_SESSION);
         audioEffectsIntent.putExtra(AudioEffect.EXTRA_AUDIO_SESSION, getAudioSessionId());
         audioEffectsIntent.putExtra(AudioEffect.EXTRA_PACKAGE_NAME, context.getPackageName());
         context.sendBroadcast(audioEffectsIntent);
     }
-
-    Equalizer eq;
-    BassBoost bassBoost;
-    Virtualizer virtualizer;
-    private void setEqualizer() {
-            boolean isEqInSettings = PreferenceUtil.getInstance(context).readSharedPrefsBoolean("turnEqualizer", false);
-            int currentEqProfile = PreferenceUtil.getInstance(context).readSharedPrefsInt("currentEqProfile", 0);
-            try {
-                eq = new Equalizer(0, getAudioSessionId());
-                eq.setEnabled(isEqInSettings);
-                for (int i = 0; i < eq.getNumberOfBands(); i++) {
-                    eq.setBandLevel((short) i, (short) PreferenceUtil.getInstance(context).readSharedPrefsInt(
-                            "profile" + currentEqProfile + "Band" + i, 0));
-                }
-                Log.d(TAG, "Equalizer successfully initiated with profile " + currentEqProfile);
-            } catch (Exception e) {
-
-            }
-            try {
-                bassBoost = new BassBoost(0, getAudioSessionId());
-                bassBoost.setEnabled(isEqInSettings);
-                short basslev = (short)PreferenceUtil.getInstance(context).
-                        readSharedPrefsInt("bassLevel" + currentEqProfile, 0);
-                bassBoost.setStrength((short) (basslev*10)); //circular seekbar isnt in correct range (1-1000) it is in 1-100
-            } catch (Exception ignored) {
-            }
-            try {
-                virtualizer = new Virtualizer(0, getAudioSessionId());
-                virtualizer.setEnabled(isEqInSettings);
-                short surroundlev = (short) PreferenceUtil.getInstance(context).
-                        readSharedPrefsInt("vzLevel" + currentEqProfile, 0);
-                virtualizer.setStrength((short) (surroundlev*10));
-            } catch (Exception ignored) {
-            }
-
-    }
 }
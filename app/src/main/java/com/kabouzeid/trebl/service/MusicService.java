@@ -46,8 +46,9 @@ import com.kabouzeid.trebl.appwidgets.AppWidgetClassic;
 import com.kabouzeid.trebl.appwidgets.AppWidgetSmall;
 import com.kabouzeid.trebl.glide.BlurTransformation;
 import com.kabouzeid.trebl.glide.SongGlideRequest;
-import com.kabouzeid.trebl.helper.ShuffleHelper;
+import com.kabouzeid.trebl.helper.ShuffleEngine;
 import com.kabouzeid.trebl.helper.StopWatch;
+import com.kabouzeid.trebl.loader.LibraryIndex;
 import com.kabouzeid.trebl.loader.PlaylistSongLoader;
 import com.kabouzeid.trebl.model.AbsCustomPlaylist;
 import com.kabouzeid.trebl.model.Playlist;
@@ -64,7 +65,7 @@ import com.kabouzeid.trebl.util.PreferenceUtil;
 import com.kabouzeid.trebl.util.Util;
 
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
@@ -135,8 +136,7 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     private AppWidgetCard appWidgetCard = AppWidgetCard.getInstance();
 
     private Playback playback;
-    private List<Song> playingQueue = new ArrayList<>();
-    private List<Song> originalPlayingQueue = new ArrayList<>();
+    private final PlayingQueue playingQueue = new PlayingQueue();
     private int position = -1;
     private int nextPosition = -1;
     private int shuffleMode;
@@ -191,7 +191,7 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
         musicPlayerHandlerThread.start();
         playerHandler = new PlaybackHandler(this, musicPlayerHandlerThread.getLooper());
 
-        playback = new MultiPlayer(this);
+        playback = new MultiPlayer(this, true);
         playback.setCallbacks(this);
 
         setupMediaSession();
@@ -415,7 +415,7 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     }
 
     private void saveQueuesImpl() {
-        MusicPlaybackQueueStore.getInstance(this).saveQueues(playingQueue, originalPlayingQueue);
+        MusicPlaybackQueueStore.getInstance(this).saveQueue(playingQueue.getOriginalSongs(), playingQueue.getShuffleEngine(), playingQueue.getShuffleOrder());
     }
 
     private void savePosition() {
@@ -449,14 +449,15 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
 
     private synchronized void restoreQueuesAndPositionIfNecessary() {
         if (!queuesRestored && playingQueue.isEmpty()) {
-            List<Song> restoredQueue = MusicPlaybackQueueStore.getInstance(this).getSavedPlayingQueue();
-            List<Song> restoredOriginalQueue = MusicPlaybackQueueStore.getInstance(this).getSavedOriginalPlayingQueue();
-            int restoredPosition = PreferenceManager.getDefaultSharedPreferences(this).getInt(SAVED_POSITION, -1);
+            List<Song> restoredQueue = MusicPlaybackQueueStore.getInstance(this).getSavedQueue();
+            ShuffleEngine restoredShuffleEngine = MusicPlaybackQueueStore.getInstance(this).getSavedShuffleEngine(restoredQueue);
+            int[] restoredShuffleOrder = MusicPlaybackQueueStore.getInstance(this).getSavedShuffleOrder();
+            // songs that are no longer in the library were dropped from the queue, the position follows them
+            int restoredPosition = MusicPlaybackQueueStore.getInstance(this).getSavedPosition(PreferenceManager.getDefaultSharedPreferences(this).getInt(SAVED_POSITION, -1));
             int restoredPositionInTrack = PreferenceManager.getDefaultSharedPreferences(this).getInt(SAVED_POSITION_IN_TRACK, -1);
 
-            if (restoredQueue.size() > 0 && restoredQueue.size() == restoredOriginalQueue.size() && restoredPosition != -1) {
-                this.originalPlayingQueue = restoredOriginalQueue;
-                this.playingQueue = restoredQueue;
+            if (restoredQueue.size() > 0 && restoredPosition != -1 && restoredPosition < restoredQueue.size()) {
+                playingQueue.restore(restoredQueue, restoredShuffleEngine, restoredShuffleOrder);
 
                 position = restoredPosition;
                 openCurrent();
@@ -611,6 +612,7 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
             final Point screenSize = Util.getScreenSize(MusicService.this);
             final BitmapRequestBuilder<?, Bitmap> request = SongGlideRequest.Builder.from(Glide.with(MusicService.this), song)
                     .checkIgnoreMediaStore(MusicService.this)
+                    .size(SongGlideRequest.CoverSize.PLAYER)
                     .asBitmap().build();
             if (PreferenceUtil.getInstance(this).blurredAlbumArt()) {
                 request.transform(new BlurTransformation.Builder(MusicService.this).build());
@@ -723,13 +725,12 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
 
     public void openQueue(@Nullable final List<Song> playingQueue, final int startPosition, final boolean startPlaying) {
         if (playingQueue != null && !playingQueue.isEmpty() && startPosition >= 0 && startPosition < playingQueue.size()) {
-            // it is important to copy the playing queue here first as we might add/remove songs later
-            originalPlayingQueue = new ArrayList<>(playingQueue);
-            this.playingQueue = new ArrayList<>(originalPlayingQueue);
+            // the songs are copied as we might add/remove songs later
+            this.playingQueue.open(playingQueue);
 
             int position = startPosition;
             if (shuffleMode == SHUFFLE_MODE_SHUFFLE) {
-                ShuffleHelper.makeShuffleList(this.playingQueue, startPosition);
+                this.playingQueue.shuffle(startPosition, getShuffleEngineMode());
                 position = 0;
             }
             if (startPlaying) {
@@ -742,36 +743,27 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     }
 
     public void addSong(int position, Song song) {
-        playingQueue.add(position, song);
-        originalPlayingQueue.add(position, song);
+        playingQueue.insert(position, Collections.singletonList(song));
         notifyChange(QUEUE_CHANGED);
     }
 
     public void addSong(Song song) {
-        playingQueue.add(song);
-        originalPlayingQueue.add(song);
+        playingQueue.append(Collections.singletonList(song));
         notifyChange(QUEUE_CHANGED);
     }
 
     public void addSongs(int position, List<Song> songs) {
-        playingQueue.addAll(position, songs);
-        originalPlayingQueue.addAll(position, songs);
+        playingQueue.insert(position, songs);
         notifyChange(QUEUE_CHANGED);
     }
 
     public void addSongs(List<Song> songs) {
-        playingQueue.addAll(songs);
-        originalPlayingQueue.addAll(songs);
+        playingQueue.append(songs);
         notifyChange(QUEUE_CHANGED);
     }
 
     public void removeSong(int position) {
-        if (getShuffleMode() == SHUFFLE_MODE_NONE) {
-            playingQueue.remove(position);
-            originalPlayingQueue.remove(position);
-        } else {
-            originalPlayingQueue.remove(playingQueue.remove(position));
-        }
+        playingQueue.remove(position);
 
         rePosition(position);
 
@@ -779,17 +771,12 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     }
 
     public void removeSong(@NonNull Song song) {
-        for (int i = 0; i < playingQueue.size(); i++) {
+        for (int i = playingQueue.size() - 1; i >= 0; i--) {
             if (playingQueue.get(i).id == song.id) {
                 playingQueue.remove(i);
                 rePosition(i);
             }
         }
-        for (int i = 0; i < originalPlayingQueue.size(); i++) {
-            if (originalPlayingQueue.get(i).id == song.id) {
-                originalPlayingQueue.remove(i);
-            }
-        }
         notifyChange(QUEUE_CHANGED);
     }
 
@@ -809,12 +796,7 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     public void moveSong(int from, int to) {
         if (from == to) return;
         final int currentPosition = getPosition();
-        Song songToMove = playingQueue.remove(from);
-        playingQueue.add(to, songToMove);
-        if (getShuffleMode() == SHUFFLE_MODE_NONE) {
-            Song tmpSong = originalPlayingQueue.remove(from);
-            originalPlayingQueue.add(to, tmpSong);
-        }
+        playingQueue.move(from, to);
         if (from > currentPosition && to <= currentPosition) {
             position = currentPosition + 1;
         } else if (from < currentPosition && to >= currentPosition) {
@@ -827,7 +809,6 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
 
     public void clearQueue() {
         playingQueue.clear();
-        originalPlayingQueue.clear();
 
         setPosition(-1);
         notifyChange(QUEUE_CHANGED);
@@ -1004,6 +985,10 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
         return shuffleMode;
     }
 
+    private int getShuffleEngineMode() {
+        return PreferenceUtil.getInstance(this).spreadShuffle() ? ShuffleEngine.MODE_SPREAD : ShuffleEngine.MODE_RANDOM;
+    }
+
     public void setShuffleMode(final int shuffleMode) {
         PreferenceManager.getDefaultSharedPreferences(this).edit()
                 .putInt(SAVED_SHUFFLE_MODE, shuffleMode)
@@ -1011,20 +996,12 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
         switch (shuffleMode) {
             case SHUFFLE_MODE_SHUFFLE:
                 this.shuffleMode = shuffleMode;
-                ShuffleHelper.makeShuffleList(this.getPlayingQueue(), getPosition());
+                playingQueue.shuffle(getPosition(), getShuffleEngineMode());
                 position = 0;
                 break;
             case SHUFFLE_MODE_NONE:
                 this.shuffleMode = shuffleMode;
-                long currentSongId = getCurrentSong().id;
-                playingQueue = new ArrayList<>(originalPlayingQueue);
-                int newPosition = 0;
-                for (Song song : getPlayingQueue()) {
-                    if (song.id == currentSongId) {
-                        newPosition = getPlayingQueue().indexOf(song);
-                    }
-                }
-                position = newPosition;
+                position = Math.max(playingQueue.unshuffle(getPosition()), 0);
                 break;
         }
         handleAndSendChangeInternal(SHUFFLE_MODE_CHANGED);
@@ -1102,7 +1079,7 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
                 final Song currentSong = getCurrentSong();
                 HistoryStore.getInstance(this).addSongId(currentSong.id);
                 if (songPlayCountHelper.shouldBumpPlayCount()) {
-                    SongPlayCountStore.getInstance(this).bumpPlayCount(songPlayCountHelper.getSong().id);
+                    SongPlayCountStore.getInstance(this).bumpPlayCount(songPlayCountHelper.getSong().id, songPlayCountHelper.getListenedTime());
                 }
                 songPlayCountHelper.notifySongChanged(currentSong);
                 break;
@@ -1365,6 +1342,8 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
         public void run() {
             // actually call refresh when the delayed callback fires
             // do not send a sticky broadcast here
+            // mark the index stale here, so the service and the next ui load see the change even without an activity
+            LibraryIndex.invalidate();
             handleAndSendChangeInternal(MEDIA_STORE_CHANGED);
 
         }
@@ -1403,6 +1382,10 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
             return song;
         }
 
+        long getListenedTime() {
+            return stopWatch.getElapsedTime();
+        }
+
         boolean shouldBumpPlayCount() {
             return song.duration * 0.5d < stopWatch.getElapsedTime();
         }
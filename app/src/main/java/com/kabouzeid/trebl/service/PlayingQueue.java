@@ -0,0 +1,222 @@
+package com.kabouzeid.trebl.service;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kabouzeid.trebl.helper.ShuffleEngine;
+import com.kabouzeid.trebl.model.Song;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The playing queue of the {@link MusicService}.
+ * <p>
+ * The songs are kept once, in their original order. While shuffled the queue is a view through a permutation that
+ * maps each queue position to a position in the original order. Shuffling and un-shuffling only replace the
+ * permutation.
+ * <p>
+ * A fresh shuffle is a lazy {@link ShuffleEngine}. It is only turned into an array once the shuffled queue is
+ * edited. The permutation array is never modified in place, a change always replaces it. This way it can be handed
+ * out for saving without copying.
+ */
+final class PlayingQueue extends AbstractList<Song> implements RandomAccess {
+    @NonNull
+    private ArrayList<Song> songs = new ArrayList<>();
+    // the shuffle as long as the shuffled queue wasn't edited
+    @Nullable
+    private ShuffleEngine shuffleEngine;
+    // queue position -> original position, null if not shuffled or still lazy
+    @Nullable
+    private int[] order;
+
+    @Override
+    public Song get(int position) {
+        return songs.get(getOriginalPosition(position));
+    }
+
+    @Override
+    public int size() {
+        return songs.size();
+    }
+
+    /**
+     * @return the songs in their original order.
+     */
+    @NonNull
+    public List<Song> getOriginalSongs() {
+        return Collections.unmodifiableList(songs);
+    }
+
+    /**
+     * @return the shuffle, or null if the queue is not shuffled or the shuffled queue was edited.
+     */
+    @Nullable
+    public ShuffleEngine getShuffleEngine() {
+        return shuffleEngine;
+    }
+
+    /**
+     * @return for every queue position the position in the original order, or null if the queue is not shuffled or
+     * the shuffle is still given by {@link #getShuffleEngine()}.
+     */
+    @Nullable
+    public int[] getShuffleOrder() {
+        return order;
+    }
+
+    public boolean isShuffled() {
+        return shuffleEngine != null || order != null;
+    }
+
+    public int getOriginalPosition(int position) {
+        if (order != null) {
+            return order[position];
+        }
+        return shuffleEngine == null ? position : shuffleEngine.get(position);
+    }
+
+    /**
+     * Replaces all songs, the queue is not shuffled afterwards.
+     */
+    public void open(@NonNull List<Song> songs) {
+        this.songs = new ArrayList<>(songs);
+        setOrder(null);
+    }
+
+    /**
+     * @param shuffleEngine as returned by {@link #getShuffleEngine()}
+     * @param order         as returned by {@link #getShuffleOrder()}, only used without a shuffle engine
+     */
+    public void restore(@NonNull List<Song> songs, @Nullable ShuffleEngine shuffleEngine, @Nullable int[] order) {
+        if (shuffleEngine != null && shuffleEngine.size() != songs.size()) {
+            throw new IllegalArgumentException("Shuffle of size " + shuffleEngine.size() + " for " + songs.size() + " songs");
+        }
+        if (order != null && order.length != songs.size()) {
+            throw new IllegalArgumentException("Shuffle order of length " + order.length + " for " + songs.size() + " songs");
+        }
+        this.songs = new ArrayList<>(songs);
+        if (shuffleEngine != null) {
+            setShuffleEngine(shuffleEngine);
+        } else {
+            setOrder(order);
+        }
+    }
+
+    /**
+     * Shuffles the queue, the song at the given queue position becomes the first one.
+     *
+     * @param mode one of the modes of the {@link ShuffleEngine}
+     */
+    public void shuffle(int position, int mode) {
+        if (songs.isEmpty()) return;
+        final int first = position >= 0 && position < size() ? getOriginalPosition(position) : -1;
+        setShuffleEngine(ShuffleEngine.create(mode, songs, first, ShuffleEngine.newSeed()));
+    }
+
+    /**
+     * Restores the original order.
+     *
+     * @return the new position of the song at the given queue position.
+     */
+    public int unshuffle(int position) {
+        final int originalPosition = position >= 0 && position < size() ? getOriginalPosition(position) : position;
+        setOrder(null);
+        return originalPosition;
+    }
+
+    /**
+     * Inserts the songs at the given position of both the queue and the original order.
+     */
+    public void insert(int position, @NonNull List<Song> songsToInsert) {
+        final int count = songsToInsert.size();
+        if (!isShuffled() || count == 0) {
+            songs.addAll(position, songsToInsert);
+            return;
+        }
+        final int[] order = materializeOrder();
+        songs.addAll(position, songsToInsert);
+
+        final int[] newOrder = new int[order.length + count];
+        for (int i = 0; i < order.length; i++) {
+            final int originalPosition = order[i] >= position ? order[i] + count : order[i];
+            newOrder[i < position ? i : i + count] = originalPosition;
+        }
+        for (int i = 0; i < count; i++) {
+            newOrder[position + i] = position + i;
+        }
+        setOrder(newOrder);
+    }
+
+    public void append(@NonNull List<Song> songsToAppend) {
+        insert(songs.size(), songsToAppend);
+    }
+
+    /**
+     * Removes the song at the given queue position, and with it its original position.
+     */
+    @NonNull
+    public Song remove(int position) {
+        if (!isShuffled()) {
+            return songs.remove(position);
+        }
+        final int[] order = materializeOrder();
+        final int removedOriginalPosition = order[position];
+        final Song removed = songs.remove(removedOriginalPosition);
+
+        final int[] newOrder = new int[order.length - 1];
+        for (int i = 0; i < order.length; i++) {
+            if (i == position) continue;
+            newOrder[i < position ? i : i - 1] = order[i] > removedOriginalPosition ? order[i] - 1 : order[i];
+        }
+        setOrder(newOrder);
+        return removed;
+    }
+
+    /**
+     * Moves a song within the queue. The original order only changes if the queue is not shuffled.
+     */
+    public void move(int from, int to) {
+        if (from == to) return;
+        if (!isShuffled()) {
+            songs.add(to, songs.remove(from));
+            return;
+        }
+        final int[] newOrder = materializeOrder().clone();
+        final int moved = newOrder[from];
+        if (from < to) {
+            System.arraycopy(newOrder, from + 1, newOrder, from, to - from);
+        } else {
+            System.arraycopy(newOrder, to, newOrder, to + 1, from - to);
+        }
+        newOrder[to] = moved;
+        setOrder(newOrder);
+    }
+
+    @Override
+    public void clear() {
+        songs = new ArrayList<>();
+        setOrder(null);
+    }
+
+    @NonNull
+    private int[] materializeOrder() {
+        if (order == null && shuffleEngine != null) {
+            setOrder(shuffleEngine.toArray());
+        }
+        return order;
+    }
+
+    private void setShuffleEngine(@NonNull ShuffleEngine shuffleEngine) {
+        this.shuffleEngine = shuffleEngine;
+        order = null;
+    }
+
+    private void setOrder(@Nullable int[] order) {
+        shuffleEngine = null;
+        this.order = order;
+    }
+}
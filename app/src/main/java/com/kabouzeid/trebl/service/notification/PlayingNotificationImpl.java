@@ -92,6 +92,7 @@ public class PlayingNotificationImpl extends PlayingNotification {
                 }
                 target = SongGlideRequest.Builder.from(Glide.with(service), song)
                         .checkIgnoreMediaStore(service)
+                        .size(SongGlideRequest.CoverSize.WIDGET)
                         .generatePalette(service).build()
                         .into(new SimpleTarget<BitmapPaletteWrapper>(bigNotificationImageSize, bigNotificationImageSize) {
                             @Override
@@ -69,6 +69,7 @@ public class PlayingNotificationImpl24 extends PlayingNotification {
         final int bigNotificationImageSize = service.getResources().getDimensionPixelSize(R.dimen.notification_big_image_size);
         service.runOnUiThread(() -> SongGlideRequest.Builder.from(Glide.with(service), song)
                 .checkIgnoreMediaStore(service)
+                .size(SongGlideRequest.CoverSize.WIDGET)
                 .generatePalette(service).build()
                 .into(new SimpleTarget<BitmapPaletteWrapper>(bigNotificationImageSize, bigNotificationImageSize) {
                     @Override
@@ -15,6 +15,10 @@ public interface Playback {
 
     boolean isInitialized();
 
+    boolean isPreparing();
+
+    long getPrepareLatency();
+
     boolean start();
 
     void stop();
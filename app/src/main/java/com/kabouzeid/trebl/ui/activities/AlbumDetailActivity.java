@@ -38,7 +38,7 @@ import com.kabouzeid.trebl.interfaces.LoaderIds;
 import com.kabouzeid.trebl.interfaces.PaletteColorHolder;
 import com.kabouzeid.trebl.lastfm.rest.LastFMRestClient;
 import com.kabouzeid.trebl.lastfm.rest.model.LastFmAlbum;
-import com.kabouzeid.trebl.loader.AlbumLoader;
+import com.kabouzeid.trebl.loader.LibraryIndex;
 import com.kabouzeid.trebl.misc.SimpleObservableScrollViewCallbacks;
 import com.kabouzeid.trebl.misc.WrappedAsyncTaskLoader;
 import com.kabouzeid.trebl.model.Album;
@@ -157,6 +157,7 @@ public class AlbumDetailActivity extends AbsSlidingMusicPanelActivity implements
     private void loadAlbumCover() {
         SongGlideRequest.Builder.from(Glide.with(this), getAlbum().safeGetFirstSong())
                 .checkIgnoreMediaStore(this)
+                .size(SongGlideRequest.CoverSize.PLAYER)
                 .generatePalette(this).build()
                 .dontAnimate()
                 .into(new PhonographColoredTarget(albumArtImageView) {
@@ -443,7 +444,7 @@ public class AlbumDetailActivity extends AbsSlidingMusicPanelActivity implements
 
         @Override
         public Album loadInBackground() {
-            return AlbumLoader.getAlbum(getContext(), albumId);
+            return LibraryIndex.getInstance(getContext()).getAlbum(albumId);
         }
     }
 }
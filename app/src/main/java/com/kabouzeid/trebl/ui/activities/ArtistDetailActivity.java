@@ -46,7 +46,7 @@ import com.kabouzeid.trebl.interfaces.LoaderIds;
 import com.kabouzeid.trebl.interfaces.PaletteColorHolder;
 import com.kabouzeid.trebl.lastfm.rest.LastFMRestClient;
 import com.kabouzeid.trebl.lastfm.rest.model.LastFmArtist;
-import com.kabouzeid.trebl.loader.ArtistLoader;
+import com.kabouzeid.trebl.loader.LibraryIndex;
 import com.kabouzeid.trebl.misc.SimpleObservableScrollViewCallbacks;
 import com.kabouzeid.trebl.misc.WrappedAsyncTaskLoader;
 import com.kabouzeid.trebl.model.Artist;
@@ -456,7 +456,7 @@ public class ArtistDetailActivity extends AbsSlidingMusicPanelActivity implement
 
         @Override
         public Artist loadInBackground() {
-            return ArtistLoader.getArtist(getContext(), artistId);
+            return LibraryIndex.getInstance(getContext()).getArtist(artistId);
         }
     }
 }
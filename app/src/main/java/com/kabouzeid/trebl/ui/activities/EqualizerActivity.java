@@ -3,9 +3,6 @@ package com.kabouzeid.trebl.ui.activities;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
 import android.graphics.drawable.Drawable;
-import android.media.audiofx.BassBoost;
-import android.media.audiofx.Equalizer;
-import android.media.audiofx.Virtualizer;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.MenuItem;
@@ -27,8 +24,8 @@ import androidx.appcompat.widget.Toolbar;
 import androidx.core.content.ContextCompat;
 
 import com.kabouzeid.trebl.R;
+import com.kabouzeid.trebl.service.AudioEffectChain;
 import com.kabouzeid.trebl.util.NavigationUtil;
-import com.kabouzeid.trebl.util.PreferenceUtil;
 
 import me.tankery.lib.circularseekbar.CircularSeekBar;
 
@@ -50,6 +47,8 @@ public class EqualizerActivity extends AppCompatActivity
 
     int currentEqProfile = 0;
 
+    AudioEffectChain effectChain;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -58,7 +57,8 @@ public class EqualizerActivity extends AppCompatActivity
         Window window = this.getWindow();
         window.setStatusBarColor(ContextCompat.getColor(this, R.color.black));
 
-        currentEqProfile = PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("currentEqProfile", 0);
+        effectChain = AudioEffectChain.getInstance(this);
+        currentEqProfile = effectChain.getProfile();
 
         Toolbar toolbar = findViewById(R.id.toolbar);
         toolbar.setTitleTextColor(ContextCompat.getColor(this, R.color.white));
@@ -94,9 +94,8 @@ public class EqualizerActivity extends AppCompatActivity
         sliders[4] = findViewById(R.id.slider_5);
 
         try {
-            Equalizer eq = new Equalizer(0, PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("audio_session_id",0));
-            num_sliders = eq.getNumberOfBands();
-            short[] r = eq.getBandLevelRange();
+            num_sliders = effectChain.getNumberOfBands();
+            short[] r = effectChain.getBandLevelRange();
             min_level = r[0];
             max_level = r[1];
             for (int i = 0; i < num_sliders && i < MAX_SLIDERS; i++) {
@@ -106,18 +105,7 @@ public class EqualizerActivity extends AppCompatActivity
             bassBar.setOnSeekBarChangeListener(new CircularSeekBar.OnCircularSeekBarChangeListener() {
                 @Override
                 public void onProgressChanged(@Nullable CircularSeekBar circularSeekBar, float v, boolean b) {
-                    try {
-                        BassBoost bassBoost = new BassBoost(0, PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("audio_session_id", 0));
-                        if (enabled.isChecked()) {
-                        bassBoost.setEnabled(v > 0);
-                        short m = (short) (v*10);
-                        bassBoost.setStrength(m);
-                        bassBoost.release();
-                        }
-                        PreferenceUtil.getInstance(EqualizerActivity.this).writeSharedPrefs("bassLevel" + currentEqProfile, (int)v);
-                    }catch (Exception ignored){
-
-                    }
+                    effectChain.setBassLevel((int) v);
 
                 }
 
@@ -134,18 +122,7 @@ public class EqualizerActivity extends AppCompatActivity
             surroundBar.setOnSeekBarChangeListener(new CircularSeekBar.OnCircularSeekBarChangeListener() {
                 @Override
                 public void onProgressChanged(@Nullable CircularSeekBar circularSeekBar, float v, boolean b) {
-                    try {
-                        Virtualizer virtualizer = new Virtualizer(0, PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("audio_session_id", 0));
-                        if (enabled.isChecked()) {
-                        virtualizer.setEnabled(v > 0);
-                        short m = (short) (v*10);
-                        virtualizer.setStrength(m);
-                        virtualizer.release();
-                        }
-                        PreferenceUtil.getInstance(EqualizerActivity.this).writeSharedPrefs("vzLevel" + currentEqProfile, (int)v);
-                    }catch (Exception ignored){
-
-                    }
+                    effectChain.setVirtualizerLevel((int) v);
 
                 }
 
@@ -159,7 +136,6 @@ public class EqualizerActivity extends AppCompatActivity
 
                 }
             });
-            eq.release();
         } catch (Exception ignored) {
         }
 
@@ -173,7 +149,7 @@ public class EqualizerActivity extends AppCompatActivity
         spinner.setSelection(currentEqProfile);
         spinner.setOnItemSelectedListener(this);
 
-        if(!PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsBoolean("turnEqualizer", false)){
+        if(!effectChain.isEnabled()){
             for (int i = 0; i < num_sliders && i < MAX_SLIDERS; i++) {
                 sliders[i].setEnabled(false);
                 sliders[i].getProgressDrawable().setAlpha(150);
@@ -205,8 +181,8 @@ public class EqualizerActivity extends AppCompatActivity
             @Override
             public void onCheckedChanged(CompoundButton compoundButton, boolean b) {
 
-                // saving setting for equalizer
-                PreferenceUtil.getInstance(EqualizerActivity.this).writeSharedPrefs("turnEqualizer", b);
+                // saving setting for equalizer, the effects are only updated if a session is active
+                effectChain.setEnabled(b);
 
                 if(!b){
                     for (int i = 0; i < num_sliders && i < MAX_SLIDERS; i++) {
@@ -235,35 +211,6 @@ public class EqualizerActivity extends AppCompatActivity
                     flat.setEnabled(true);
                     flat.setAlpha(1.0f);
                 }
-
-                // Crash can be expected in case no audio session is active. In that case we only
-                // need to turn equalizer on in settings
-                try {
-                    Equalizer eq = new Equalizer(0, PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("audio_session_id", 0));
-                    BassBoost bassBoost = new BassBoost(0, PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("audio_session_id", 0));
-                    Virtualizer virtualizer = new Virtualizer(0, PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("audio_session_id", 0));
-                    eq.setEnabled(b);
-                    bassBoost.setEnabled(b);
-                    virtualizer.setEnabled(b);
-                    if (b) {
-                        for (int i = 0; i < 5; i++) {
-                            eq.setBandLevel((short) i, (short) PreferenceUtil.getInstance(EqualizerActivity.this)
-                                    .readSharedPrefsInt("profile" + currentEqProfile + "Band" + i, 0));
-                        }
-                        short basslev = (short)PreferenceUtil.getInstance(EqualizerActivity.this).
-                                readSharedPrefsInt("bassLevel" + currentEqProfile, 0);
-
-                        short surroundlev = (short) PreferenceUtil.getInstance(EqualizerActivity.this).
-                                readSharedPrefsInt("vzLevel" + currentEqProfile, 0);
-
-                        bassBoost.setStrength((short) (basslev*10)); //circular seekbar is not in correct range (1-1000) it is in 1-100
-                        virtualizer.setStrength((short) (surroundlev*10));
-                    }
-                    eq.release();
-                    bassBoost.release();
-                    virtualizer.release();
-                } catch (Exception ignored) {
-                }
             }
         });
     }
@@ -272,20 +219,12 @@ public class EqualizerActivity extends AppCompatActivity
     @Override
     public void onProgressChanged(SeekBar seekBar, int level,
                                   boolean fromTouch) {
-        try {
-            Equalizer eq = new Equalizer(0, PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("audio_session_id", 0));
-                int new_level = min_level + (max_level - min_level) * level / 100;
-                for (int i = 0; i < num_sliders; i++) {
-                    if (sliders[i] == seekBar) {
-                        if (eq.getEnabled()) {
-                            eq.setBandLevel((short) i, (short) new_level);
-                        }
-                        PreferenceUtil.getInstance(EqualizerActivity.this).writeSharedPrefs("profile" + currentEqProfile + "Band" + i, new_level);
-                        break;
-                    }
-                }
-            eq.release();
-        } catch (Exception ignored) {
+        int new_level = min_level + (max_level - min_level) * level / 100;
+        for (int i = 0; i < num_sliders; i++) {
+            if (sliders[i] == seekBar) {
+                effectChain.setBandLevel(i, new_level);
+                break;
+            }
         }
     }
 
@@ -300,7 +239,7 @@ public class EqualizerActivity extends AppCompatActivity
     public void updateSliders() {
         try {
             for (int i = 0; i < num_sliders; i++) {
-                int level = (short) PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("profile" + currentEqProfile + "Band" + i, 0);
+                int level = (short) effectChain.getBandLevel(i);
                 int pos = 100 * level / (max_level - min_level) + 50;
                 sliders[i].setProgress(pos);
             }
@@ -310,14 +249,14 @@ public class EqualizerActivity extends AppCompatActivity
 
     public void updateBassBoost() {
         try {
-            bassBar.setProgress((short)PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("bassLevel" + currentEqProfile, 0));
+            bassBar.setProgress((short) effectChain.getBassLevel());
         } catch (Exception ignored) {
         }
     }
 
     public void updateVirtualizer() {
         try {
-            surroundBar.setProgress((short) PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("vzLevel" + currentEqProfile, 0));
+            surroundBar.setProgress((short) effectChain.getVirtualizerLevel());
         } catch (Exception ignored) {
         }
     }
@@ -333,30 +272,12 @@ public class EqualizerActivity extends AppCompatActivity
         updateSliders();
         updateBassBoost();
         updateVirtualizer();
-        enabled.setChecked(PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsBoolean("turnEqualizer", false));
+        enabled.setChecked(effectChain.isEnabled());
     }
 
     public void setFlat() {
-        try {
-            Equalizer eq = new Equalizer(0, PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("audio_session_id", 0));
-            BassBoost bassBoost = new BassBoost(0, PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("audio_session_id", 0));
-            Virtualizer virtualizer = new Virtualizer(0, PreferenceUtil.getInstance(EqualizerActivity.this).readSharedPrefsInt("audio_session_id", 0));
-            bassBoost.setEnabled(false);
-            bassBoost.setStrength((short) 0);
-            virtualizer.setEnabled(false);
-            virtualizer.setStrength((short) 0);
-            for (int i = 0; i < num_sliders; i++) {
-                eq.setBandLevel((short) i, (short) 0);
-                PreferenceUtil.getInstance(EqualizerActivity.this).writeSharedPrefs("profile" + currentEqProfile + "Band" + i, 0);
-            }
-            PreferenceUtil.getInstance(EqualizerActivity.this).writeSharedPrefs("bassLevel" + currentEqProfile, 0);
-            PreferenceUtil.getInstance(EqualizerActivity.this).writeSharedPrefs("vzLevel" + currentEqProfile, 0);
-            updateUI();
-            eq.release();
-            bassBoost.release();
-            virtualizer.release();
-        } catch (Exception ignored) {
-        }
+        effectChain.resetProfile();
+        updateUI();
     }
 
     @Override
@@ -371,7 +292,7 @@ public class EqualizerActivity extends AppCompatActivity
          * Spinner Profile Selection
          */
         if (currentEqProfile != position) {
-            PreferenceUtil.getInstance(EqualizerActivity.this).writeSharedPrefs("currentEqProfile", position);
+            effectChain.setProfile(position);
             currentEqProfile = position;
         }
         Log.d("Equalizer", currentEqProfile + "profile");
@@ -1,15 +1,11 @@
 package com.kabouzeid.trebl.ui.activities;
 
-import android.content.Context;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
-import androidx.loader.app.LoaderManager;
-import androidx.loader.content.Loader;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.appcompat.widget.SearchView;
 import androidx.appcompat.widget.Toolbar;
-import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -18,11 +14,9 @@ import android.widget.TextView;
 import com.kabouzeid.appthemehelper.ThemeStore;
 import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.adapter.SearchAdapter;
-import com.kabouzeid.trebl.interfaces.LoaderIds;
-import com.kabouzeid.trebl.loader.AlbumLoader;
-import com.kabouzeid.trebl.loader.ArtistLoader;
-import com.kabouzeid.trebl.loader.SongLoader;
-import com.kabouzeid.trebl.misc.WrappedAsyncTaskLoader;
+import com.kabouzeid.trebl.helper.SearchPipeline;
+import com.kabouzeid.trebl.loader.SearchIndex;
+import com.kabouzeid.trebl.model.Song;
 import com.kabouzeid.trebl.ui.activities.base.AbsMusicServiceActivity;
 import com.kabouzeid.trebl.util.Util;
 
@@ -33,10 +27,9 @@ import java.util.List;
 import butterknife.BindView;
 import butterknife.ButterKnife;
 
-public class SearchActivity extends AbsMusicServiceActivity implements SearchView.OnQueryTextListener, LoaderManager.LoaderCallbacks<List<Object>> {
+public class SearchActivity extends AbsMusicServiceActivity implements SearchView.OnQueryTextListener, SearchPipeline.Callbacks {
 
     public static final String QUERY = "query";
-    private static final int LOADER_ID = LoaderIds.SEARCH_ACTIVITY;
 
     @BindView(R.id.recycler_view)
     RecyclerView recyclerView;
@@ -48,7 +41,10 @@ public class SearchActivity extends AbsMusicServiceActivity implements SearchVie
     SearchView searchView;
 
     private SearchAdapter adapter;
+    private SearchPipeline searchPipeline;
     private String query;
+    // whether the songs of the current search are shown and only the albums and artists are missing
+    private boolean songsShown;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -69,6 +65,12 @@ public class SearchActivity extends AbsMusicServiceActivity implements SearchVie
                 super.onChanged();
                 empty.setVisibility(adapter.getItemCount() < 1 ? View.VISIBLE : View.GONE);
             }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                super.onItemRangeInserted(positionStart, itemCount);
+                onChanged();
+            }
         });
         recyclerView.setAdapter(adapter);
 
@@ -83,7 +85,14 @@ public class SearchActivity extends AbsMusicServiceActivity implements SearchVie
             query = savedInstanceState.getString(QUERY);
         }
 
-        getSupportLoaderManager().initLoader(LOADER_ID, null, this);
+        searchPipeline = new SearchPipeline(this, this);
+        search(query);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        searchPipeline.cancel();
     }
 
     @Override
@@ -136,15 +145,17 @@ public class SearchActivity extends AbsMusicServiceActivity implements SearchVie
         return super.onOptionsItemSelected(item);
     }
 
-    private void search(@NonNull String query) {
+    private void search(String query) {
         this.query = query;
-        getSupportLoaderManager().restartLoader(LOADER_ID, null, this);
+        songsShown = false;
+        searchPipeline.search(query);
     }
 
     @Override
     public void onMediaStoreChanged() {
         super.onMediaStoreChanged();
-        getSupportLoaderManager().restartLoader(LOADER_ID, null, this);
+        searchPipeline.invalidate();
+        search(query);
     }
 
     @Override
@@ -167,51 +178,33 @@ public class SearchActivity extends AbsMusicServiceActivity implements SearchVie
     }
 
     @Override
-    public Loader<List<Object>> onCreateLoader(int id, Bundle args) {
-        return new AsyncSearchResultLoader(this, query);
+    public void onSongsFound(@NonNull String query, @NonNull List<Song> songs) {
+        List<Object> results = new ArrayList<>();
+        addSection(results, R.string.songs, songs);
+        adapter.swapDataSet(results);
+        songsShown = true;
     }
 
     @Override
-    public void onLoadFinished(Loader<List<Object>> loader, List<Object> data) {
-        adapter.swapDataSet(data);
-    }
-
-    @Override
-    public void onLoaderReset(Loader<List<Object>> loader) {
-        adapter.swapDataSet(Collections.emptyList());
-    }
-
-    private static class AsyncSearchResultLoader extends WrappedAsyncTaskLoader<List<Object>> {
-        private final String query;
-
-        public AsyncSearchResultLoader(Context context, String query) {
-            super(context);
-            this.query = query;
+    public void onSearchCompleted(@NonNull String query, @NonNull SearchIndex.Result result) {
+        List<Object> results = new ArrayList<>();
+        if (!songsShown) {
+            addSection(results, R.string.songs, result.getSongs());
         }
+        addSection(results, R.string.artists, result.getArtists());
+        addSection(results, R.string.albums, result.getAlbums());
+        if (songsShown) {
+            adapter.appendDataSet(results);
+        } else {
+            adapter.swapDataSet(results);
+        }
+        songsShown = false;
+    }
 
-        @Override
-        public List<Object> loadInBackground() {
-            List<Object> results = new ArrayList<>();
-            if (!TextUtils.isEmpty(query)) {
-                List songs = SongLoader.getSongs(getContext(), query.trim());
-                if (!songs.isEmpty()) {
-                    results.add(getContext().getResources().getString(R.string.songs));
-                    results.addAll(songs);
-                }
-
-                List artists = ArtistLoader.getArtists(getContext(), query.trim());
-                if (!artists.isEmpty()) {
-                    results.add(getContext().getResources().getString(R.string.artists));
-                    results.addAll(artists);
-                }
-
-                List albums = AlbumLoader.getAlbums(getContext(), query.trim());
-                if (!albums.isEmpty()) {
-                    results.add(getContext().getResources().getString(R.string.albums));
-                    results.addAll(albums);
-                }
-            }
-            return results;
+    private void addSection(@NonNull List<Object> results, int titleRes, @NonNull List<?> items) {
+        if (!items.isEmpty()) {
+            results.add(getResources().getString(titleRes));
+            results.addAll(items);
         }
     }
 }
@@ -229,6 +229,13 @@ public class SettingsActivity extends AbsBaseActivity implements ColorChooserDia
                 return true;
             });
 
+            final Preference imageCacheSize = findPreference("image_cache_size");
+            setSummary(imageCacheSize);
+            imageCacheSize.setOnPreferenceChangeListener((preference, o) -> {
+                setSummary(imageCacheSize, o);
+                return true;
+            });
+
             final ATEColorPreference primaryColorPref = findPreference("primary_color");
             final int primaryColor = ThemeStore.primaryColor(getActivity());
             primaryColorPref.setColor(primaryColor, ColorUtil.darkenColor(primaryColor));
@@ -17,6 +17,7 @@ import androidx.annotation.Nullable;
 import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.helper.MusicPlayerRemote;
 import com.kabouzeid.trebl.interfaces.MusicServiceEventListener;
+import com.kabouzeid.trebl.loader.LibraryIndex;
 import com.kabouzeid.trebl.service.MusicService;
 
 import java.lang.ref.WeakReference;
@@ -211,6 +212,7 @@ public abstract class AbsMusicServiceActivity extends AbsBaseActivity implements
     @Override
     protected void onHasPermissionsChanged(boolean hasPermissions) {
         super.onHasPermissionsChanged(hasPermissions);
+        LibraryIndex.invalidate();
         Intent intent = new Intent(MusicService.MEDIA_STORE_CHANGED);
         intent.putExtra("from_permissions_changed", true); // just in case we need to know this at some point
         intent.setPackage(getPackageName()); // Explicit broadcast for Android 13+ compatibility
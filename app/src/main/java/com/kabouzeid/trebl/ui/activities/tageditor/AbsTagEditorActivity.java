@@ -6,20 +6,22 @@ import android.app.SearchManager;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.google.android.material.textfield.TextInputLayout;
 import androidx.appcompat.widget.Toolbar;
-import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewParent;
 import android.view.animation.OvershootInterpolator;
+import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.Toast;
 
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.github.ksoichiro.android.observablescrollview.ObservableScrollView;
@@ -30,25 +32,19 @@ import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.misc.DialogAsyncTask;
 import com.kabouzeid.trebl.misc.SimpleObservableScrollViewCallbacks;
 import com.kabouzeid.trebl.misc.UpdateToastMediaScannerCompletionListener;
+import com.kabouzeid.trebl.misc.WeakContextAsyncTask;
 import com.kabouzeid.trebl.ui.activities.base.AbsBaseActivity;
 import com.kabouzeid.trebl.util.MusicUtil;
 import com.kabouzeid.trebl.util.Util;
 
-import org.jaudiotagger.audio.AudioFile;
-import org.jaudiotagger.audio.AudioFileIO;
-import org.jaudiotagger.audio.exceptions.CannotReadException;
-import org.jaudiotagger.audio.exceptions.CannotWriteException;
-import org.jaudiotagger.audio.exceptions.InvalidAudioFrameException;
-import org.jaudiotagger.audio.exceptions.ReadOnlyFileException;
 import org.jaudiotagger.tag.FieldKey;
-import org.jaudiotagger.tag.Tag;
-import org.jaudiotagger.tag.TagException;
 import org.jaudiotagger.tag.images.Artwork;
 import org.jaudiotagger.tag.images.ArtworkFactory;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -63,7 +59,6 @@ public abstract class AbsTagEditorActivity extends AbsBaseActivity {
 
     public static final String EXTRA_ID = "extra_id";
     public static final String EXTRA_PALETTE = "extra_palette";
-    private static final String TAG = AbsTagEditorActivity.class.getSimpleName();
     private static final int REQUEST_CODE_SELECT_IMAGE = 1000;
     @BindView(R.id.play_pause_fab)
     FloatingActionButton fab;
@@ -94,6 +89,10 @@ public abstract class AbsTagEditorActivity extends AbsBaseActivity {
         }
     };
     private List<String> songPaths;
+    @Nullable
+    private TagSnapshot tags;
+    @Nullable
+    private ReadTagsAsyncTask readTagsAsyncTask;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -113,12 +112,23 @@ public abstract class AbsTagEditorActivity extends AbsBaseActivity {
 
         setUpViews();
 
+        readTagsAsyncTask = new ReadTagsAsyncTask(this, songPaths);
+        readTagsAsyncTask.execute();
+
         setSupportActionBar(toolbar);
         //noinspection ConstantConditions
         getSupportActionBar().setTitle(null);
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (readTagsAsyncTask != null) {
+            readTagsAsyncTask.cancel(false);
+        }
+    }
+
     private void setUpViews() {
         setUpScrollView();
         setUpFab();
@@ -131,6 +141,8 @@ public abstract class AbsTagEditorActivity extends AbsBaseActivity {
 
     private void setUpImageView() {
         loadCurrentImage();
+        // a new image picked before the tags were read would be replaced by the one read
+        image.setEnabled(false);
         final CharSequence[] items = new CharSequence[]{
                 getString(R.string.download_from_last_fm),
                 getString(R.string.pick_from_local_storage),
@@ -176,7 +188,12 @@ public abstract class AbsTagEditorActivity extends AbsBaseActivity {
         fab.setScaleX(0);
         fab.setScaleY(0);
         fab.setEnabled(false);
-        fab.setOnClickListener(v -> save());
+        fab.setOnClickListener(v -> {
+            // the empty fields would be written to the files
+            if (tags != null) {
+                save();
+            }
+        });
 
         TintHelper.setTintAuto(fab, ThemeStore.accentColor(this), true);
     }
@@ -231,7 +248,9 @@ public abstract class AbsTagEditorActivity extends AbsBaseActivity {
     }
 
     protected void dataChanged() {
-        showFab();
+        if (tags != null) {
+            showFab();
+        }
     }
 
     private void showFab() {
@@ -265,11 +284,12 @@ public abstract class AbsTagEditorActivity extends AbsBaseActivity {
     protected void writeValuesToFiles(@NonNull final Map<FieldKey, String> fieldKeyValueMap, @Nullable final ArtworkInfo artworkInfo) {
         Util.hideSoftKeyboard(this);
 
-        new WriteTagsAsyncTask(this).execute(new WriteTagsAsyncTask.LoadingInfo(getSongPaths(), fieldKeyValueMap, artworkInfo));
+        new WriteTagsAsyncTask(this).execute(new WriteTagsAsyncTask.LoadingInfo(songPaths, fieldKeyValueMap, artworkInfo));
     }
 
     private static class WriteTagsAsyncTask extends DialogAsyncTask<WriteTagsAsyncTask.LoadingInfo, Integer, String[]> {
         Context applicationContext;
+        private boolean failed;
 
         public WriteTagsAsyncTask(Context context) {
             super(context);
@@ -287,58 +307,37 @@ public abstract class AbsTagEditorActivity extends AbsBaseActivity {
                 if (info.artworkInfo != null && info.artworkInfo.artwork != null) {
                     try {
                         albumArtFile = MusicUtil.createAlbumArtFile().getCanonicalFile();
-                        info.artworkInfo.artwork.compress(Bitmap.CompressFormat.PNG, 0, new FileOutputStream(albumArtFile));
+                        try (FileOutputStream out = new FileOutputStream(albumArtFile)) {
+                            info.artworkInfo.artwork.compress(Bitmap.CompressFormat.PNG, 0, out);
+                        }
+                        // encoded once, shared by all files
                         artwork = ArtworkFactory.createArtworkFromFile(albumArtFile);
                     } catch (IOException e) {
                         e.printStackTrace();
                     }
                 }
 
-                int counter = 0;
-                boolean wroteArtwork = false;
-                boolean deletedArtwork = false;
-                for (String filePath : info.filePaths) {
-                    publishProgress(++counter, info.filePaths.size());
-                    try {
-                        AudioFile audioFile = AudioFileIO.read(new File(filePath));
-                        Tag tag = audioFile.getTagOrCreateAndSetDefault();
-
-                        if (info.fieldKeyValueMap != null) {
-                            for (Map.Entry<FieldKey, String> entry : info.fieldKeyValueMap.entrySet()) {
-                                try {
-                                    tag.setField(entry.getKey(), entry.getValue());
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                }
-                            }
-                        }
-
-                        if (info.artworkInfo != null) {
-                            if (info.artworkInfo.artwork == null) {
-                                tag.deleteArtworkField();
-                                deletedArtwork = true;
-                            } else if (artwork != null) {
-                                tag.deleteArtworkField();
-                                tag.setField(artwork);
-                                wroteArtwork = true;
-                            }
-                        }
-
-                        audioFile.commit();
-                    } catch (@NonNull CannotReadException | IOException | CannotWriteException | TagException | ReadOnlyFileException | InvalidAudioFrameException e) {
-                        e.printStackTrace();
+                final boolean deleteArtwork = info.artworkInfo != null && info.artworkInfo.artwork == null;
+                final BatchTagWriter writer = new BatchTagWriter(applicationContext, info.filePaths, info.fieldKeyValueMap, artwork, deleteArtwork);
+                if (!writer.write((written, total) -> publishProgress(written, total))) {
+                    failed = true;
+                    if (albumArtFile != null) {
+                        //noinspection ResultOfMethodCallIgnored
+                        albumArtFile.delete();
                     }
+                    // the files were left as they were, nothing to scan
+                    return null;
                 }
 
                 Context context = getContext();
                 if (context != null) {
-                    if (wroteArtwork) {
+                    if (artwork != null) {
                         MusicUtil.insertAlbumArt(
                                 context,
                                 info.artworkInfo.albumId,
                                 albumArtFile.getPath(),
                                 albumArtMimeType);
-                    } else if (deletedArtwork) {
+                    } else if (deleteArtwork) {
                         MusicUtil.deleteAlbumArt(context, info.artworkInfo.albumId);
                     }
                 }
@@ -353,6 +352,9 @@ public abstract class AbsTagEditorActivity extends AbsBaseActivity {
         @Override
         protected void onPostExecute(String[] toBeScanned) {
             super.onPostExecute(toBeScanned);
+            if (failed) {
+                Toast.makeText(applicationContext, R.string.could_not_save_tags, Toast.LENGTH_LONG).show();
+            }
             scan(toBeScanned);
         }
 
@@ -430,99 +432,82 @@ public abstract class AbsTagEditorActivity extends AbsBaseActivity {
 
     protected abstract void loadImageFromFile(Uri selectedFile);
 
-    @NonNull
-    private AudioFile getAudioFile(@NonNull String path) {
-        try {
-            return AudioFileIO.read(new File(path));
-        } catch (Exception e) {
-            Log.e(TAG, "Could not read audio file " + path, e);
-            return new AudioFile();
-        }
-    }
+    /**
+     * Called once the tags of all files were read.
+     */
+    protected abstract void bindTags(@NonNull TagSnapshot tags);
 
-    @Nullable
-    protected String getSongTitle() {
-        try {
-            return getAudioFile(songPaths.get(0)).getTagOrCreateAndSetDefault().getFirst(FieldKey.TITLE);
-        } catch (Exception ignored) {
-            return null;
-        }
+    @NonNull
+    protected TagSnapshot getTags() {
+        return tags == null ? TagSnapshot.EMPTY : tags;
     }
 
-    @Nullable
-    protected String getAlbumTitle() {
-        try {
-            return getAudioFile(songPaths.get(0)).getTagOrCreateAndSetDefault().getFirst(FieldKey.ALBUM);
-        } catch (Exception ignored) {
-            return null;
-        }
+    private void onTagsRead(@NonNull TagSnapshot tags) {
+        this.tags = tags;
+        loadCurrentImage();
+        image.setEnabled(!isInNoImageMode);
+        bindTags(tags);
     }
 
-    @Nullable
-    protected String getArtistName() {
-        try {
-            return getAudioFile(songPaths.get(0)).getTagOrCreateAndSetDefault().getFirst(FieldKey.ARTIST);
-        } catch (Exception ignored) {
-            return null;
+    /**
+     * Shows the value of the field, or leaves the view empty and marks its label if the files have different values.
+     */
+    protected void bindField(@NonNull EditText editText, @NonNull FieldKey field) {
+        final TagSnapshot tags = getTags();
+        editText.setText(tags.get(field));
+        if (tags.isVarious(field)) {
+            for (ViewParent parent = editText.getParent(); parent != null; parent = parent.getParent()) {
+                if (parent instanceof TextInputLayout) {
+                    TextInputLayout layout = (TextInputLayout) parent;
+                    layout.setHint(getString(R.string.x_multiple_values, layout.getHint()));
+                    break;
+                }
+            }
         }
     }
 
-    @Nullable
-    protected String getAlbumArtistName() {
-        try {
-            return getAudioFile(songPaths.get(0)).getTagOrCreateAndSetDefault().getFirst(FieldKey.ALBUM_ARTIST);
-        } catch (Exception ignored) {
-            return null;
-        }
+    /**
+     * @return whether the field has different values in the files and the user didn't enter a new one, the files
+     * keep their values then.
+     */
+    protected boolean isLeftVarious(@NonNull FieldKey field, @NonNull EditText editText) {
+        return getTags().isVarious(field) && editText.getText().length() == 0;
     }
 
-    @Nullable
-    protected String getGenreName() {
-        try {
-            return getAudioFile(songPaths.get(0)).getTagOrCreateAndSetDefault().getFirst(FieldKey.GENRE);
-        } catch (Exception ignored) {
-            return null;
+    /**
+     * Puts the text of the view for the field, unless the files keep their various values.
+     */
+    protected void putField(@NonNull Map<FieldKey, String> fieldKeyValueMap, @NonNull FieldKey field, @NonNull EditText editText) {
+        if (!isLeftVarious(field, editText)) {
+            fieldKeyValueMap.put(field, editText.getText().toString());
         }
     }
 
-    @Nullable
-    protected String getSongYear() {
-        try {
-            return getAudioFile(songPaths.get(0)).getTagOrCreateAndSetDefault().getFirst(FieldKey.YEAR);
-        } catch (Exception ignored) {
-            return null;
-        }
-    }
+    private static class ReadTagsAsyncTask extends WeakContextAsyncTask<Void, Void, TagSnapshot> {
+        @NonNull
+        private final List<String> paths;
 
-    @Nullable
-    protected String getTrackNumber() {
-        try {
-            return getAudioFile(songPaths.get(0)).getTagOrCreateAndSetDefault().getFirst(FieldKey.TRACK);
-        } catch (Exception ignored) {
-            return null;
+        ReadTagsAsyncTask(AbsTagEditorActivity activity, @NonNull List<String> paths) {
+            super(activity);
+            this.paths = paths;
         }
-    }
 
-    @Nullable
-    protected String getLyrics() {
-        try {
-            return getAudioFile(songPaths.get(0)).getTagOrCreateAndSetDefault().getFirst(FieldKey.LYRICS);
-        } catch (Exception ignored) {
-            return null;
+        @Override
+        protected TagSnapshot doInBackground(Void... params) {
+            List<TagSnapshot> snapshots = new ArrayList<>(paths.size());
+            for (int i = 0; i < paths.size() && !isCancelled(); i++) {
+                // only the artwork of the first file is shown
+                snapshots.add(TagSnapshot.read(paths.get(i), i == 0));
+            }
+            return TagSnapshot.merge(snapshots);
         }
-    }
 
-    @Nullable
-    protected Bitmap getAlbumArt() {
-        try {
-            Artwork artworkTag = getAudioFile(songPaths.get(0)).getTagOrCreateAndSetDefault().getFirstArtwork();
-            if (artworkTag != null) {
-                byte[] artworkBinaryData = artworkTag.getBinaryData();
-                return BitmapFactory.decodeByteArray(artworkBinaryData, 0, artworkBinaryData.length);
+        @Override
+        protected void onPostExecute(TagSnapshot tags) {
+            AbsTagEditorActivity activity = (AbsTagEditorActivity) getContext();
+            if (activity != null && !activity.isFinishing()) {
+                activity.onTagsRead(tags);
             }
-            return null;
-        } catch (Exception ignored) {
-            return null;
         }
     }
 }
@@ -64,29 +64,23 @@ public class AlbumTagEditorActivity extends AbsTagEditorActivity implements Text
         ButterKnife.bind(this);
 
         lastFMRestClient = new LastFMRestClient(this);
-
-        setUpViews();
     }
 
-    private void setUpViews() {
-        fillViewsWithFileTags();
+    @Override
+    protected void bindTags(@NonNull TagSnapshot tags) {
+        bindField(albumTitle, FieldKey.ALBUM);
+        bindField(albumArtist, FieldKey.ALBUM_ARTIST);
+        bindField(genre, FieldKey.GENRE);
+        bindField(year, FieldKey.YEAR);
         albumTitle.addTextChangedListener(this);
         albumArtist.addTextChangedListener(this);
         genre.addTextChangedListener(this);
         year.addTextChangedListener(this);
     }
 
-
-    private void fillViewsWithFileTags() {
-        albumTitle.setText(getAlbumTitle());
-        albumArtist.setText(getAlbumArtistName());
-        genre.setText(getGenreName());
-        year.setText(getSongYear());
-    }
-
     @Override
     protected void loadCurrentImage() {
-        Bitmap bitmap = getAlbumArt();
+        Bitmap bitmap = getTags().decodeArtwork();
         setImageBitmap(bitmap, PhonographColorUtil.getColor(PhonographColorUtil.generatePalette(bitmap), ATHUtil.resolveColor(this, R.attr.defaultFooterColor)));
         deleteAlbumArt = false;
     }
@@ -162,12 +156,14 @@ public class AlbumTagEditorActivity extends AbsTagEditorActivity implements Text
     @Override
     protected void save() {
         Map<FieldKey, String> fieldKeyValueMap = new EnumMap<>(FieldKey.class);
-        fieldKeyValueMap.put(FieldKey.ALBUM, albumTitle.getText().toString());
-        //android seems not to recognize album_artist field so we additionally write the normal artist field
-        fieldKeyValueMap.put(FieldKey.ARTIST, albumArtist.getText().toString());
-        fieldKeyValueMap.put(FieldKey.ALBUM_ARTIST, albumArtist.getText().toString());
-        fieldKeyValueMap.put(FieldKey.GENRE, genre.getText().toString());
-        fieldKeyValueMap.put(FieldKey.YEAR, year.getText().toString());
+        putField(fieldKeyValueMap, FieldKey.ALBUM, albumTitle);
+        if (!isLeftVarious(FieldKey.ALBUM_ARTIST, albumArtist)) {
+            //android seems not to recognize album_artist field so we additionally write the normal artist field
+            fieldKeyValueMap.put(FieldKey.ARTIST, albumArtist.getText().toString());
+            fieldKeyValueMap.put(FieldKey.ALBUM_ARTIST, albumArtist.getText().toString());
+        }
+        putField(fieldKeyValueMap, FieldKey.GENRE, genre);
+        putField(fieldKeyValueMap, FieldKey.YEAR, year);
 
         writeValuesToFiles(fieldKeyValueMap, deleteAlbumArt ? new ArtworkInfo(getId(), null) : albumArtBitmap == null ? null : new ArtworkInfo(getId(), albumArtBitmap));
     }
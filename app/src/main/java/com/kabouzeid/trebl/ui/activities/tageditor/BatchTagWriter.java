@@ -0,0 +1,431 @@
+package com.kabouzeid.trebl.ui.activities.tageditor;
+
+import android.content.Context;
+import android.media.MediaScannerConnection;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jaudiotagger.audio.AudioFile;
+import org.jaudiotagger.audio.AudioFileIO;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.images.Artwork;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the same tags to several files, all or nothing.
+ * <p>
+ * Every file is first copied to a hidden backup and a hidden temp file next to it, and the tags are written to the
+ * temp file, a few files at a time. Only when all temp files were written, their bytes are copied over the originals.
+ * The originals are overwritten in place instead of replaced by renames, so they keep their MediaStore rows and with
+ * them the audio ids that playlists, play counts and the queue refer to. If anything fails, the originals that were
+ * already overwritten get the bytes of their backups back, so the files are either all edited or all left as they
+ * were.
+ * <p>
+ * Each batch lists its files in a journal in the app's files directory, and marks the journal while it overwrites
+ * the originals. If the process dies on the way, {@link #recover(Context)} finds the journal on the next start: the
+ * originals of a marked journal get the bytes of their backups back, and the hidden copies are deleted. A batch only
+ * starts if every directory has room for the backup and the temp copy of all its files.
+ */
+public final class BatchTagWriter {
+    private static final String TAG = BatchTagWriter.class.getSimpleName();
+
+    // bound by the storage, not the cpu
+    private static final int POOL_SIZE = 2;
+
+    private static final ExecutorService writeExecutor = Executors.newFixedThreadPool(POOL_SIZE);
+    // the format writers of jaudiotagger are shared instances that aren't meant to be used concurrently
+    private static final Object COMMIT_LOCK = new Object();
+
+    private static final String TEMP_PREFIX = ".tagedit-";
+    private static final String BACKUP_PREFIX = ".tagbackup-";
+
+    private static final String JOURNAL_DIRECTORY = "tagedit";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    // present while the originals are overwritten
+    private static final String APPLYING_SUFFIX = ".applying";
+
+    // the batches wait for it, the copies of their files are named the same as those of the recovered batches
+    @Nullable
+    private static volatile Future<?> recovery;
+
+    public interface ProgressListener {
+        /**
+         * Called from the writing threads after every file.
+         */
+        void onProgress(int written, int total);
+    }
+
+    @NonNull
+    private final File journalDirectory;
+    @NonNull
+    private final List<String> paths;
+    @Nullable
+    private final Map<FieldKey, String> fieldKeyValueMap;
+    @Nullable
+    private final Artwork artwork;
+    private final boolean deleteArtwork;
+
+    /**
+     * @param artwork       the artwork to set, created once and shared by all files
+     * @param deleteArtwork whether to remove the artwork, ignored if an artwork is set
+     */
+    public BatchTagWriter(@NonNull Context context, @NonNull Collection<String> paths, @Nullable Map<FieldKey, String> fieldKeyValueMap, @Nullable Artwork artwork, boolean deleteArtwork) {
+        this.journalDirectory = new File(context.getFilesDir(), JOURNAL_DIRECTORY);
+        // the copies of a file are named after it, so each file may only be written once
+        this.paths = new ArrayList<>(new LinkedHashSet<>(paths));
+        this.fieldKeyValueMap = fieldKeyValueMap;
+        this.artwork = artwork;
+        this.deleteArtwork = deleteArtwork;
+    }
+
+    /**
+     * Blocks until all files are written or the batch was rolled back, don't call on the main thread.
+     *
+     * @return whether the tags were written to all files.
+     */
+    public boolean write(@Nullable final ProgressListener listener) {
+        if (!awaitRecovery()) {
+            return false;
+        }
+        if (!hasSpace()) {
+            Log.e(TAG, "Not enough space to write the tags of " + paths.size() + " files");
+            return false;
+        }
+        final File journal;
+        try {
+            journal = createJournal();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not create the journal", e);
+            return false;
+        }
+
+        final int total = paths.size();
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        final List<Future<Void>> futures = new ArrayList<>(total);
+        for (final String path : paths) {
+            futures.add(writeExecutor.submit(() -> {
+                if (failed.get()) {
+                    // the batch is rolled back anyway
+                    return null;
+                }
+                try {
+                    stage(new File(path));
+                    if (listener != null) {
+                        listener.onProgress(written.incrementAndGet(), total);
+                    }
+                    return null;
+                } catch (Exception e) {
+                    failed.set(true);
+                    throw e;
+                }
+            }));
+        }
+
+        // wait for every task, so no file is still being written during the clean up
+        boolean interrupted = false;
+        for (int i = 0; i < total; i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                failed.set(true);
+                // wait for this one again
+                i--;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Could not write the tags of " + paths.get(i), e.getCause());
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failed.get()) {
+            deleteCopies(paths);
+            delete(journal);
+            return false;
+        }
+        final File applying = new File(journal.getPath() + APPLYING_SUFFIX);
+        try {
+            createFile(applying);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not mark the journal", e);
+            deleteCopies(paths);
+            delete(journal);
+            return false;
+        }
+        final int applied = apply();
+        final boolean success = applied == total;
+        if (!success) {
+            Log.e(TAG, "Rolling back the tags of " + total + " files");
+        }
+        // the file that failed may be partly overwritten
+        if (success || restore(paths.subList(0, applied + 1))) {
+            delete(applying);
+            deleteCopies(paths);
+            delete(journal);
+        }
+        // otherwise everything is left for the next recovery
+        return success;
+    }
+
+    /**
+     * Finishes the batches a killed process left behind, the files they were overwriting get their old bytes back.
+     * Runs in the background.
+     */
+    public static void recover(@NonNull final Context context) {
+        final File journalDirectory = new File(context.getFilesDir(), JOURNAL_DIRECTORY);
+        recovery = writeExecutor.submit(() -> {
+            final File[] journals = journalDirectory.listFiles((dir, name) -> name.endsWith(JOURNAL_SUFFIX));
+            if (journals == null) {
+                return;
+            }
+            for (File journal : journals) {
+                final List<String> paths;
+                try {
+                    paths = readJournal(journal);
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not read " + journal, e);
+                    continue;
+                }
+                final File applying = new File(journal.getPath() + APPLYING_SUFFIX);
+                if (applying.exists()) {
+                    if (!restore(paths)) {
+                        // tried again on the next start
+                        continue;
+                    }
+                    Log.w(TAG, "Restored " + paths.size() + " files of an interrupted batch");
+                    MediaScannerConnection.scanFile(context, paths.toArray(new String[0]), null, null);
+                    delete(applying);
+                }
+                deleteCopies(paths);
+                delete(journal);
+            }
+        });
+    }
+
+    /**
+     * @return false if the thread was interrupted while waiting for the recovery
+     */
+    private static boolean awaitRecovery() {
+        final Future<?> recovery = BatchTagWriter.recovery;
+        if (recovery == null) {
+            return true;
+        }
+        try {
+            recovery.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Could not recover the interrupted batches", e.getCause());
+        }
+        return true;
+    }
+
+    /**
+     * Every directory needs room for the backup and the temp copy of all files, as directories on the same storage
+     * share their space. The temp copies may grow by the artwork.
+     */
+    private boolean hasSpace() {
+        final long artworkSize = artwork == null || artwork.getBinaryData() == null ? 0 : artwork.getBinaryData().length;
+        long required = 0;
+        final Set<File> directories = new HashSet<>();
+        for (String path : paths) {
+            final File file = new File(path);
+            required += 2 * file.length() + artworkSize;
+            directories.add(file.getAbsoluteFile().getParentFile());
+        }
+        for (File directory : directories) {
+            if (directory == null || directory.getUsableSpace() < required) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Backs the file up and writes the tags to a temp copy of it, the file itself isn't touched yet.
+     */
+    private void stage(@NonNull final File file) throws Exception {
+        final File backup = getBackup(file);
+        final File temp = getTemp(file);
+        try {
+            copy(file, backup);
+            copy(backup, temp);
+
+            final AudioFile audioFile = AudioFileIO.read(temp);
+            final Tag tag = audioFile.getTagOrCreateAndSetDefault();
+            if (fieldKeyValueMap != null) {
+                for (Map.Entry<FieldKey, String> entry : fieldKeyValueMap.entrySet()) {
+                    try {
+                        tag.setField(entry.getKey(), entry.getValue());
+                    } catch (Exception e) {
+                        // not supported by this tag format, same as before
+                        e.printStackTrace();
+                    }
+                }
+            }
+            if (artwork != null) {
+                tag.deleteArtworkField();
+                tag.setField(artwork);
+            } else if (deleteArtwork) {
+                tag.deleteArtworkField();
+            }
+            synchronized (COMMIT_LOCK) {
+                audioFile.commit();
+            }
+        } catch (Exception e) {
+            delete(backup);
+            delete(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the edited bytes over the originals, stops at the first one that fails.
+     *
+     * @return the number of files that were overwritten
+     */
+    private int apply() {
+        for (int i = 0; i < paths.size(); i++) {
+            final File file = new File(paths.get(i));
+            try {
+                copy(getTemp(file), file);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not overwrite " + file, e);
+                return i;
+            }
+        }
+        return paths.size();
+    }
+
+    /**
+     * @return whether all files that have a backup got its bytes back
+     */
+    private static boolean restore(@NonNull final List<String> paths) {
+        boolean restored = true;
+        for (String path : paths) {
+            final File file = new File(path);
+            final File backup = getBackup(file);
+            if (!backup.exists()) {
+                continue;
+            }
+            try {
+                copy(backup, file);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not restore " + path + " from " + backup, e);
+                restored = false;
+            }
+        }
+        return restored;
+    }
+
+    @NonNull
+    private File createJournal() throws IOException {
+        if (!journalDirectory.isDirectory() && !journalDirectory.mkdirs()) {
+            throw new IOException("Could not create " + journalDirectory);
+        }
+        final File journal = File.createTempFile("batch", JOURNAL_SUFFIX, journalDirectory);
+        try (FileOutputStream out = new FileOutputStream(journal)) {
+            final Writer writer = new OutputStreamWriter(out, "UTF-8");
+            for (String path : paths) {
+                writer.write(path);
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            delete(journal);
+            throw e;
+        }
+        return journal;
+    }
+
+    @NonNull
+    private static List<String> readJournal(@NonNull final File journal) throws IOException {
+        final List<String> paths = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(journal))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    paths.add(line);
+                }
+            }
+        }
+        return paths;
+    }
+
+    private static void createFile(@NonNull final File file) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * The hidden copies keep the extension of the file, which jaudiotagger needs to detect the format.
+     */
+    @NonNull
+    private static File getTemp(@NonNull final File file) {
+        return new File(file.getAbsoluteFile().getParentFile(), TEMP_PREFIX + file.getName());
+    }
+
+    @NonNull
+    private static File getBackup(@NonNull final File file) {
+        return new File(file.getAbsoluteFile().getParentFile(), BACKUP_PREFIX + file.getName());
+    }
+
+    private static void deleteCopies(@NonNull final List<String> paths) {
+        for (String path : paths) {
+            final File file = new File(path);
+            delete(getTemp(file));
+            delete(getBackup(file));
+        }
+    }
+
+    /**
+     * Overwrites the target in place, it keeps its inode and so its MediaStore row.
+     */
+    private static void copy(@NonNull final File from, @NonNull final File to) throws IOException {
+        try (FileChannel in = new FileInputStream(from).getChannel();
+             FileChannel out = new FileOutputStream(to).getChannel()) {
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            out.force(false);
+        }
+    }
+
+    private static void delete(@NonNull final File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+}
@@ -44,14 +44,20 @@ public class SongTagEditorActivity extends AbsTagEditorActivity implements TextW
         ButterKnife.bind(this);
 
         setNoImageMode();
-        setUpViews();
 
         //noinspection ConstantConditions
         getSupportActionBar().setTitle(R.string.action_tag_editor);
     }
 
-    private void setUpViews() {
-        fillViewsWithFileTags();
+    @Override
+    protected void bindTags(@NonNull TagSnapshot tags) {
+        bindField(songTitle, FieldKey.TITLE);
+        bindField(albumTitle, FieldKey.ALBUM);
+        bindField(artist, FieldKey.ARTIST);
+        bindField(genre, FieldKey.GENRE);
+        bindField(year, FieldKey.YEAR);
+        bindField(trackNumber, FieldKey.TRACK);
+        bindField(lyrics, FieldKey.LYRICS);
         songTitle.addTextChangedListener(this);
         albumTitle.addTextChangedListener(this);
         artist.addTextChangedListener(this);
@@ -61,16 +67,6 @@ public class SongTagEditorActivity extends AbsTagEditorActivity implements TextW
         lyrics.addTextChangedListener(this);
     }
 
-    private void fillViewsWithFileTags() {
-        songTitle.setText(getSongTitle());
-        albumTitle.setText(getAlbumTitle());
-        artist.setText(getArtistName());
-        genre.setText(getGenreName());
-        year.setText(getSongYear());
-        trackNumber.setText(getTrackNumber());
-        lyrics.setText(getLyrics());
-    }
-
     @Override
     protected void loadCurrentImage() {
 
@@ -94,13 +90,13 @@ public class SongTagEditorActivity extends AbsTagEditorActivity implements TextW
     @Override
     protected void save() {
         Map<FieldKey, String> fieldKeyValueMap = new EnumMap<>(FieldKey.class);
-        fieldKeyValueMap.put(FieldKey.TITLE, songTitle.getText().toString());
-        fieldKeyValueMap.put(FieldKey.ALBUM, albumTitle.getText().toString());
-        fieldKeyValueMap.put(FieldKey.ARTIST, artist.getText().toString());
-        fieldKeyValueMap.put(FieldKey.GENRE, genre.getText().toString());
-        fieldKeyValueMap.put(FieldKey.YEAR, year.getText().toString());
-        fieldKeyValueMap.put(FieldKey.TRACK, trackNumber.getText().toString());
-        fieldKeyValueMap.put(FieldKey.LYRICS, lyrics.getText().toString());
+        putField(fieldKeyValueMap, FieldKey.TITLE, songTitle);
+        putField(fieldKeyValueMap, FieldKey.ALBUM, albumTitle);
+        putField(fieldKeyValueMap, FieldKey.ARTIST, artist);
+        putField(fieldKeyValueMap, FieldKey.GENRE, genre);
+        putField(fieldKeyValueMap, FieldKey.YEAR, year);
+        putField(fieldKeyValueMap, FieldKey.TRACK, trackNumber);
+        putField(fieldKeyValueMap, FieldKey.LYRICS, lyrics);
         writeValuesToFiles(fieldKeyValueMap, null);
     }
 
@@ -0,0 +1,144 @@
+package com.kabouzeid.trebl.ui.activities.tageditor;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jaudiotagger.audio.AudioFileIO;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.images.Artwork;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The editable tags of one file, or of several files merged, read once.
+ * <p>
+ * When merging, a field keeps its value if it is the same in all files and is marked as various otherwise. The
+ * artwork is the one of the first file.
+ */
+public final class TagSnapshot {
+    private static final String TAG = TagSnapshot.class.getSimpleName();
+
+    public static final FieldKey[] FIELDS = {
+            FieldKey.TITLE,
+            FieldKey.ALBUM,
+            FieldKey.ARTIST,
+            FieldKey.ALBUM_ARTIST,
+            FieldKey.GENRE,
+            FieldKey.YEAR,
+            FieldKey.TRACK,
+            FieldKey.LYRICS
+    };
+
+    public static final TagSnapshot EMPTY = new TagSnapshot(new EnumMap<>(FieldKey.class), EnumSet.noneOf(FieldKey.class), null);
+
+    @NonNull
+    private final Map<FieldKey, String> values;
+    @NonNull
+    private final Set<FieldKey> variousFields;
+    @Nullable
+    private final byte[] artwork;
+
+    private TagSnapshot(@NonNull Map<FieldKey, String> values, @NonNull Set<FieldKey> variousFields, @Nullable byte[] artwork) {
+        this.values = Collections.unmodifiableMap(values);
+        this.variousFields = Collections.unmodifiableSet(variousFields);
+        this.artwork = artwork;
+    }
+
+    /**
+     * Parses the file once. A file that can't be read has no values.
+     *
+     * @param withArtwork whether to keep the binary data of the artwork as well
+     */
+    @NonNull
+    public static TagSnapshot read(@NonNull String path, boolean withArtwork) {
+        final Map<FieldKey, String> values = new EnumMap<>(FieldKey.class);
+        byte[] artwork = null;
+        try {
+            final Tag tag = AudioFileIO.read(new File(path)).getTagOrCreateAndSetDefault();
+            for (FieldKey field : FIELDS) {
+                try {
+                    values.put(field, tag.getFirst(field));
+                } catch (Exception ignored) {
+                    // not supported by this tag format
+                }
+            }
+            if (withArtwork) {
+                final Artwork artworkTag = tag.getFirstArtwork();
+                if (artworkTag != null) {
+                    artwork = artworkTag.getBinaryData();
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Could not read audio file " + path, e);
+        }
+        return new TagSnapshot(values, EnumSet.noneOf(FieldKey.class), artwork);
+    }
+
+    @NonNull
+    public static TagSnapshot merge(@NonNull List<TagSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return EMPTY;
+        }
+        if (snapshots.size() == 1) {
+            return snapshots.get(0);
+        }
+        final TagSnapshot first = snapshots.get(0);
+        final Map<FieldKey, String> values = new EnumMap<>(FieldKey.class);
+        final Set<FieldKey> variousFields = EnumSet.noneOf(FieldKey.class);
+        for (FieldKey field : FIELDS) {
+            final String value = first.get(field);
+            for (int i = 1; i < snapshots.size(); i++) {
+                if (!equals(value, snapshots.get(i).get(field))) {
+                    variousFields.add(field);
+                    break;
+                }
+            }
+            if (!variousFields.contains(field) && value != null) {
+                values.put(field, value);
+            }
+        }
+        return new TagSnapshot(values, variousFields, first.artwork);
+    }
+
+    /**
+     * @return the value of the field, null if there is none or if it is various.
+     */
+    @Nullable
+    public String get(@NonNull FieldKey field) {
+        return values.get(field);
+    }
+
+    /**
+     * @return whether the merged files have different values for the field.
+     */
+    public boolean isVarious(@NonNull FieldKey field) {
+        return variousFields.contains(field);
+    }
+
+    @Nullable
+    public Bitmap decodeArtwork() {
+        if (artwork == null) {
+            return null;
+        }
+        try {
+            return BitmapFactory.decodeByteArray(artwork, 0, artwork.length);
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    private static boolean equals(@Nullable String a, @Nullable String b) {
+        // a missing field and an empty one look the same in the editor
+        return (a == null ? "" : a).equals(b == null ? "" : b);
+    }
+}
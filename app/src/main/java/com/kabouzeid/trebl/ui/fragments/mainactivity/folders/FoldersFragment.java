@@ -45,6 +45,7 @@ import com.kabouzeid.trebl.helper.menu.SongMenuHelper;
 import com.kabouzeid.trebl.helper.menu.SongsMenuHelper;
 import com.kabouzeid.trebl.interfaces.CabHolder;
 import com.kabouzeid.trebl.interfaces.LoaderIds;
+import com.kabouzeid.trebl.loader.BatchedSongLoader;
 import com.kabouzeid.trebl.misc.DialogAsyncTask;
 import com.kabouzeid.trebl.misc.UpdateToastMediaScannerCompletionListener;
 import com.kabouzeid.trebl.misc.WrappedAsyncTaskLoader;
@@ -53,6 +54,7 @@ import com.kabouzeid.trebl.ui.activities.MainActivity;
 import com.kabouzeid.trebl.ui.fragments.mainactivity.AbsMainActivityFragment;
 import com.kabouzeid.trebl.ui.fragments.mainactivity.library.LibraryFragment;
 import com.kabouzeid.trebl.util.FileUtil;
+import com.kabouzeid.trebl.util.ParallelFileWalker;
 import com.kabouzeid.trebl.util.PhonographColorUtil;
 import com.kabouzeid.trebl.util.PreferenceUtil;
 import com.kabouzeid.trebl.util.ViewUtil;
@@ -403,6 +405,23 @@ public class FoldersFragment extends AbsMainActivityFragment implements MainActi
             popupMenu.setOnMenuItemClickListener(item -> {
                 final int itemId = item.getItemId();
                 switch (itemId) {
+                    case R.id.action_play:
+                        // starts with the first songs found, the others are appended while the folder is walked
+                        new ListSongsAsyncTask(getActivity(), null, new ListSongsAsyncTask.OnSongsFoundCallback() {
+                            private boolean playing;
+
+                            @Override
+                            public void onSongsFound(@NonNull List<Song> songs) {
+                                if (playing) {
+                                    MusicPlayerRemote.appendToQueue(songs);
+                                } else {
+                                    MusicPlayerRemote.openQueue(songs, 0, true);
+                                    playing = true;
+                                }
+                            }
+                        }, (songs, extra) -> {
+                        }).execute(new ListSongsAsyncTask.LoadingInfo(toList(file), AUDIO_FILE_FILTER, getFileComparator()));
+                        return true;
                     case R.id.action_play_next:
                     case R.id.action_add_to_current_playing:
                     case R.id.action_add_to_playlist:
@@ -530,14 +549,29 @@ public class FoldersFragment extends AbsMainActivityFragment implements MainActi
         }
     }
 
-    private static class ListSongsAsyncTask extends ListingFilesDialogAsyncTask<ListSongsAsyncTask.LoadingInfo, Void, List<Song>> {
+    private static class ListSongsAsyncTask extends ListingFilesDialogAsyncTask<ListSongsAsyncTask.LoadingInfo, List<Song>, List<Song>> {
+        private static final int BATCH_SIZE = BatchedSongLoader.CHUNK_SIZE;
+
         private WeakReference<Context> contextWeakReference;
         private WeakReference<OnSongsListedCallback> callbackWeakReference;
+        // held strongly, it may be the only reference to a callback that has to see every batch
+        @Nullable
+        private final OnSongsFoundCallback songsFoundCallback;
         private final Object extra;
+        @Nullable
+        private volatile ParallelFileWalker walker;
 
         public ListSongsAsyncTask(Context context, Object extra, OnSongsListedCallback callback) {
+            this(context, extra, null, callback);
+        }
+
+        /**
+         * @param songsFoundCallback gets the songs batch by batch, while the files are still being listed
+         */
+        public ListSongsAsyncTask(Context context, Object extra, @Nullable OnSongsFoundCallback songsFoundCallback, OnSongsListedCallback callback) {
             super(context, 500);
             this.extra = extra;
+            this.songsFoundCallback = songsFoundCallback;
             contextWeakReference = new WeakReference<>(context);
             callbackWeakReference = new WeakReference<>(callback);
         }
@@ -549,22 +583,33 @@ public class FoldersFragment extends AbsMainActivityFragment implements MainActi
             checkContextReference();
         }
 
+        @SuppressWarnings("unchecked")
         @Override
         protected List<Song> doInBackground(LoadingInfo... params) {
             try {
                 LoadingInfo info = params[0];
-                List<File> files = FileUtil.listFilesDeep(info.files, info.fileFilter);
-
-                if (isCancelled() || checkContextReference() == null || checkCallbackReference() == null)
-                    return null;
-
-                Collections.sort(files, info.fileComparator);
+                final ParallelFileWalker walker = new ParallelFileWalker(info.fileFilter, info.fileComparator);
+                this.walker = walker;
+                if (isCancelled()) return null;
+
+                final List<Song> songs = new ArrayList<>();
+                final boolean completed = walker.walk(info.files, BATCH_SIZE, files -> {
+                    Context context = checkContextReference();
+                    if (isCancelled() || context == null || checkCallbackReference() == null) {
+                        walker.cancel();
+                        return;
+                    }
+                    List<Song> batch = FileUtil.matchCanonicalFilesWithMediaStore(context, files);
+                    songs.addAll(batch);
+                    if (songsFoundCallback != null && !batch.isEmpty()) {
+                        publishProgress(batch);
+                    }
+                });
 
-                Context context = checkContextReference();
-                if (isCancelled() || context == null || checkCallbackReference() == null)
+                if (!completed || isCancelled() || checkCallbackReference() == null)
                     return null;
 
-                return FileUtil.matchFilesWithMediaStore(context, files);
+                return songs;
             } catch (Exception e) {
                 e.printStackTrace();
                 cancel(false);
@@ -572,6 +617,26 @@ public class FoldersFragment extends AbsMainActivityFragment implements MainActi
             }
         }
 
+        @SuppressWarnings("unchecked")
+        @Override
+        protected void onProgressUpdate(List<Song>... batches) {
+            super.onProgressUpdate(batches);
+            if (songsFoundCallback != null && !isCancelled()) {
+                for (List<Song> batch : batches) {
+                    songsFoundCallback.onSongsFound(batch);
+                }
+            }
+        }
+
+        @Override
+        protected void onCancelled(List<Song> songs) {
+            super.onCancelled(songs);
+            ParallelFileWalker walker = this.walker;
+            if (walker != null) {
+                walker.cancel();
+            }
+        }
+
         @Override
         protected void onPostExecute(List<Song> songs) {
             super.onPostExecute(songs);
@@ -611,6 +676,10 @@ public class FoldersFragment extends AbsMainActivityFragment implements MainActi
         public interface OnSongsListedCallback {
             void onSongsListed(@NonNull List<Song> songs, Object extra);
         }
+
+        public interface OnSongsFoundCallback {
+            void onSongsFound(@NonNull List<Song> songs);
+        }
     }
 
     public static class ArrayListPathsAsyncTask extends ListingFilesDialogAsyncTask<ArrayListPathsAsyncTask.LoadingInfo, String, String[]> {
@@ -637,17 +706,22 @@ public class FoldersFragment extends AbsMainActivityFragment implements MainActi
                 final String[] paths;
 
                 if (info.file.isDirectory()) {
-                    List<File> files = FileUtil.listFilesDeep(info.file, info.fileFilter);
-
-                    if (isCancelled() || checkCallbackReference() == null) return null;
-
-                    paths = new String[files.size()];
-                    for (int i = 0; i < files.size(); i++) {
-                        File f = files.get(i);
-                        paths[i] = FileUtil.safeGetCanonicalPath(f);
-
-                        if (isCancelled() || checkCallbackReference() == null) return null;
-                    }
+                    final ParallelFileWalker walker = new ParallelFileWalker(info.fileFilter, null);
+                    final List<String> found = new ArrayList<>();
+                    // the walker canonicalizes the directories, the paths of the files in them are canonical already
+                    walker.walk(Collections.singletonList(info.file), BatchedSongLoader.CHUNK_SIZE, files -> {
+                        if (isCancelled() || checkCallbackReference() == null) {
+                            walker.cancel();
+                            return;
+                        }
+                        for (File file : files) {
+                            found.add(file.getPath());
+                        }
+                    });
+
+                    if (walker.isCancelled() || isCancelled() || checkCallbackReference() == null) return null;
+
+                    paths = found.toArray(new String[0]);
                 } else {
                     paths = new String[1];
                     paths[0] = FileUtil.safeGetCanonicalPath(info.file);
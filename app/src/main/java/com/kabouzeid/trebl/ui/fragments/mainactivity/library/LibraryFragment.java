@@ -7,6 +7,7 @@ import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
+import android.os.AsyncTask;
 import android.os.Bundle;
 
 import androidx.annotation.ColorInt;
@@ -43,6 +44,7 @@ import com.kabouzeid.trebl.dialogs.ScanMediaFolderChooserDialog;
 import com.kabouzeid.trebl.helper.MusicPlayerRemote;
 import com.kabouzeid.trebl.helper.SortOrder;
 import com.kabouzeid.trebl.interfaces.CabHolder;
+import com.kabouzeid.trebl.loader.LibraryIndex;
 import com.kabouzeid.trebl.loader.PlaylistLoader;
 import com.kabouzeid.trebl.loader.SongLoader;
 import com.kabouzeid.trebl.misc.WeakContextAsyncTask;
@@ -51,6 +53,7 @@ import com.kabouzeid.trebl.model.smartplaylist.AbsSmartPlaylist;
 import com.kabouzeid.trebl.util.PlaylistsUtil;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 import com.kabouzeid.trebl.ui.activities.EqualizerActivity;
@@ -59,6 +62,7 @@ import com.kabouzeid.trebl.ui.activities.SearchActivity;
 import com.superwall.sdk.Superwall;
 import com.superwall.sdk.paywall.presentation.PublicPresentationKt;
 import com.kabouzeid.trebl.ui.fragments.mainactivity.AbsMainActivityFragment;
+import com.kabouzeid.trebl.ui.fragments.mainactivity.library.pager.AbsLibraryPagerFragment;
 import com.kabouzeid.trebl.ui.fragments.mainactivity.library.pager.AbsLibraryPagerRecyclerViewCustomGridSizeFragment;
 import com.kabouzeid.trebl.ui.fragments.mainactivity.library.pager.AlbumsFragment;
 import com.kabouzeid.trebl.ui.fragments.mainactivity.library.pager.ArtistsFragment;
@@ -141,6 +145,18 @@ public class LibraryFragment extends AbsMainActivityFragment implements CabHolde
         setUpToolbar();
         setUpViewPager();
         setUpShuffleFab();
+
+        // the tabs render from the library snapshot, bring it up to date in the background
+        new ReconcileLibraryTask(this).execute();
+    }
+
+    private void reloadLibraryPages() {
+        for (int i = 0; i < pagerAdapter.getCount(); i++) {
+            Fragment fragment = pagerAdapter.getFragment(i);
+            if (fragment.isAdded() && (fragment instanceof SongsFragment || fragment instanceof AlbumsFragment || fragment instanceof ArtistsFragment)) {
+                ((AbsLibraryPagerFragment) fragment).onMediaStoreChanged();
+            }
+        }
     }
 
     @Override
@@ -504,6 +520,27 @@ public class LibraryFragment extends AbsMainActivityFragment implements CabHolde
         new ExportAllPlaylistsTask(activity).execute(exportablePlaylists);
     }
 
+    private static class ReconcileLibraryTask extends AsyncTask<Void, Void, Boolean> {
+        private final WeakReference<LibraryFragment> fragmentWeakReference;
+
+        public ReconcileLibraryTask(LibraryFragment libraryFragment) {
+            fragmentWeakReference = new WeakReference<>(libraryFragment);
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... params) {
+            return LibraryIndex.reconcile(App.getInstance().getApplicationContext());
+        }
+
+        @Override
+        protected void onPostExecute(Boolean changed) {
+            LibraryFragment libraryFragment = fragmentWeakReference.get();
+            if (changed && libraryFragment != null && libraryFragment.isAdded() && libraryFragment.pagerAdapter != null) {
+                libraryFragment.reloadLibraryPages();
+            }
+        }
+    }
+
     private static class ExportAllPlaylistsTask extends WeakContextAsyncTask<List<Playlist>, Void, String> {
         public ExportAllPlaylistsTask(Context context) {
             super(context);
@@ -10,7 +10,7 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.adapter.album.AlbumAdapter;
 import com.kabouzeid.trebl.interfaces.LoaderIds;
-import com.kabouzeid.trebl.loader.AlbumLoader;
+import com.kabouzeid.trebl.loader.LibraryIndex;
 import com.kabouzeid.trebl.misc.WrappedAsyncTaskLoader;
 import com.kabouzeid.trebl.model.Album;
 import com.kabouzeid.trebl.util.PreferenceUtil;
@@ -21,10 +21,12 @@ import java.util.List;
 /**
  * @author Karim Abou Zeid (kabouzeid)
  */
-public class AlbumsFragment extends AbsLibraryPagerRecyclerViewCustomGridSizeFragment<AlbumAdapter, GridLayoutManager> implements LoaderManager.LoaderCallbacks<List<Album>> {
+public class AlbumsFragment extends AbsLibraryPagerRecyclerViewCustomGridSizeFragment<AlbumAdapter, GridLayoutManager> implements LoaderManager.LoaderCallbacks<LibraryIndex> {
 
     private static final int LOADER_ID = LoaderIds.ALBUMS_FRAGMENT;
 
+    private int shownGeneration = LibraryIndex.NO_GENERATION;
+
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
@@ -117,28 +119,30 @@ public class AlbumsFragment extends AbsLibraryPagerRecyclerViewCustomGridSizeFra
     }
 
     @Override
-    public Loader<List<Album>> onCreateLoader(int id, Bundle args) {
+    public Loader<LibraryIndex> onCreateLoader(int id, Bundle args) {
         return new AsyncAlbumLoader(getActivity());
     }
 
     @Override
-    public void onLoadFinished(Loader<List<Album>> loader, List<Album> data) {
-        getAdapter().swapDataSet(data);
+    public void onLoadFinished(Loader<LibraryIndex> loader, LibraryIndex data) {
+        getAdapter().swapDataSet(data.getAlbums(), data.getChangeSetSince(shownGeneration));
+        shownGeneration = data.getGeneration();
     }
 
     @Override
-    public void onLoaderReset(Loader<List<Album>> loader) {
+    public void onLoaderReset(Loader<LibraryIndex> loader) {
+        shownGeneration = LibraryIndex.NO_GENERATION;
         getAdapter().swapDataSet(new ArrayList<>());
     }
 
-    private static class AsyncAlbumLoader extends WrappedAsyncTaskLoader<List<Album>> {
+    private static class AsyncAlbumLoader extends WrappedAsyncTaskLoader<LibraryIndex> {
         public AsyncAlbumLoader(Context context) {
             super(context);
         }
 
         @Override
-        public List<Album> loadInBackground() {
-            return AlbumLoader.getAllAlbums(getContext());
+        public LibraryIndex loadInBackground() {
+            return LibraryIndex.getInstance(getContext());
         }
     }
 }
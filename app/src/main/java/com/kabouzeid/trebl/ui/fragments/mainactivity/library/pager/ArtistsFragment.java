@@ -10,7 +10,7 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.adapter.artist.ArtistAdapter;
 import com.kabouzeid.trebl.interfaces.LoaderIds;
-import com.kabouzeid.trebl.loader.ArtistLoader;
+import com.kabouzeid.trebl.loader.LibraryIndex;
 import com.kabouzeid.trebl.misc.WrappedAsyncTaskLoader;
 import com.kabouzeid.trebl.model.Artist;
 import com.kabouzeid.trebl.util.PreferenceUtil;
@@ -21,10 +21,12 @@ import java.util.List;
 /**
  * @author Karim Abou Zeid (kabouzeid)
  */
-public class ArtistsFragment extends AbsLibraryPagerRecyclerViewCustomGridSizeFragment<ArtistAdapter, GridLayoutManager> implements LoaderManager.LoaderCallbacks<List<Artist>> {
+public class ArtistsFragment extends AbsLibraryPagerRecyclerViewCustomGridSizeFragment<ArtistAdapter, GridLayoutManager> implements LoaderManager.LoaderCallbacks<LibraryIndex> {
 
     private static final int LOADER_ID = LoaderIds.ARTISTS_FRAGMENT;
 
+    private int shownGeneration = LibraryIndex.NO_GENERATION;
+
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
@@ -119,30 +121,32 @@ public class ArtistsFragment extends AbsLibraryPagerRecyclerViewCustomGridSizeFr
 
 
     @Override
-    public Loader<List<Artist>> onCreateLoader(int id, Bundle args) {
+    public Loader<LibraryIndex> onCreateLoader(int id, Bundle args) {
         return new AsyncArtistLoader(getActivity());
     }
 
 
     @Override
-    public void onLoadFinished(Loader<List<Artist>> loader, List<Artist> data) {
-        getAdapter().swapDataSet(data);
+    public void onLoadFinished(Loader<LibraryIndex> loader, LibraryIndex data) {
+        getAdapter().swapDataSet(data.getArtists(), data.getChangeSetSince(shownGeneration));
+        shownGeneration = data.getGeneration();
     }
 
 
     @Override
-    public void onLoaderReset(Loader<List<Artist>> loader) {
+    public void onLoaderReset(Loader<LibraryIndex> loader) {
+        shownGeneration = LibraryIndex.NO_GENERATION;
         getAdapter().swapDataSet(new ArrayList<>());
     }
 
-    private static class AsyncArtistLoader extends WrappedAsyncTaskLoader<List<Artist>> {
+    private static class AsyncArtistLoader extends WrappedAsyncTaskLoader<LibraryIndex> {
         public AsyncArtistLoader(Context context) {
             super(context);
         }
 
         @Override
-        public List<Artist> loadInBackground() {
-            return ArtistLoader.getAllArtists(getContext());
+        public LibraryIndex loadInBackground() {
+            return LibraryIndex.getInstance(getContext());
         }
     }
 }
@@ -10,7 +10,7 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.adapter.song.SongAdapter;
 import com.kabouzeid.trebl.interfaces.LoaderIds;
-import com.kabouzeid.trebl.loader.SongLoader;
+import com.kabouzeid.trebl.loader.LibraryIndex;
 import com.kabouzeid.trebl.misc.WrappedAsyncTaskLoader;
 import com.kabouzeid.trebl.model.Song;
 import com.kabouzeid.trebl.util.PreferenceUtil;
@@ -21,10 +21,12 @@ import java.util.List;
 /**
  * @author Karim Abou Zeid (kabouzeid)
  */
-public class SongsFragment extends AbsLibraryPagerRecyclerViewCustomGridSizeFragment<SongAdapter, GridLayoutManager> implements LoaderManager.LoaderCallbacks<List<Song>> {
+public class SongsFragment extends AbsLibraryPagerRecyclerViewCustomGridSizeFragment<SongAdapter, GridLayoutManager> implements LoaderManager.LoaderCallbacks<LibraryIndex> {
 
     private static final int LOADER_ID = LoaderIds.SONGS_FRAGMENT;
 
+    private int shownGeneration = LibraryIndex.NO_GENERATION;
+
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
@@ -129,28 +131,30 @@ public class SongsFragment extends AbsLibraryPagerRecyclerViewCustomGridSizeFrag
     }
 
     @Override
-    public Loader<List<Song>> onCreateLoader(int id, Bundle args) {
+    public Loader<LibraryIndex> onCreateLoader(int id, Bundle args) {
         return new AsyncSongLoader(getActivity());
     }
 
     @Override
-    public void onLoadFinished(Loader<List<Song>> loader, List<Song> data) {
-        getAdapter().swapDataSet(data);
+    public void onLoadFinished(Loader<LibraryIndex> loader, LibraryIndex data) {
+        getAdapter().swapDataSet(data.getSongs(), data.getChangeSetSince(shownGeneration));
+        shownGeneration = data.getGeneration();
     }
 
     @Override
-    public void onLoaderReset(Loader<List<Song>> loader) {
+    public void onLoaderReset(Loader<LibraryIndex> loader) {
+        shownGeneration = LibraryIndex.NO_GENERATION;
         getAdapter().swapDataSet(new ArrayList<>());
     }
 
-    private static class AsyncSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
+    private static class AsyncSongLoader extends WrappedAsyncTaskLoader<LibraryIndex> {
         public AsyncSongLoader(Context context) {
             super(context);
         }
 
         @Override
-        public List<Song> loadInBackground() {
-            return SongLoader.getAllSongs(getContext());
+        public LibraryIndex loadInBackground() {
+            return LibraryIndex.getInstance(getContext());
         }
     }
 }
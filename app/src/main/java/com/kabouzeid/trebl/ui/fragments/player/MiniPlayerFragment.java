@@ -123,6 +123,7 @@ public class MiniPlayerFragment extends AbsMusicServiceFragment implements Music
         try {
             SongGlideRequest.Builder.from(Glide.with(getActivity()), MusicPlayerRemote.getCurrentSong())
                     .checkIgnoreMediaStore(getActivity())
+                    .size(SongGlideRequest.CoverSize.LIST)
                     .generatePalette(getActivity()).build()
                     .placeholder(R.drawable.default_album_art)
                     .error(R.drawable.default_album_art)
@@ -34,11 +34,13 @@ import com.kabouzeid.appthemehelper.ThemeStore;
 import com.kabouzeid.appthemehelper.util.ATHUtil;
 import com.kabouzeid.appthemehelper.util.ColorUtil;
 import com.kabouzeid.appthemehelper.util.ToolbarContentTintHelper;
+import com.kabouzeid.trebl.App;
 import com.kabouzeid.trebl.R;
 import com.kabouzeid.trebl.adapter.base.MediaEntryViewHolder;
 import com.kabouzeid.trebl.adapter.song.PlayingQueueAdapter;
 import com.kabouzeid.trebl.dialogs.LyricsDialog;
 import com.kabouzeid.trebl.dialogs.SongShareDialog;
+import com.kabouzeid.trebl.helper.LyricsResolver;
 import com.kabouzeid.trebl.helper.MusicPlayerRemote;
 import com.kabouzeid.trebl.helper.menu.SongMenuHelper;
 import com.kabouzeid.trebl.model.Song;
@@ -304,6 +306,7 @@ public class FlatPlayerFragment extends AbsPlayerFragment implements FlatPlayerA
     private void updateLyrics() {
         if (updateLyricsAsyncTask != null) updateLyricsAsyncTask.cancel(false);
         final Song song = MusicPlayerRemote.getCurrentSong();
+        final Song nextSong = MusicPlayerRemote.getNextSong();
         updateLyricsAsyncTask = new AsyncTask<Void, Void, Lyrics>() {
             @Override
             protected void onPreExecute() {
@@ -315,7 +318,9 @@ public class FlatPlayerFragment extends AbsPlayerFragment implements FlatPlayerA
 
             @Override
             protected Lyrics doInBackground(Void... params) {
-                String data = MusicUtil.getLyrics(song);
+                LyricsResolver lyricsResolver = LyricsResolver.getInstance(App.getInstance());
+                String data = lyricsResolver.getLyrics(song);
+                lyricsResolver.prefetch(nextSong);
                 if (TextUtils.isEmpty(data)) {
                     return null;
                 }
@@ -1,14 +1,11 @@
 package com.kabouzeid.trebl.util;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.provider.MediaStore;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.webkit.MimeTypeMap;
 
-import com.kabouzeid.trebl.loader.SongLoader;
-import com.kabouzeid.trebl.loader.SortedCursor;
+import com.kabouzeid.trebl.loader.BatchedSongLoader;
 import com.kabouzeid.trebl.model.Song;
 
 import java.io.BufferedReader;
@@ -18,7 +15,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -32,46 +29,44 @@ public final class FileUtil {
 
     @NonNull
     public static List<Song> matchFilesWithMediaStore(@NonNull Context context, @Nullable List<File> files) {
-        return SongLoader.getSongs(makeSongCursor(context, files));
-    }
-
-    @Nullable
-    public static SortedCursor makeSongCursor(@NonNull final Context context, @Nullable final List<File> files) {
-        String selection = null;
-        String[] paths = null;
-
-        if (files != null) {
-            paths = toPathArray(files);
-
-            if (files.size() > 0 && files.size() < 999) { // 999 is the max amount Androids SQL implementation can handle.
-                selection = MediaStore.Audio.AudioColumns.DATA + " IN (" + makePlaceholders(files.size()) + ")";
+        List<Song> songs = new ArrayList<>();
+        if (files == null || files.isEmpty()) {
+            return songs;
+        }
+        for (Song song : BatchedSongLoader.getSongsByPath(context, toPathArray(files))) {
+            if (song != null) {
+                songs.add(song);
             }
         }
-
-        Cursor songCursor = SongLoader.makeSongCursor(context, selection, selection == null ? null : paths);
-
-        return songCursor == null ? null : new SortedCursor(songCursor, paths, MediaStore.Audio.AudioColumns.DATA);
+        return songs;
     }
 
-    private static String makePlaceholders(int len) {
-        StringBuilder sb = new StringBuilder(len * 2 - 1);
-        sb.append("?");
-        for (int i = 1; i < len; i++) {
-            sb.append(",?");
+    /**
+     * Like {@link #matchFilesWithMediaStore(Context, List)} for files that are known to be canonical, for example the
+     * ones found by the {@link ParallelFileWalker}.
+     */
+    @NonNull
+    public static List<Song> matchCanonicalFilesWithMediaStore(@NonNull Context context, @NonNull List<File> files) {
+        String[] paths = new String[files.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = files.get(i).getPath();
         }
-        return sb.toString();
+        List<Song> songs = new ArrayList<>(paths.length);
+        for (Song song : BatchedSongLoader.getSongsByPath(context, paths)) {
+            if (song != null) {
+                songs.add(song);
+            }
+        }
+        return songs;
     }
 
-    @Nullable
-    private static String[] toPathArray(@Nullable List<File> files) {
-        if (files != null) {
-            String[] paths = new String[files.size()];
-            for (int i = 0; i < files.size(); i++) {
-                paths[i] = safeGetCanonicalPath(files.get(i));
-            }
-            return paths;
+    @NonNull
+    private static String[] toPathArray(@NonNull List<File> files) {
+        String[] paths = new String[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            paths[i] = safeGetCanonicalPath(files.get(i));
         }
-        return null;
+        return paths;
     }
 
     @NonNull
@@ -84,46 +79,12 @@ public final class FileUtil {
         return fileList;
     }
 
-    @NonNull
-    public static List<File> listFilesDeep(@NonNull File directory, @Nullable FileFilter fileFilter) {
-        List<File> files = new LinkedList<>();
-        internalListFilesDeep(files, directory, fileFilter);
-        return files;
-    }
-
-    @NonNull
-    public static List<File> listFilesDeep(@NonNull Collection<File> files, @Nullable FileFilter fileFilter) {
-        List<File> resFiles = new LinkedList<>();
-        for (File file : files) {
-            if (file.isDirectory()) {
-                internalListFilesDeep(resFiles, file, fileFilter);
-            } else if (fileFilter == null || fileFilter.accept(file)) {
-                resFiles.add(file);
-            }
-        }
-        return resFiles;
-    }
-
-    private static void internalListFilesDeep(@NonNull Collection<File> files, @NonNull File directory, @Nullable FileFilter fileFilter) {
-        File[] found = directory.listFiles(fileFilter);
-
-        if (found != null) {
-            for (File file : found) {
-                if (file.isDirectory()) {
-                    internalListFilesDeep(files, file, fileFilter);
-                } else {
-                    files.add(file);
-                }
-            }
-        }
-    }
-
     public static boolean fileIsMimeType(File file, String mimeType, MimeTypeMap mimeTypeMap) {
         if (mimeType == null || mimeType.equals("*/*")) {
             return true;
         } else {
             // get the file mime type
-            String filename = file.toURI().toString();
+            String filename = file.getName();
             int dotPos = filename.lastIndexOf('.');
             if (dotPos == -1) {
                 return false;
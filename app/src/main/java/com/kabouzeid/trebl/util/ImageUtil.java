@@ -118,4 +118,30 @@ public class ImageUtil {
         return Bitmap.createScaledBitmap(bitmap, scaledWidth, scaledHeight, true);
 
     }
+
+    /**
+     * Decodes the image only at the resolution needed for the scaled size.
+     *
+     * @return the scaled bitmap, or null if the data could not be decoded
+     */
+    @Nullable
+    public static Bitmap resize(@NonNull byte[] data, int scaledWidth, int scaledHeight) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, Math.max(scaledWidth, scaledHeight));
+        options.inJustDecodeBounds = false;
+        final Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (bitmap == null) {
+            return null;
+        }
+        final Bitmap scaled = Bitmap.createScaledBitmap(bitmap, scaledWidth, scaledHeight, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
 }
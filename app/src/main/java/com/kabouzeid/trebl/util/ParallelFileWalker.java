@@ -0,0 +1,157 @@
+package com.kabouzeid.trebl.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Walks directory trees on a work stealing pool and hands out the files in batches.
+ * <p>
+ * Every directory is listed by its own task. The subdirectories are forked as soon as their parent is listed, so the
+ * pool lists ahead while the files are handed out in order: directory by directory, the entries of every directory
+ * sorted by the comparator. A batch is handed out when it is full or when the next directory isn't listed yet, that
+ * way the first files are available long before the whole tree is walked.
+ * <p>
+ * The directories are canonicalized, the files are not. As long as there are no links to single files their paths
+ * are canonical as well, without resolving every one of them.
+ */
+public class ParallelFileWalker {
+    // first in first out, the directories are listed about in the order they are handed out
+    private static final ForkJoinPool pool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+            ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+    public interface Callback {
+        /**
+         * Called on the walking thread.
+         */
+        void onFilesFound(@NonNull List<File> files);
+    }
+
+    @NonNull
+    private final FileFilter fileFilter;
+    @Nullable
+    private final Comparator<File> comparator;
+    private volatile boolean cancelled;
+
+    /**
+     * @param fileFilter decides about files and directories inside of the walked directories
+     */
+    public ParallelFileWalker(@NonNull FileFilter fileFilter, @Nullable Comparator<File> comparator) {
+        this.fileFilter = fileFilter;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Walks the given files and directories, blocks until all files were handed out or the walk was cancelled.
+     * Files that are given directly only have to pass the file filter, directories are always walked.
+     *
+     * @return false if the walk was cancelled
+     */
+    public boolean walk(@NonNull List<File> roots, int batchSize, @NonNull Callback callback) {
+        final List<File> accepted = new ArrayList<>(roots.size());
+        for (File root : roots) {
+            if (root.isDirectory()) {
+                accepted.add(root);
+            } else if (fileFilter.accept(root)) {
+                accepted.add(FileUtil.safeGetCanonicalFile(root));
+            }
+        }
+        final List<File> batch = new ArrayList<>(batchSize);
+        handOut(toEntries(accepted.toArray(new File[0])), batchSize, batch, callback);
+        if (!cancelled && !batch.isEmpty()) {
+            callback.onFilesFound(batch);
+        }
+        return !cancelled;
+    }
+
+    /**
+     * Stops the walk, no more files are handed out afterwards.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void handOut(@NonNull List<Object> entries, int batchSize, @NonNull List<File> batch, @NonNull Callback callback) {
+        for (Object entry : entries) {
+            if (cancelled) return;
+            if (entry instanceof File) {
+                batch.add((File) entry);
+                if (batch.size() >= batchSize) {
+                    flush(batch, callback);
+                }
+            } else {
+                final DirectoryTask task = (DirectoryTask) entry;
+                if (!task.isDone() && !batch.isEmpty()) {
+                    // don't hold back the files found so far while waiting for the directory
+                    flush(batch, callback);
+                }
+                handOut(task.join(), batchSize, batch, callback);
+            }
+        }
+    }
+
+    private void flush(@NonNull List<File> batch, @NonNull Callback callback) {
+        if (cancelled) return;
+        callback.onFilesFound(new ArrayList<>(batch));
+        batch.clear();
+    }
+
+    /**
+     * @return the files and, in their place, the started tasks of the directories
+     */
+    @NonNull
+    private List<Object> toEntries(@Nullable File[] children) {
+        if (children == null || children.length == 0) {
+            return Collections.emptyList();
+        }
+        if (comparator != null) {
+            Arrays.sort(children, comparator);
+        }
+        final List<Object> entries = new ArrayList<>(children.length);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                final DirectoryTask task = new DirectoryTask(FileUtil.safeGetCanonicalFile(child));
+                if (ForkJoinTask.inForkJoinPool()) {
+                    task.fork();
+                } else {
+                    pool.execute(task);
+                }
+                entries.add(task);
+            } else {
+                entries.add(child);
+            }
+        }
+        return entries;
+    }
+
+    private class DirectoryTask extends RecursiveTask<List<Object>> {
+        @NonNull
+        private final File directory;
+
+        DirectoryTask(@NonNull File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected List<Object> compute() {
+            if (cancelled) {
+                return Collections.emptyList();
+            }
+            return toEntries(directory.listFiles(fileFilter));
+        }
+    }
+}
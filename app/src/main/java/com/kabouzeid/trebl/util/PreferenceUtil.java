@@ -80,6 +80,8 @@ public final class PreferenceUtil {
 
     public static final String AUTO_DOWNLOAD_IMAGES_POLICY = "auto_download_images_policy";
 
+    public static final String IMAGE_CACHE_SIZE = "image_cache_size";
+
     public static final String START_DIRECTORY = "start_directory";
 
     public static final String SYNCHRONIZED_LYRICS_SHOW = "synchronized_lyrics_show";
@@ -90,6 +92,8 @@ public final class PreferenceUtil {
 
     private static final String REMEMBER_SHUFFLE = "remember_shuffle";
 
+    public static final String SPREAD_SHUFFLE = "spread_shuffle";
+
     private final static String LAUNCH_COUNT = "launchTimes";
 
     private static final String RATING_DISABLED = "disabled";
@@ -533,10 +537,25 @@ public final class PreferenceUtil {
         return mPreferences.getBoolean(REMEMBER_SHUFFLE, true);
     }
 
+    public boolean spreadShuffle() {
+        return mPreferences.getBoolean(SPREAD_SHUFFLE, false);
+    }
+
     public String autoDownloadImagesPolicy() {
         return mPreferences.getString(AUTO_DOWNLOAD_IMAGES_POLICY, "only_wifi");
     }
 
+    /**
+     * @return the maximum size of the image disk cache in bytes
+     */
+    public long getImageCacheSize() {
+        try {
+            return Long.parseLong(mPreferences.getString(IMAGE_CACHE_SIZE, "250")) * 1024 * 1024;
+        } catch (NumberFormatException e) {
+            return 250L * 1024 * 1024;
+        }
+    }
+
     public File getStartDirectory() {
         return new File(mPreferences.getString(START_DIRECTORY, FoldersFragment.getDefaultStartDirectory().getPath()));
     }
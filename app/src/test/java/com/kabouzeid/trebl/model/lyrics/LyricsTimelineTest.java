@@ -0,0 +1,77 @@
+package com.kabouzeid.trebl.model.lyrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LyricsTimelineTest {
+    private static int linearIndexOf(LyricsTimeline timeline, int time) {
+        if (timeline.size() == 0) return -1;
+        int index = 0;
+        for (int i = 0; i < timeline.size(); i++) {
+            if (timeline.getTime(i) <= time) index = i;
+        }
+        return index;
+    }
+
+    private static LyricsTimeline randomTimeline(Random random, int size) {
+        final LyricsTimeline.Builder builder = new LyricsTimeline.Builder();
+        for (int i = 0; i < size; i++) {
+            builder.add(random.nextInt(size * 1000 + 1), "line " + i);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void emptyTimelineHasNoLine() {
+        assertEquals(-1, LyricsTimeline.EMPTY.indexOf(0));
+        assertEquals(-1, LyricsTimeline.EMPTY.indexOf(1000));
+    }
+
+    @Test
+    public void timeBeforeTheFirstLineIsTheFirstLine() {
+        final LyricsTimeline timeline = new LyricsTimeline.Builder()
+                .add(1000, "a")
+                .add(2000, "b")
+                .build();
+        assertEquals(0, timeline.indexOf(0));
+        assertEquals(0, timeline.indexOf(-500));
+        assertEquals(1, timeline.indexOf(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void indexOfMatchesLinearScanWhilePlaying() {
+        final Random random = new Random(42);
+        for (int size = 1; size < 50; size++) {
+            final LyricsTimeline timeline = randomTimeline(random, size);
+            // ascending times, mostly served by the hint
+            for (int time = -100; time <= size * 1000 + 100; time += 7) {
+                assertEquals("size " + size + " time " + time, linearIndexOf(timeline, time), timeline.indexOf(time));
+            }
+        }
+    }
+
+    @Test
+    public void indexOfMatchesLinearScanWhenSeeking() {
+        final Random random = new Random(7);
+        for (int size = 1; size < 50; size++) {
+            final LyricsTimeline timeline = randomTimeline(random, size);
+            for (int i = 0; i < 200; i++) {
+                final int time = random.nextInt(size * 1000 + 200) - 100;
+                assertEquals("size " + size + " time " + time, linearIndexOf(timeline, time), timeline.indexOf(time));
+            }
+        }
+    }
+
+    @Test
+    public void indexOfMatchesLinearScanOnExactTimes() {
+        final LyricsTimeline timeline = randomTimeline(new Random(3), 100);
+        for (int i = timeline.size() - 1; i >= 0; i--) {
+            final int time = timeline.getTime(i);
+            assertEquals(linearIndexOf(timeline, time), timeline.indexOf(time));
+            assertEquals(linearIndexOf(timeline, time - 1), timeline.indexOf(time - 1));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.kabouzeid.trebl.model.lyrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SynchronizedLyricsLRCTest {
+    private static SynchronizedLyricsLRC parse(String data) {
+        return (SynchronizedLyricsLRC) new SynchronizedLyricsLRC().setData(null, data).parse(false);
+    }
+
+    private static boolean isValid(String data) {
+        return new SynchronizedLyricsLRC().setData(null, data).isValid();
+    }
+
+    @Test
+    public void parsesLinesInTimeOrder() {
+        final LyricsTimeline timeline = parse("[00:05.00]second\n[00:01.00]first\r\n[01:02.50]third").timeline;
+        assertEquals(3, timeline.size());
+        assertEquals(1000, timeline.getTime(0));
+        assertEquals("first", timeline.getLine(0));
+        assertEquals(5000, timeline.getTime(1));
+        assertEquals("second", timeline.getLine(1));
+        assertEquals(62500, timeline.getTime(2));
+        assertEquals("third", timeline.getLine(2));
+    }
+
+    @Test
+    public void parsesFractions() {
+        final LyricsTimeline timeline = parse("[00:01]a\n[00:02.5]b\n[00:03.25]c\n[00:04.125]d").timeline;
+        assertEquals(1000, timeline.getTime(0));
+        assertEquals(2500, timeline.getTime(1));
+        assertEquals(3250, timeline.getTime(2));
+        assertEquals(4125, timeline.getTime(3));
+    }
+
+    @Test
+    public void acceptsColonBeforeFraction() {
+        final LyricsTimeline timeline = parse("[00:01:50]line").timeline;
+        assertEquals(1, timeline.size());
+        assertEquals(1500, timeline.getTime(0));
+    }
+
+    @Test
+    public void sharesTextBetweenSeveralTimeTags() {
+        final LyricsTimeline timeline = parse("[00:01.00][00:10.00]chorus\n[00:05.00]verse").timeline;
+        assertEquals(3, timeline.size());
+        assertEquals("chorus", timeline.getLine(0));
+        assertEquals("verse", timeline.getLine(1));
+        assertEquals("chorus", timeline.getLine(2));
+        assertEquals(10000, timeline.getTime(2));
+    }
+
+    @Test
+    public void lastLineWinsOnDuplicateTimes() {
+        final LyricsTimeline timeline = parse("[00:01.00]first\n[00:02.00]other\n[00:01.00]last").timeline;
+        assertEquals(2, timeline.size());
+        assertEquals("last", timeline.getLine(0));
+        assertEquals("other", timeline.getLine(1));
+    }
+
+    @Test
+    public void skipsMalformedTags() {
+        final LyricsTimeline timeline = parse("[00:1x.00]bad seconds\n"
+                + "[0a:01.00]bad minutes\n"
+                + "[:01.00]no minutes\n"
+                + "[00:01.]no fraction\n"
+                + "[00:01.00 unclosed\n"
+                + "[00-01.00]bad separator\n"
+                + "no tag at all\n"
+                + "[00:07.00]good").timeline;
+        assertEquals(1, timeline.size());
+        assertEquals(7000, timeline.getTime(0));
+        assertEquals("good", timeline.getLine(0));
+    }
+
+    @Test
+    public void rejectsMinutesThatWouldOverflow() {
+        final LyricsTimeline timeline = parse("[99999:00.00]overflow\n[9999:00.00]largest").timeline;
+        assertEquals(1, timeline.size());
+        assertEquals(9999 * 60000, timeline.getTime(0));
+    }
+
+    @Test
+    public void appliesOffset() {
+        final SynchronizedLyricsLRC lyrics = parse("[offset:+250]\n[ar:someone]\n[00:10.00]line");
+        assertEquals(250, lyrics.offset);
+        // the offset is not applied to the timeline
+        assertEquals(10000, lyrics.timeline.getTime(0));
+        // lines are shown 500ms early, plus the offset
+        assertEquals("line", lyrics.getLine(10000 - 750));
+        assertEquals("line", lyrics.getLine(0));
+
+        assertEquals(-100, parse("[offset:-100]\n[00:10.00]line").offset);
+        assertEquals(0, parse("[offset:soon]\n[00:10.00]line").offset);
+    }
+
+    @Test
+    public void stripsWordTags() {
+        final LyricsTimeline timeline = parse("[00:01.00]<00:01.00>Hello <00:01.50>world").timeline;
+        assertEquals("Hello world", timeline.getLine(0));
+        assertEquals(1000, timeline.getTime(0));
+    }
+
+    @Test
+    public void keepsMalformedWordTagsAsText() {
+        final LyricsTimeline timeline = parse("[00:01.00]a <b> c <00:0x.00> d <00:01.00").timeline;
+        assertEquals("a <b> c <00:0x.00> d <00:01.00", timeline.getLine(0));
+    }
+
+    @Test
+    public void validatesOnlyTimedLyrics() {
+        assertTrue(isValid("[ti:title]\n[00:01.00]line"));
+        assertFalse(isValid("just some text\nwithout tags"));
+        assertFalse(isValid("[ti:title]\n[ar:artist]"));
+        assertFalse(isValid(""));
+        assertFalse(isValid("[00:01.00"));
+    }
+
+    @Test
+    public void emptyLyricsHaveNoLine() {
+        final SynchronizedLyricsLRC lyrics = parse("[ti:title]");
+        assertEquals(0, lyrics.timeline.size());
+        assertEquals("", lyrics.getLine(1000));
+    }
+}